@@ -0,0 +1,245 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.sdo.sct.CertPathCodec;
+import org.sdo.sct.ResourceBundleHolder;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Issues device certificates in bulk, for devices pre-provisioned before DI.
+ *
+ * <p>The requests are read from the request body as they arrive and signed in parallel,
+ * using the same {@link CertPathService} as DI.AppStart.  Results are streamed back in
+ * request order as newline-delimited JSON, followed by a summary of the run.
+ */
+@RestController
+@SuppressWarnings("unused")
+class CertificatesController implements DisposableBean {
+
+  /**
+   * The media type of newline-delimited JSON.
+   */
+  static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+  private static ResourceBundleHolder resourceBundleHolder_ =
+      new ResourceBundleHolder(CertificatesController.class.getName());
+
+  // The caller owns the output stream, so closing a generator mustn't close it.
+  private static final JsonFactory JSON_FACTORY =
+      new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+  private final CertPathService certPathService;
+  private final ExecutorService signers;
+  private final int window;
+  private final LongAdder issuedCount = new LongAdder();
+  private final LongAdder failedCount = new LongAdder();
+
+  /**
+   * Constructor.
+   *
+   * @param certPathService The service which issues each certificate.
+   * @param threads         The number of signing threads.
+   *                        Zero means one per available processor.
+   */
+  @Autowired
+  CertificatesController(
+      final CertPathService certPathService,
+      @Value("${sdo.certificates.batch.threads:0}") final int threads) {
+
+    if (threads < 0) {
+      throw new IllegalArgumentException(Integer.toString(threads));
+    }
+
+    final int poolSize = 0 == threads ? Runtime.getRuntime().availableProcessors() : threads;
+    final AtomicInteger threadCount = new AtomicInteger();
+    final ThreadFactory threadFactory = r -> {
+      final Thread thread = new Thread(r, "certificates-batch-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+
+    this.certPathService = certPathService;
+    this.signers = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(), threadFactory);
+    // Each batch keeps every thread busy, with one more request ready per thread,
+    // and no more than that in memory.
+    this.window = 2 * poolSize;
+  }
+
+  @PostMapping(path = "/api/v1/certificates:batch",
+      consumes = CsrBatchReader.APPLICATION_PEM_VALUE,
+      produces = APPLICATION_NDJSON_VALUE)
+  ResponseEntity<StreamingResponseBody> postBatchPem(final InputStream body) {
+    return respond(out -> writeBatch(CsrBatchReader.pem(body), out));
+  }
+
+  @PostMapping(path = "/api/v1/certificates:batch",
+      consumes = APPLICATION_NDJSON_VALUE,
+      produces = APPLICATION_NDJSON_VALUE)
+  ResponseEntity<StreamingResponseBody> postBatchNdjson(final InputStream body) {
+    return respond(out -> writeBatch(CsrBatchReader.ndjson(body), out));
+  }
+
+  @Override
+  public void destroy() {
+    signers.shutdownNow();
+  }
+
+  /**
+   * The number of certificates issued by batches.
+   */
+  long getIssuedCount() {
+    return issuedCount.sum();
+  }
+
+  /**
+   * The number of batch requests which produced no certificate.
+   */
+  long getFailedCount() {
+    return failedCount.sum();
+  }
+
+  private ResponseEntity<StreamingResponseBody> respond(final StreamingResponseBody body) {
+    return ResponseEntity.ok()
+      .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+      .body(body);
+  }
+
+  private void writeBatch(final CsrBatchReader reader, final OutputStream out)
+      throws IOException {
+
+    final long start = System.nanoTime();
+    final Deque<Pending> pending = new ArrayDeque<>(window);
+    int issued = 0;
+    int failed = 0;
+
+    try (JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+      try {
+        for (;;) {
+          final CsrBatchReader.Item item = reader.next();
+          if (null == item) {
+            break;
+          }
+
+          if (pending.size() == window) {
+            if (write(generator, pending.removeFirst())) {
+              issued++;
+            } else {
+              failed++;
+            }
+          }
+          pending.addLast(new Pending(item.getId(), null == item.getCsr()
+              ? null
+              : signers.submit(() -> CertPathCodec.encode(certPathService.apply(item.getCsr()))),
+              item.getError()));
+        }
+
+      } catch (IOException e) {
+        // The rest of the body can't be read, but what was read is still issued.
+        pending.addLast(new Pending("", null, CsrBatchReader.describe(e)));
+      }
+
+      while (!pending.isEmpty()) {
+        if (write(generator, pending.removeFirst())) {
+          issued++;
+        } else {
+          failed++;
+        }
+      }
+
+      final double seconds = (System.nanoTime() - start) / 1e9;
+      final double rate = 0 < seconds ? issued / seconds : 0;
+      generator.writeStartObject();
+      generator.writeNumberField("issued", issued);
+      generator.writeNumberField("failed", failed);
+      generator.writeNumberField("elapsedMs", Math.round(seconds * 1000));
+      generator.writeNumberField("certsPerSecond", Math.round(rate * 10) / 10.0);
+      generator.writeEndObject();
+      generator.writeRaw('\n');
+
+      LoggerFactory.getLogger(getClass()).info(MessageFormat.format(
+          resourceBundleHolder_.get().getString("batch.complete"),
+          issued, failed, Math.round(seconds * 1000), String.format(Locale.ROOT, "%.1f", rate)));
+
+    } finally {
+      // If the client went away, don't sign what it will never read.
+      for (Pending p : pending) {
+        if (null != p.result) {
+          p.result.cancel(true);
+        }
+      }
+      issuedCount.add(issued);
+      failedCount.add(failed);
+    }
+  }
+
+  private static boolean write(final JsonGenerator generator, final Pending pending)
+      throws IOException {
+
+    String certPath = null;
+    String error = pending.error;
+    if (null != pending.result) {
+      try {
+        certPath = pending.result.get();
+      } catch (ExecutionException e) {
+        error = CsrBatchReader.describe(e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      }
+    }
+
+    generator.writeStartObject();
+    generator.writeStringField("id", pending.id);
+    if (null != certPath) {
+      generator.writeFieldName("certPath");
+      generator.writeRawValue(certPath);
+    } else {
+      generator.writeStringField("error", error);
+    }
+    generator.writeEndObject();
+    generator.writeRaw('\n');
+    return null != certPath;
+  }
+
+  private static class Pending {
+
+    final String id;
+    final Future<String> result;
+    final String error;
+
+    Pending(final String id, final Future<String> result, final String error) {
+      this.id = id;
+      this.result = result;
+      this.error = error;
+    }
+  }
+}
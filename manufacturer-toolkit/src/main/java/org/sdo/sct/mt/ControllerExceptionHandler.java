@@ -3,6 +3,7 @@
 
 package org.sdo.sct.mt;
 
+import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.servlet.http.HttpServletRequest;
@@ -19,6 +20,8 @@ import org.springframework.web.server.ResponseStatusException;
 @SuppressWarnings("unused")
 public class ControllerExceptionHandler {
 
+  private static final Pattern MESSAGE_PATH_PATTERN = Pattern.compile("/mp/\\d+/msg/(\\d+)");
+
   /**
    * Constructor.
    *
@@ -35,13 +38,15 @@ public class ControllerExceptionHandler {
       status = ((HttpStatusCodeException) t).getStatusCode();
     } else if (t instanceof HttpMessageNotReadableException) {
       status = HttpStatus.BAD_REQUEST;
+    } else if (t instanceof RejectedExecutionException) {
+      status = HttpStatus.SERVICE_UNAVAILABLE; // see DiExecutors
     } else {
       status = HttpStatus.INTERNAL_SERVER_ERROR;
     }
 
     int emsg = 255;
     if (null != request) {
-      Matcher matcher = Pattern.compile("/mp/\\d+/msg/(\\d+)").matcher(request.getServletPath());
+      Matcher matcher = MESSAGE_PATH_PATTERN.matcher(request.getServletPath());
       if (matcher.matches()) {
         emsg = Integer.parseUnsignedInt(matcher.group(1));
       }
@@ -0,0 +1,201 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import org.bouncycastle.openssl.PEMParser;
+import org.bouncycastle.pkcs.PKCS10CertificationRequest;
+
+/**
+ * Reads the certificate signing requests of a batch certificate request, one at a time.
+ *
+ * <p>The caller owns the input stream, so readers never close it.
+ */
+interface CsrBatchReader {
+
+  /**
+   * The media type of PEM bundles.
+   */
+  String APPLICATION_PEM_VALUE = "application/x-pem-file";
+
+  /**
+   * Reads the next request.
+   *
+   * @return The next request, or null at the end of the batch.
+   *
+   * @throws IOException if the batch can't be read any further.
+   */
+  Item next() throws IOException;
+
+  /**
+   * Builds a reader of concatenated PEM <code>CERTIFICATE REQUEST</code> blocks.
+   *
+   * <p>Each request's id is its position in the bundle, counting from 1.
+   */
+  static CsrBatchReader pem(final InputStream in) {
+    return new PemReader(in);
+  }
+
+  /**
+   * Builds a reader of newline-delimited JSON.
+   *
+   * <p>Each line is <code>{"id":...,"csr":...}</code>, where the csr is either a PEM block
+   * or the base64 encoding of its DER.  Blank lines are skipped.
+   */
+  static CsrBatchReader ndjson(final InputStream in) {
+    return new NdjsonReader(in);
+  }
+
+  /**
+   * Describes an error for a batch response: its message, or its type if it has none.
+   */
+  static String describe(final Throwable e) {
+    return null == e.getMessage() ? e.getClass().getSimpleName() : e.getMessage();
+  }
+
+  /**
+   * Parses a single PEM block, which must be a certificate signing request.
+   *
+   * @throws IOException if the block is malformed or isn't a CSR.
+   */
+  private static PKCS10CertificationRequest parsePem(final String pem) throws IOException {
+    try (PEMParser parser = new PEMParser(new StringReader(pem))) {
+      final Object o = parser.readObject();
+      if (!(o instanceof PKCS10CertificationRequest)) {
+        throw new IOException(
+          "not a CSR: " + (null == o ? "empty" : o.getClass().getSimpleName()));
+      }
+      return (PKCS10CertificationRequest) o;
+    }
+  }
+
+  /**
+   * One request of a batch.
+   *
+   * <p>A request which couldn't be parsed has an error instead of a CSR.  The rest of the
+   * batch can still be read.
+   */
+  class Item {
+
+    private final String id;
+    private final PKCS10CertificationRequest csr;
+    private final String error;
+
+    Item(final String id, final PKCS10CertificationRequest csr, final String error) {
+      this.id = id;
+      this.csr = csr;
+      this.error = error;
+    }
+
+    String getId() {
+      return id;
+    }
+
+    PKCS10CertificationRequest getCsr() {
+      return csr;
+    }
+
+    String getError() {
+      return error;
+    }
+  }
+
+  class PemReader implements CsrBatchReader {
+
+    private static final String BEGIN = "-----BEGIN ";
+    private static final String END = "-----END ";
+
+    private final BufferedReader reader;
+    private int count = 0;
+
+    PemReader(final InputStream in) {
+      this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+    }
+
+    // Each block is cut out of the bundle before it is parsed, so a malformed block is
+    // reported on its own and the blocks after it are still read.
+    @Override
+    public Item next() throws IOException {
+      String line;
+      do {
+        line = reader.readLine();
+        if (null == line) {
+          return null;
+        }
+      } while (!line.strip().startsWith(BEGIN));
+
+      final String id = Integer.toString(++count);
+      final StringBuilder block = new StringBuilder();
+      do {
+        block.append(line.strip()).append('\n');
+        line = reader.readLine();
+        if (null == line) {
+          return new Item(id, null, "no END line");
+        }
+      } while (!line.strip().startsWith(END));
+      block.append(line.strip()).append('\n');
+
+      try {
+        return new Item(id, parsePem(block.toString()), null);
+      } catch (IOException | RuntimeException e) {
+        return new Item(id, null, describe(e));
+      }
+    }
+  }
+
+  class NdjsonReader implements CsrBatchReader {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final BufferedReader reader;
+    private int count = 0;
+
+    NdjsonReader(final InputStream in) {
+      this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public Item next() throws IOException {
+      String line;
+      do {
+        line = reader.readLine();
+        if (null == line) {
+          return null;
+        }
+      } while (line.isBlank());
+
+      String id = Integer.toString(++count);
+      try {
+        final JsonNode node = MAPPER.readTree(line);
+        if (node.hasNonNull("id")) {
+          id = node.get("id").asText();
+        }
+        return new Item(id, parse(node.path("csr").asText()), null);
+
+      } catch (IOException | RuntimeException e) {
+        return new Item(id, null, describe(e));
+      }
+    }
+
+    private static PKCS10CertificationRequest parse(final String csr) throws IOException {
+      if (csr.isEmpty()) {
+        throw new IOException("no csr");
+
+      } else if (csr.startsWith("-----")) {
+        return parsePem(csr);
+
+      } else {
+        return new PKCS10CertificationRequest(Base64.getMimeDecoder().decode(csr));
+      }
+    }
+  }
+}
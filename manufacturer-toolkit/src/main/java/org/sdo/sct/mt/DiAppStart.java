@@ -14,6 +14,8 @@ import org.springframework.util.StreamUtils;
 
 class DiAppStart {
 
+  private static final Pattern PATTERN = Pattern.compile("\\{\"m\":\"([^\"]*)\"}");
+
   private final String mstring;
 
   DiAppStart(final String m) {
@@ -22,9 +24,8 @@ class DiAppStart {
 
   static DiAppStart decode(final InputStream inputStream) throws IOException {
 
-    final Pattern pat = Pattern.compile("\\{\"m\":\"([^\"]*)\"}");
     final Matcher matcher =
-        pat.matcher(StreamUtils.copyToString(inputStream, StandardCharsets.US_ASCII));
+        PATTERN.matcher(StreamUtils.copyToString(inputStream, StandardCharsets.US_ASCII));
 
     if (!matcher.matches()) {
       throw new IllegalArgumentException();
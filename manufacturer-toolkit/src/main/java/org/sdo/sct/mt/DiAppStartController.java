@@ -3,7 +3,6 @@
 
 package org.sdo.sct.mt;
 
-import java.net.URI;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -13,12 +12,8 @@ import java.security.cert.Certificate;
 import java.sql.Timestamp;
 import java.text.MessageFormat;
 import java.time.Instant;
-import java.util.Arrays;
 import java.util.Base64;
-import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.Callable;
-import java.util.stream.Collectors;
 
 import org.sdo.sct.CertPathCodec;
 import org.sdo.sct.CryptoLevel;
@@ -26,13 +21,10 @@ import org.sdo.sct.DigestWrapper;
 import org.sdo.sct.Hash;
 import org.sdo.sct.KeyFinder;
 import org.sdo.sct.KeyHandle;
-import org.sdo.sct.RendezvousInfo;
-import org.sdo.sct.RendezvousInfoBuilder;
+import org.sdo.sct.KeyType;
 import org.sdo.sct.ResourceBundleHolder;
 import org.sdo.sct.VoucherHeader;
 import org.sdo.sct.domain.DeviceState;
-import org.sdo.sct.domain.DeviceStateRepo;
-import org.sdo.sct.domain.ServerSettingsRepo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -41,6 +33,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncTask;
 import org.springframework.web.server.ResponseStatusException;
 
 @RestController
@@ -55,9 +48,11 @@ class DiAppStartController {
   private final OnDieCertPath onDieCertPathService;
   private final OnDieCache onDieCertCache;
   private final OnDieSignatureValidator onDieSignatureValidator;
-  private final DeviceStateRepo deviceStateRepo;
-  private final ServerSettingsRepo serverSettingsRepo;
+  private final DiSessionStore sessionStore;
+  private final ServerSettingsCache serverSettingsCache;
   private final KeyFinder keyFinder;
+  private final DiExecutors diExecutors;
+  private final DiMetrics metrics;
 
   @Autowired
   DiAppStartController(
@@ -65,17 +60,21 @@ class DiAppStartController {
       final OnDieCertPath onDieCertPathService,
       final OnDieCache onDieCertCache,
       final OnDieSignatureValidator onDieSignatureValidator,
-      final DeviceStateRepo deviceStateRepo,
-      final ServerSettingsRepo serverSettingsRepo,
-      final KeyFinder keyFinder) {
+      final DiSessionStore sessionStore,
+      final ServerSettingsCache serverSettingsCache,
+      final KeyFinder keyFinder,
+      final DiExecutors diExecutors,
+      final DiMetrics metrics) {
 
     this.certPathService = certPathService;
     this.onDieCertPathService = onDieCertPathService;
     this.onDieCertCache = onDieCertCache;
     this.onDieSignatureValidator = onDieSignatureValidator;
-    this.deviceStateRepo = deviceStateRepo;
-    this.serverSettingsRepo = serverSettingsRepo;
+    this.sessionStore = sessionStore;
+    this.serverSettingsCache = serverSettingsCache;
     this.keyFinder = keyFinder;
+    this.diExecutors = diExecutors;
+    this.metrics = metrics;
   }
 
   private static String decodeBase64ToAsciiString(final String b64) {
@@ -87,28 +86,21 @@ class DiAppStartController {
       consumes = MediaType.APPLICATION_JSON_VALUE,
       produces = MediaType.APPLICATION_JSON_VALUE)
   @SuppressWarnings("unused")
-  Callable<ResponseEntity<DiSetCredentials>> post(@RequestBody final DiAppStart diAppStart) {
+  WebAsyncTask<ResponseEntity<DiSetCredentials>> post(
+      @RequestBody final DiAppStart diAppStart) {
 
     if (null == diAppStart) {
       throw new IllegalArgumentException();
     }
 
-    return () -> post_(diAppStart);
-  }
-
-  private RendezvousInfo parseRendezvousInfo(final String config) {
-
-    final List<URI> uris = Arrays.stream(config.split("\\s+"))
-        .map(URI::create)
-        .collect(Collectors.toUnmodifiableList());
-
-    return new RendezvousInfoBuilder().with(uris).build();
+    return diExecutors.submit(DiExecutors.Message.DI_APP_START, () -> post_(diAppStart));
   }
 
   private ResponseEntity<DiSetCredentials> post_(final DiAppStart diAppStart) throws Exception {
 
     final MStringParser.ParseResult parsedM;
     final DeviceState deviceState;
+    final long parseStart = System.nanoTime();
     try {
       parsedM = new MStringParser().parse(diAppStart.getMstring());
 
@@ -121,9 +113,16 @@ class DiAppStartController {
         diAppStart.getMstring());
 
     } catch (IllegalArgumentException e) {
+      metrics.record(DiMetrics.Stage.MSTRING_PARSE, null, null, false,
+          System.nanoTime() - parseStart);
       throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
     }
 
+    final DiMetrics.DeviceType deviceType = DiMetrics.DeviceType.of(parsedM);
+    final KeyType keyType = parsedM.getKeyTypeConstraint();
+    metrics.record(DiMetrics.Stage.MSTRING_PARSE, deviceType, keyType, true,
+        System.nanoTime() - parseStart);
+
     try {
       return post_(parsedM, deviceState);
 
@@ -134,15 +133,20 @@ class DiAppStartController {
       throw e;
 
     } finally {
-      deviceStateRepo.save(deviceState);
+      metrics.run(DiMetrics.Stage.DEVICE_STATE_SAVE, deviceType, keyType,
+          () -> sessionStore.save(deviceState));
     }
   }
 
   private ResponseEntity<DiSetCredentials>
       post_(final MStringParser.ParseResult m, final DeviceState deviceState) throws Exception {
 
+    final DiMetrics.DeviceType deviceType = DiMetrics.DeviceType.of(m);
+    final KeyType keyType = m.getKeyTypeConstraint();
+
     // Find the manufacturer certificate matching the device's requirements
-    KeyHandle myKey = keyFinder.find(m.getKeyTypeConstraint())
+    KeyHandle myKey = metrics.call(DiMetrics.Stage.KEY_FIND, deviceType, keyType,
+        () -> keyFinder.find(keyType))
         .orElseThrow(() -> {
           String format = resourceBundleHolder_.get().getString("key.not.found");
           return new ResponseStatusException(
@@ -156,7 +160,8 @@ class DiAppStartController {
     final String dc;
     final Hash hdc;
     if (null != m.getCsr()) {
-      final CertPath certPath = certPathService.apply(m.getCsr());
+      final CertPath certPath = metrics.call(DiMetrics.Stage.CERT_PATH_APPLY, deviceType, keyType,
+          () -> certPathService.apply(m.getCsr()));
       dc = CertPathCodec.encode(certPath);
 
       digest.reset();
@@ -165,14 +170,15 @@ class DiAppStartController {
 
     } else if (null != m.getOnDieCertChain()) {
       // build dc for DAL ECDSA device
-      final CertPath certPath =
-          onDieCertPathService.buildCertPath(m.getOnDieCertChain(), this.onDieCertCache);
+      final CertPath certPath = metrics.call(DiMetrics.Stage.ONDIE_CERT_PATH, deviceType, keyType,
+          () -> onDieCertPathService.buildCertPath(m.getOnDieCertChain(), this.onDieCertCache));
 
       // validate test signature against certpath
-      if (!onDieSignatureValidator.validate(
-          certPath,
-          m.getSerialNumber().getBytes(),
-          Base64.getDecoder().decode(m.getOnDieTestSignature()))) {
+      if (!metrics.call(DiMetrics.Stage.ONDIE_VALIDATE, deviceType, keyType,
+          () -> onDieSignatureValidator.validate(
+            certPath,
+            m.getSerialNumber().getBytes(),
+            Base64.getDecoder().decode(m.getOnDieTestSignature())))) {
         throw new ResponseStatusException(
           HttpStatus.INTERNAL_SERVER_ERROR, "OnDie test signature failure.");
       }
@@ -189,7 +195,7 @@ class DiAppStartController {
     final PublicKey pk = myCert.getPublicKey();
     final UUID g = UUID.randomUUID();
     final VoucherHeader oh = new VoucherHeader(
-        parseRendezvousInfo(serverSettingsRepo.get().getRendezvousInfo()),
+        serverSettingsCache.get().getEncodedRendezvousInfo(),
         g,
         m.getDeviceInfo(),
         pk,
@@ -0,0 +1,264 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import java.text.MessageFormat;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.sdo.sct.ResourceBundleHolder;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+/**
+ * The executors which run DI protocol messages.
+ *
+ * <p>In {@link Mode#DEFAULT} mode, messages run on Spring MVC's async executor, as they
+ * always have.  In {@link Mode#BOUNDED} mode, each message type has its own fixed-size
+ * thread pool and bounded queue, so that a flood of one message type can't starve the
+ * others, and a full queue turns away new work instead of piling it up.
+ * In {@link Mode#VIRTUAL} mode, every message runs on its own virtual thread, so blocking
+ * database and keystore calls don't pin platform threads.  Virtual threads need Java 21
+ * or newer; on older runtimes this mode falls back to {@link Mode#BOUNDED}.
+ */
+@Service
+public class DiExecutors implements DisposableBean {
+
+  private static ResourceBundleHolder resourceBundleHolder_ =
+      new ResourceBundleHolder(DiExecutors.class.getName());
+
+  private static final int VIRTUAL_THREADS_FEATURE = 21;
+
+  private final Mode mode;
+  private final Map<Message, Lane> lanes = new EnumMap<>(Message.class);
+
+  /**
+   * The execution model for DI messages.
+   */
+  public enum Mode {
+    DEFAULT,
+    BOUNDED,
+    VIRTUAL
+  }
+
+  /**
+   * The DI message types which run asynchronously.
+   */
+  public enum Message {
+    DI_APP_START,
+    DI_SET_HMAC,
+    ERROR
+  }
+
+  /**
+   * Constructor.
+   *
+   * <p>Messages run on Spring MVC's async executor.
+   */
+  public DiExecutors() {
+    this(Mode.DEFAULT, 0, 0);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param mode    The execution model.
+   * @param threads In bounded mode, the number of threads per message type.
+   *                Zero means two per available processor.
+   * @param queue   In bounded mode, the number of messages of each type which may wait
+   *                for a thread.
+   */
+  @Autowired
+  public DiExecutors(
+      @Value("${sdo.di.executor.mode:default}") final String mode,
+      @Value("${sdo.di.executor.threads:0}") final int threads,
+      @Value("${sdo.di.executor.queue:1000}") final int queue) {
+    this(Mode.valueOf(mode.toUpperCase(Locale.ROOT)), threads, queue);
+  }
+
+  DiExecutors(final Mode mode, final int threads, final int queue) {
+
+    if (threads < 0 || queue < 0) {
+      throw new IllegalArgumentException();
+    }
+
+    Mode actual = mode;
+    if (Mode.VIRTUAL == mode && Runtime.version().feature() < VIRTUAL_THREADS_FEATURE) {
+      LoggerFactory.getLogger(getClass()).warn(MessageFormat.format(
+          resourceBundleHolder_.get().getString("virtual.unavailable"),
+          Runtime.version()));
+      actual = Mode.BOUNDED;
+    }
+    this.mode = actual;
+
+    final int poolSize = 0 == threads ? 2 * Runtime.getRuntime().availableProcessors() : threads;
+    for (Message message : Message.values()) {
+      lanes.put(message, new Lane(message, poolSize, queue));
+    }
+
+    LoggerFactory.getLogger(getClass()).info(MessageFormat.format(
+        resourceBundleHolder_.get().getString("mode"), this.mode, poolSize, queue));
+  }
+
+  /**
+   * Wraps a message handler for asynchronous execution on its message type's executor.
+   *
+   * @param message  The message type.
+   * @param callable The message handler.
+   *
+   * @return The task to return from the controller.
+   */
+  public <T> WebAsyncTask<T> submit(final Message message, final Callable<T> callable) {
+    return lanes.get(message).submit(callable);
+  }
+
+  /**
+   * The execution model in use.
+   */
+  public Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * The number of messages of the given type which are waiting for a thread.
+   */
+  public int getQueueDepth(final Message message) {
+    return lanes.get(message).getQueueDepth();
+  }
+
+  /**
+   * The number of messages of the given type which are running.
+   */
+  public int getActiveCount(final Message message) {
+    return lanes.get(message).active.get();
+  }
+
+  /**
+   * The number of messages of the given type which were turned away because their
+   * queue was full.
+   */
+  public long getRejectedCount(final Message message) {
+    return lanes.get(message).rejected.sum();
+  }
+
+  /**
+   * The number of messages of the given type which have completed, successfully or not.
+   */
+  public long getCompletedCount(final Message message) {
+    return lanes.get(message).completed.sum();
+  }
+
+  @Override
+  public void destroy() {
+    for (Lane lane : lanes.values()) {
+      if (null != lane.executorService) {
+        lane.executorService.shutdown();
+      }
+    }
+  }
+
+  private ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService)
+        Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private class Lane {
+
+    private final Message message;
+    private final ExecutorService executorService;
+    private final AsyncTaskExecutor taskExecutor;
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+
+    Lane(final Message message, final int poolSize, final int queue) {
+
+      this.message = message;
+      switch (mode) {
+        case BOUNDED:
+          executorService = new ThreadPoolExecutor(
+            poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+            queue > 0 ? new ArrayBlockingQueue<>(queue) : new SynchronousQueue<>(),
+            new LaneThreadFactory(message),
+            this::reject);
+          break;
+        case VIRTUAL:
+          executorService = newVirtualThreadExecutor();
+          break;
+        default:
+          executorService = null;
+          break;
+      }
+
+      taskExecutor = null == executorService ? null : new ConcurrentTaskExecutor(executorService);
+    }
+
+    <T> WebAsyncTask<T> submit(final Callable<T> callable) {
+
+      final Callable<T> counted = () -> {
+        active.incrementAndGet();
+        try {
+          return callable.call();
+        } finally {
+          active.decrementAndGet();
+          completed.increment();
+        }
+      };
+
+      return null == taskExecutor
+        ? new WebAsyncTask<>(counted)
+        : new WebAsyncTask<>(null, taskExecutor, counted);
+    }
+
+    private void reject(final Runnable r, final ThreadPoolExecutor executor) {
+      rejected.increment();
+      throw new RejectedExecutionException(MessageFormat.format(
+        resourceBundleHolder_.get().getString("rejected"), message));
+    }
+
+    int getQueueDepth() {
+      return executorService instanceof ThreadPoolExecutor
+        ? ((ThreadPoolExecutor) executorService).getQueue().size()
+        : 0;
+    }
+  }
+
+  private static class LaneThreadFactory implements ThreadFactory {
+
+    private final String prefix;
+    private final AtomicInteger count = new AtomicInteger();
+
+    LaneThreadFactory(final Message message) {
+      this.prefix = "di-" + message.name().toLowerCase(Locale.ROOT).replace('_', '-') + "-";
+    }
+
+    @Override
+    public Thread newThread(final Runnable r) {
+      final Thread thread = new Thread(r, prefix + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
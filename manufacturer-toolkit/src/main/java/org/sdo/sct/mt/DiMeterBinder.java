@@ -0,0 +1,157 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.sdo.sct.KeyFinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the manufacturer toolkit's own counters as Micrometer meters.
+ *
+ * <p>The caches, pools and stores already keep their own counts.  The meters read those
+ * counts when the registry is scraped, so nothing is added to the DI path.  Spring Boot
+ * binds every {@link MeterBinder} bean to the application's registry.
+ */
+@Component
+class DiMeterBinder implements MeterBinder {
+
+  private final OnDieCache onDieCache;
+  private final OnDieSignatureValidator onDieSignatureValidator;
+  private final ServerSettingsCache serverSettingsCache;
+  private final DiExecutors diExecutors;
+  private final DiSessionStore sessionStore;
+  private final CertPathService certPathService;
+  private final CertificatesController certificatesController;
+  private final KeyFinder keyFinder;
+
+  @Autowired
+  DiMeterBinder(
+      final OnDieCache onDieCache,
+      final OnDieSignatureValidator onDieSignatureValidator,
+      final ServerSettingsCache serverSettingsCache,
+      final DiExecutors diExecutors,
+      final DiSessionStore sessionStore,
+      final CertPathService certPathService,
+      final CertificatesController certificatesController,
+      final KeyFinder keyFinder) {
+
+    this.onDieCache = onDieCache;
+    this.onDieSignatureValidator = onDieSignatureValidator;
+    this.serverSettingsCache = serverSettingsCache;
+    this.diExecutors = diExecutors;
+    this.sessionStore = sessionStore;
+    this.certPathService = certPathService;
+    this.certificatesController = certificatesController;
+    this.keyFinder = keyFinder;
+  }
+
+  @Override
+  public void bindTo(final MeterRegistry registry) {
+
+    FunctionCounter.builder("sdo.ondie.cache.reloads", onDieCache, OnDieCache::getReloadCount)
+        .register(registry);
+    FunctionCounter.builder("sdo.ondie.cache.parses", onDieCache, OnDieCache::getParseCount)
+        .register(registry);
+    FunctionCounter.builder("sdo.ondie.cache.hits", onDieCache, OnDieCache::getParsedHitCount)
+        .tag("kind", "parsed")
+        .register(registry);
+    FunctionCounter.builder("sdo.ondie.cache.hits", onDieCache, OnDieCache::getChainHitCount)
+        .tag("kind", "chain")
+        .register(registry);
+
+    FunctionCounter.builder("sdo.ondie.validations", onDieSignatureValidator,
+        OnDieSignatureValidator::getParallelCount)
+        .tag("mode", "parallel")
+        .register(registry);
+    FunctionCounter.builder("sdo.ondie.validations", onDieSignatureValidator,
+        OnDieSignatureValidator::getSerialCount)
+        .tag("mode", "serial")
+        .register(registry);
+
+    FunctionCounter.builder("sdo.serversettings.refreshes", serverSettingsCache,
+        ServerSettingsCache::getRefreshCount)
+        .tag("outcome", "success")
+        .register(registry);
+    FunctionCounter.builder("sdo.serversettings.refreshes", serverSettingsCache,
+        ServerSettingsCache::getFailedRefreshCount)
+        .tag("outcome", "failure")
+        .register(registry);
+    FunctionCounter.builder("sdo.serversettings.stale.reads", serverSettingsCache,
+        ServerSettingsCache::getStaleReadCount)
+        .register(registry);
+
+    for (DiExecutors.Message message : DiExecutors.Message.values()) {
+      final String tag = message.name().toLowerCase(Locale.ROOT);
+      Gauge.builder("sdo.di.executor.queued", diExecutors, e -> e.getQueueDepth(message))
+          .tag("message", tag)
+          .register(registry);
+      Gauge.builder("sdo.di.executor.active", diExecutors, e -> e.getActiveCount(message))
+          .tag("message", tag)
+          .register(registry);
+      FunctionCounter.builder("sdo.di.executor.rejected", diExecutors,
+          e -> e.getRejectedCount(message))
+          .tag("message", tag)
+          .register(registry);
+      FunctionCounter.builder("sdo.di.executor.completed", diExecutors,
+          e -> e.getCompletedCount(message))
+          .tag("message", tag)
+          .register(registry);
+    }
+
+    if (sessionStore instanceof MemoryDiSessionStore) {
+      final MemoryDiSessionStore store = (MemoryDiSessionStore) sessionStore;
+      Gauge.builder("sdo.di.sessions", store, MemoryDiSessionStore::getSessionCount)
+          .register(registry);
+      Gauge.builder("sdo.di.sessions.pending.writes", store,
+          MemoryDiSessionStore::getPendingWriteCount)
+          .register(registry);
+      FunctionCounter.builder("sdo.di.sessions.expired", store,
+          MemoryDiSessionStore::getExpiredCount)
+          .register(registry);
+      // The save stages only queue the sessions; this times their database writes.
+      FunctionTimer.builder("sdo.di.sessions.batches", store, MemoryDiSessionStore::getBatchCount,
+          s -> s.getBatchTime().toNanos(), TimeUnit.NANOSECONDS)
+          .register(registry);
+      FunctionCounter.builder("sdo.di.sessions.writes", store,
+          MemoryDiSessionStore::getWrittenCount)
+          .tag("outcome", "success")
+          .register(registry);
+      FunctionCounter.builder("sdo.di.sessions.writes", store,
+          MemoryDiSessionStore::getFailedWriteCount)
+          .tag("outcome", "failure")
+          .register(registry);
+    }
+
+    if (certPathService instanceof SimpleCertPathService) {
+      FunctionCounter.builder("sdo.certpath.issuers", (SimpleCertPathService) certPathService,
+          SimpleCertPathService::getIssuerCount)
+          .register(registry);
+    }
+
+    FunctionCounter.builder("sdo.certificates.batch", certificatesController,
+        CertificatesController::getIssuedCount)
+        .tag("outcome", "success")
+        .register(registry);
+    FunctionCounter.builder("sdo.certificates.batch", certificatesController,
+        CertificatesController::getFailedCount)
+        .tag("outcome", "failure")
+        .register(registry);
+
+    FunctionCounter.builder("sdo.keyfinder.lookups", keyFinder, KeyFinder::getLookupCount)
+        .register(registry);
+    FunctionTimer.builder("sdo.keyfinder.lookup", keyFinder, KeyFinder::getLookupCount,
+        f -> f.getLookupTime().toNanos(), TimeUnit.NANOSECONDS)
+        .register(registry);
+    FunctionCounter.builder("sdo.keyfinder.reloads", keyFinder, KeyFinder::getReloadCount)
+        .register(registry);
+  }
+}
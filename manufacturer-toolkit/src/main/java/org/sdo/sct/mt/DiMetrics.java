@@ -0,0 +1,207 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.sdo.sct.KeyType;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Times the stages of the DI protocol.
+ *
+ * <p>Every stage is recorded by the {@value #STAGE_TIMER} timer, tagged with the stage, the
+ * device type, the device's key type and the outcome: <code>failure</code> if the stage
+ * threw, otherwise <code>success</code>.  The timers publish histograms, so a Prometheus
+ * server can compute latency percentiles per tag.
+ *
+ * <p>The timers are registered in the application's {@link MeterRegistry}.  Without one,
+ * they go to Micrometer's global registry, which drops them unless a registry is added.
+ * Each tag combination's timer is registered the first time it is recorded, and kept, so
+ * later records don't look it up in the registry.
+ */
+@Service
+class DiMetrics {
+
+  /**
+   * The name of the stage timers.
+   */
+  static final String STAGE_TIMER = "sdo.di.stage";
+
+  private static final String UNKNOWN = "unknown";
+
+  // The slots for each tag, with one for unknown device and key types.
+  private static final int DEVICE_SLOTS = DeviceType.values().length + 1;
+  private static final int KEY_SLOTS = KeyType.values().length + 1;
+
+  private final MeterRegistry registry;
+
+  // The timers, by tag combination.  See index().
+  private final AtomicReferenceArray<Timer> timers =
+      new AtomicReferenceArray<>(Stage.values().length * DEVICE_SLOTS * KEY_SLOTS * 2);
+
+  /**
+   * The timed stages of DI.
+   */
+  enum Stage {
+    MSTRING_PARSE("mstring.parse"),
+    KEY_FIND("key.find"),
+    CERT_PATH_APPLY("certpath.apply"),
+    ONDIE_CERT_PATH("ondie.certpath"),
+    ONDIE_VALIDATE("ondie.validate"),
+    DEVICE_STATE_SAVE("devicestate.save"),
+    VOUCHER_SAVE("voucher.save");
+
+    private final String tag;
+
+    Stage(final String tag) {
+      this.tag = tag;
+    }
+  }
+
+  /**
+   * The kinds of device, by the credentials they send in DI.AppStart.
+   */
+  enum DeviceType {
+    EPID,
+    ECDSA,
+    ONDIE;
+
+    /**
+     * Returns the type of the device which sent an mstring.
+     */
+    static DeviceType of(final MStringParser.ParseResult m) {
+      if (null != m.getCsr()) {
+        return ECDSA;
+      } else if (null != m.getOnDieCertChain()) {
+        return ONDIE;
+      } else {
+        return EPID;
+      }
+    }
+  }
+
+  /**
+   * Constructor.
+   *
+   * <p>Stages are recorded in Micrometer's global registry.
+   */
+  DiMetrics() {
+    this(Metrics.globalRegistry);
+  }
+
+  @Autowired
+  DiMetrics(final ObjectProvider<MeterRegistry> registry) {
+    this(registry.getIfAvailable(() -> Metrics.globalRegistry));
+  }
+
+  DiMetrics(final MeterRegistry registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * Calls a stage and records its time.
+   *
+   * @param stage      The stage.
+   * @param deviceType The device type, or null if it isn't known.
+   * @param keyType    The device's key type, or null if it isn't known.
+   * @param callable   The stage.
+   *
+   * @return The stage's result.
+   */
+  <T> T call(
+      final Stage stage,
+      final DeviceType deviceType,
+      final KeyType keyType,
+      final Callable<T> callable) throws Exception {
+
+    final long start = System.nanoTime();
+    boolean success = false;
+    try {
+      final T result = callable.call();
+      success = true;
+      return result;
+    } finally {
+      record(stage, deviceType, keyType, success, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Runs a stage and records its time.
+   *
+   * @param stage      The stage.
+   * @param deviceType The device type, or null if it isn't known.
+   * @param keyType    The device's key type, or null if it isn't known.
+   * @param runnable   The stage.
+   */
+  void run(
+      final Stage stage,
+      final DeviceType deviceType,
+      final KeyType keyType,
+      final Runnable runnable) {
+
+    final long start = System.nanoTime();
+    boolean success = false;
+    try {
+      runnable.run();
+      success = true;
+    } finally {
+      record(stage, deviceType, keyType, success, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Records the time of a stage.
+   *
+   * @param stage      The stage.
+   * @param deviceType The device type, or null if it isn't known.
+   * @param keyType    The device's key type, or null if it isn't known.
+   * @param success    Whether the stage succeeded.
+   * @param nanos      How long the stage took.
+   */
+  void record(
+      final Stage stage,
+      final DeviceType deviceType,
+      final KeyType keyType,
+      final boolean success,
+      final long nanos) {
+
+    final int index = index(stage, deviceType, keyType, success);
+    Timer timer = timers.get(index);
+    if (null == timer) {
+      // Registering is idempotent, so threads which race here get the same timer.
+      timer = Timer.builder(STAGE_TIMER)
+          .description("Time spent in each stage of DI")
+          .tag("stage", stage.tag)
+          .tag("device",
+              null == deviceType ? UNKNOWN : deviceType.name().toLowerCase(Locale.ROOT))
+          .tag("keyType", null == keyType ? UNKNOWN : keyType.name())
+          .tag("outcome", success ? "success" : "failure")
+          .publishPercentileHistogram()
+          .register(registry);
+      timers.set(index, timer);
+    }
+    timer.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  // An unknown device or key type takes the last slot for its tag.
+  private static int index(
+      final Stage stage,
+      final DeviceType deviceType,
+      final KeyType keyType,
+      final boolean success) {
+
+    int index = stage.ordinal();
+    index = index * DEVICE_SLOTS + (null == deviceType ? DEVICE_SLOTS - 1 : deviceType.ordinal());
+    index = index * KEY_SLOTS + (null == keyType ? KEY_SLOTS - 1 : keyType.ordinal());
+    return index * 2 + (success ? 1 : 0);
+  }
+}
@@ -0,0 +1,36 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import java.util.Optional;
+import org.sdo.sct.domain.DeviceState;
+import org.sdo.sct.domain.OwnershipVoucherEntry;
+
+/**
+ * Where DI sessions are kept between DI.AppStart and DI.SetHMAC.
+ *
+ * <p>A session is in flight while its status is {@link DeviceStatus#PENDING}.
+ * Once a session has any other status it is finished, and the store must eventually
+ * record it in the database.
+ *
+ * @see JpaDiSessionStore
+ * @see MemoryDiSessionStore
+ */
+interface DiSessionStore {
+
+  /**
+   * Finds the session for the given device serial number.
+   */
+  Optional<DeviceState> find(String deviceSerialNo);
+
+  /**
+   * Records a session, in flight or finished.
+   */
+  void save(DeviceState state);
+
+  /**
+   * Records a finished session and the ownership voucher it produced.
+   */
+  void save(DeviceState state, OwnershipVoucherEntry voucher);
+}
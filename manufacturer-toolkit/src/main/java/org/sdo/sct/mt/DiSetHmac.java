@@ -12,6 +12,8 @@ import org.springframework.util.StreamUtils;
 
 class DiSetHmac {
 
+  private static final Pattern PATTERN = Pattern.compile("\\{\"hmac\":(.*?)}");
+
   private final String hmac;
 
   DiSetHmac(final String hmac) {
@@ -20,9 +22,8 @@ class DiSetHmac {
 
   static DiSetHmac decode(InputStream inputStream) throws IOException {
 
-    final Pattern pat = Pattern.compile("\\{\"hmac\":(.*?)}");
     final Matcher matcher =
-        pat.matcher(StreamUtils.copyToString(inputStream, StandardCharsets.US_ASCII));
+        PATTERN.matcher(StreamUtils.copyToString(inputStream, StandardCharsets.US_ASCII));
 
     if (!matcher.matches()) {
       throw new IllegalArgumentException();
@@ -7,11 +7,10 @@ import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.Base64;
-import java.util.concurrent.Callable;
+import org.sdo.sct.KeyType;
+import org.sdo.sct.KeyTypeCodec;
 import org.sdo.sct.domain.DeviceState;
-import org.sdo.sct.domain.DeviceStateRepo;
 import org.sdo.sct.domain.OwnershipVoucherEntry;
-import org.sdo.sct.domain.OwnershipVoucherRepo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -22,27 +21,30 @@ import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
 @RestController
 @SuppressWarnings("unused")
 class DiSetHmacController {
 
   private static final String BREAK = "\03";
-  private final DeviceStateRepo deviceStateRepo;
-  private final OwnershipVoucherRepo ownerVoucherRepo;
+  private final DiSessionStore sessionStore;
+  private final DiExecutors diExecutors;
+  private final DiMetrics metrics;
 
   @Autowired
   DiSetHmacController(
-      DeviceStateRepo deviceStateRepo, OwnershipVoucherRepo ownerVoucherRepo) {
-    this.deviceStateRepo = deviceStateRepo;
-    this.ownerVoucherRepo = ownerVoucherRepo;
+      DiSessionStore sessionStore, DiExecutors diExecutors, DiMetrics metrics) {
+    this.sessionStore = sessionStore;
+    this.diExecutors = diExecutors;
+    this.metrics = metrics;
   }
 
   @PostMapping(path = "/mp/113/msg/12",
       consumes = MediaType.APPLICATION_JSON_VALUE,
       produces = MediaType.APPLICATION_JSON_VALUE)
   @SuppressWarnings("unused")
-  Callable<DiDone> post(
+  WebAsyncTask<DiDone> post(
       @RequestHeader(HttpHeaders.AUTHORIZATION) String authToken,
       @RequestBody final DiSetHmac diSetHmac) {
 
@@ -56,14 +58,15 @@ class DiSetHmacController {
         HttpStatus.BAD_REQUEST, null, null, null, StandardCharsets.US_ASCII);
     }
 
-    return () -> post_(authToken, diSetHmac);
+    return diExecutors.submit(
+      DiExecutors.Message.DI_SET_HMAC, () -> post_(authToken, diSetHmac));
   }
 
   private DiDone post_(final String authToken, final DiSetHmac diSetHmac) {
     final String deviceSerial =
         new String(Base64.getDecoder().decode(authToken), StandardCharsets.UTF_16);
 
-    final DeviceState session = deviceStateRepo.findById(deviceSerial)
+    final DeviceState session = sessionStore.find(deviceSerial)
         .orElseThrow(() -> HttpClientErrorException.create(
         HttpStatus.UNAUTHORIZED, null, null, null, StandardCharsets.US_ASCII));
 
@@ -79,12 +82,41 @@ class DiSetHmacController {
 
     final String ov = session.getSessionData().replace(BREAK, diSetHmac.getHmac());
     final Timestamp now = Timestamp.from(Instant.now());
-    ownerVoucherRepo.save(new OwnershipVoucherEntry(deviceSerial, ov, null));
-
     session.setStatus(DeviceStatus.OK);
     session.setDiEnd(now);
-    deviceStateRepo.save(session);
+    final KeyType keyType = keyTypeOf(session.getDetails());
+    // Only ECDSA and OnDie devices have a device certificate chain in their voucher.
+    final DiMetrics.DeviceType deviceType;
+    if (!ov.contains(",\"dc\":")) {
+      deviceType = DiMetrics.DeviceType.EPID;
+    } else if (null != keyType && "EC".equals(keyType.getJceAlgorithm())) {
+      deviceType = DiMetrics.DeviceType.ECDSA;
+    } else {
+      deviceType = DiMetrics.DeviceType.ONDIE;
+    }
+    metrics.run(DiMetrics.Stage.VOUCHER_SAVE, deviceType, keyType,
+        () -> sessionStore.save(session, new OwnershipVoucherEntry(deviceSerial, ov, null)));
 
     return new DiDone();
   }
+
+  // The session's details hold the DI.AppStart mstring, but may have been truncated to fit
+  // the column, so decode only as far as the key type, which comes first.
+  // Like MStringParser, treat an mstring which isn't encoded as a legacy EPID device's.
+  private static KeyType keyTypeOf(final String mstring) {
+    if (null == mstring) {
+      return null;
+    }
+    try {
+      final byte[] m = Base64.getDecoder().decode(mstring.substring(0, mstring.length() & ~3));
+      final String token = new String(m, StandardCharsets.US_ASCII);
+      final int end = token.indexOf('\0');
+      if (end > 0) {
+        return KeyTypeCodec.decode(token.substring(0, end));
+      }
+    } catch (IllegalArgumentException e) {
+      // not an encoded mstring
+    }
+    return KeyType.RSA2048RESTR;
+  }
 }
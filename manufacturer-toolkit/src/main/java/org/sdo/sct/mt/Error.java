@@ -22,6 +22,8 @@ class Error {
 
   private static final int EC_BITS = 16;
   private static final int EMSG_BITS = 8;
+  private static final Pattern PATTERN =
+      Pattern.compile("\\{\"ec\":(\\d+),\"emsg\":(\\d+),\"em\":\"([^\"]*)\"}");
 
   Error(final int ec, final int emsg, final String em) {
     this.ec = ec;
@@ -31,9 +33,8 @@ class Error {
 
   static Error decode(InputStream inputStream) throws IOException {
 
-    final Pattern pat = Pattern.compile("\\{\"ec\":(\\d+),\"emsg\":(\\d+),\"em\":\"([^\"]*)\"}");
     final Matcher matcher =
-        pat.matcher(StreamUtils.copyToString(inputStream, StandardCharsets.US_ASCII));
+        PATTERN.matcher(StreamUtils.copyToString(inputStream, StandardCharsets.US_ASCII));
 
     if (!matcher.matches()) {
       throw new IllegalArgumentException();
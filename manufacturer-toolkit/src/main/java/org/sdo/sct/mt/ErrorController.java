@@ -7,9 +7,7 @@ import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.Base64;
-import java.util.concurrent.Callable;
 import org.sdo.sct.domain.DeviceState;
-import org.sdo.sct.domain.DeviceStateRepo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -19,23 +17,26 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
 @RestController
 @SuppressWarnings("unused")
 class ErrorController {
 
-  private final DeviceStateRepo deviceStateRepo;
+  private final DiSessionStore sessionStore;
+  private final DiExecutors diExecutors;
 
   @Autowired
-  ErrorController(DeviceStateRepo deviceStateRepo) {
-    this.deviceStateRepo = deviceStateRepo;
+  ErrorController(DiSessionStore sessionStore, DiExecutors diExecutors) {
+    this.sessionStore = sessionStore;
+    this.diExecutors = diExecutors;
   }
 
   @PostMapping(path = "/mp/113/msg/255",
       consumes = MediaType.APPLICATION_JSON_VALUE,
       produces = MediaType.APPLICATION_JSON_VALUE)
   @SuppressWarnings("unused")
-  Callable<Void> post(
+  WebAsyncTask<Void> post(
       @RequestHeader(HttpHeaders.AUTHORIZATION) String authToken,
       @RequestBody final Error error) {
 
@@ -57,21 +58,21 @@ class ErrorController {
         HttpStatus.BAD_REQUEST, null, null, null, StandardCharsets.US_ASCII);
     }
 
-    return () -> {
+    return diExecutors.submit(DiExecutors.Message.ERROR, () -> {
       post_(deviceSerial, error);
       return null;
-    };
+    });
   }
 
   void post_(final String deviceSerial, final Error error) {
 
-    final DeviceState session = deviceStateRepo.findById(deviceSerial)
+    final DeviceState session = sessionStore.find(deviceSerial)
         .orElseThrow(() -> HttpClientErrorException.create(
         HttpStatus.UNAUTHORIZED, null, null, null, StandardCharsets.US_ASCII));
 
     session.setStatus(DeviceStatus.FAILED);
     session.setDiEnd(Timestamp.from(Instant.now()));
     session.setDetails(error.getEm());
-    deviceStateRepo.save(session);
+    sessionStore.save(session);
   }
 }
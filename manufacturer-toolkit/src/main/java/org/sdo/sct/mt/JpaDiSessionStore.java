@@ -0,0 +1,51 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import java.util.Optional;
+import org.sdo.sct.domain.DeviceState;
+import org.sdo.sct.domain.DeviceStateRepo;
+import org.sdo.sct.domain.OwnershipVoucherEntry;
+import org.sdo.sct.domain.OwnershipVoucherRepo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+/**
+ * A {@link DiSessionStore} which writes every change straight to the database.
+ *
+ * <p>This is the default.  In-flight sessions are visible in mt_device_state as they
+ * progress, at the cost of a database round trip for every DI message.
+ */
+@Service
+@ConditionalOnProperty(name = "sdo.di.sessions.store", havingValue = "database",
+    matchIfMissing = true)
+class JpaDiSessionStore implements DiSessionStore {
+
+  private final DeviceStateRepo deviceStateRepo;
+  private final OwnershipVoucherRepo ownershipVoucherRepo;
+
+  @Autowired
+  JpaDiSessionStore(
+      final DeviceStateRepo deviceStateRepo, final OwnershipVoucherRepo ownershipVoucherRepo) {
+    this.deviceStateRepo = deviceStateRepo;
+    this.ownershipVoucherRepo = ownershipVoucherRepo;
+  }
+
+  @Override
+  public Optional<DeviceState> find(final String deviceSerialNo) {
+    return deviceStateRepo.findById(deviceSerialNo);
+  }
+
+  @Override
+  public void save(final DeviceState state) {
+    deviceStateRepo.save(state);
+  }
+
+  @Override
+  public void save(final DeviceState state, final OwnershipVoucherEntry voucher) {
+    ownershipVoucherRepo.save(voucher);
+    deviceStateRepo.save(state);
+  }
+}
@@ -0,0 +1,294 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.text.MessageFormat;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import javax.persistence.EntityManagerFactory;
+import org.sdo.sct.ResourceBundleHolder;
+import org.sdo.sct.domain.DeviceState;
+import org.sdo.sct.domain.DeviceStateRepo;
+import org.sdo.sct.domain.OwnershipVoucherEntry;
+import org.sdo.sct.domain.WriteBehindQueue;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * A {@link DiSessionStore} which keeps in-flight sessions in memory.
+ *
+ * <p>In-flight sessions never touch the database.  Finished sessions, and the vouchers they
+ * produced, are handed to a {@link WriteBehindQueue} and written in batches by a background
+ * thread, so no DI message waits for the database.  If a journal is configured, finished
+ * sessions survive a crash before they are written.
+ *
+ * <p>The store holds a bounded number of in-flight sessions, each for a bounded time.
+ * A session which outlives its time, or is pushed out by newer sessions, is finished
+ * with status {@link DeviceStatus#TIMEOUT}.  The timed-out record is a copy, so a DI message
+ * still working on the session never sees it change.  Sessions still in flight at shutdown are
+ * written as they are, so that they can be completed from the database after a restart.
+ */
+@Service
+@ConditionalOnProperty(name = "sdo.di.sessions.store", havingValue = "memory")
+class MemoryDiSessionStore implements DiSessionStore, DisposableBean {
+
+  private static ResourceBundleHolder resourceBundleHolder_ =
+      new ResourceBundleHolder(MemoryDiSessionStore.class.getName());
+
+  private final DeviceStateRepo deviceStateRepo;
+  private final int capacity;
+  private final Duration ttl;
+
+  // In insertion order, which is also expiry order since every session has the same TTL.
+  private final Map<String, Session> sessions = new LinkedHashMap<>();
+  private final WriteBehindQueue writes;
+  private final LongAdder expiredCount = new LongAdder();
+
+  /**
+   * Constructor.
+   *
+   * @param deviceStateRepo      The repository for finished sessions.
+   * @param entityManagerFactory The factory for the session database.
+   * @param transactionManager   The transaction manager for the session database.
+   * @param capacity             The maximum number of in-flight sessions.
+   * @param ttl                  How long a session may stay in flight.
+   * @param queueCapacity        The most finished sessions which may wait to be written.
+   * @param queueWait            How long to wait for room in a full write queue.
+   * @param batchSize            The most finished sessions to write in one batch.
+   * @param flushInterval        How often finished sessions are written.
+   * @param journal              The journal of finished sessions not yet written,
+   *                             or empty for none.
+   */
+  @Autowired
+  MemoryDiSessionStore(
+      final DeviceStateRepo deviceStateRepo,
+      final EntityManagerFactory entityManagerFactory,
+      final PlatformTransactionManager transactionManager,
+      @Value("${sdo.di.sessions.capacity:10000}") final int capacity,
+      @Value("${sdo.di.sessions.ttl:5m}") final Duration ttl,
+      @Value("${sdo.di.sessions.queue:10000}") final int queueCapacity,
+      @Value("${sdo.di.sessions.queue.wait:5s}") final Duration queueWait,
+      @Value("${sdo.di.sessions.batch:100}") final int batchSize,
+      @Value("${sdo.di.sessions.flush:1s}") final Duration flushInterval,
+      @Value("${sdo.di.sessions.journal:}") final String journal) {
+
+    if (capacity < 1) {
+      throw new IllegalArgumentException();
+    }
+
+    this.deviceStateRepo = deviceStateRepo;
+    this.capacity = capacity;
+    this.ttl = ttl;
+    this.writes = new WriteBehindQueue(
+      entityManagerFactory,
+      transactionManager,
+      queueCapacity,
+      queueWait,
+      batchSize,
+      flushInterval,
+      journal.isEmpty() ? null : Path.of(journal));
+  }
+
+  @Override
+  public Optional<DeviceState> find(final String deviceSerialNo) {
+
+    final List<DeviceState> expired = new ArrayList<>();
+    final Session session;
+    synchronized (sessions) {
+      expire(expired);
+      session = sessions.get(deviceSerialNo);
+    }
+    timeout(expired);
+
+    if (null != session) {
+      return Optional.of(session.state);
+    }
+
+    // The session may have been started before a restart.
+    return deviceStateRepo.findById(deviceSerialNo);
+  }
+
+  @Override
+  public void save(final DeviceState state) {
+
+    if (!Objects.equals(DeviceStatus.PENDING, state.getStatus())) {
+      finish(state, null);
+      return;
+    }
+
+    final List<DeviceState> expired = new ArrayList<>();
+    synchronized (sessions) {
+      expire(expired);
+
+      // Re-inserting moves a restarted session to the back of the expiry order.
+      sessions.remove(state.getDeviceSerialNo());
+      sessions.put(state.getDeviceSerialNo(), new Session(state, Instant.now().plus(ttl)));
+
+      while (sessions.size() > capacity) {
+        final Iterator<Session> it = sessions.values().iterator();
+        expired.add(it.next().state);
+        it.remove();
+      }
+    }
+    timeout(expired);
+  }
+
+  @Override
+  public void save(final DeviceState state, final OwnershipVoucherEntry voucher) {
+    finish(state, voucher);
+  }
+
+  /**
+   * The number of sessions in flight.
+   */
+  int getSessionCount() {
+    synchronized (sessions) {
+      return sessions.size();
+    }
+  }
+
+  /**
+   * The number of finished sessions waiting to be written.
+   */
+  int getPendingWriteCount() {
+    return writes.getPendingCount();
+  }
+
+  /**
+   * The number of sessions which timed out or were pushed out by newer sessions.
+   */
+  long getExpiredCount() {
+    return expiredCount.sum();
+  }
+
+  /**
+   * The number of finished sessions written.
+   */
+  long getWrittenCount() {
+    return writes.getWrittenCount();
+  }
+
+  /**
+   * The number of transactions in which finished sessions were written.
+   */
+  long getBatchCount() {
+    return writes.getBatchCount();
+  }
+
+  /**
+   * The total time spent in the transactions counted by {@link #getBatchCount()}.
+   */
+  Duration getBatchTime() {
+    return writes.getBatchTime();
+  }
+
+  /**
+   * The number of failed attempts to write a finished session.
+   */
+  long getFailedWriteCount() {
+    return writes.getFailedCount();
+  }
+
+  /**
+   * Writes every queued session.
+   */
+  void flush() {
+    writes.flush();
+  }
+
+  @Override
+  public void destroy() {
+
+    final List<Session> remaining;
+    synchronized (sessions) {
+      remaining = new ArrayList<>(sessions.values());
+      sessions.clear();
+    }
+
+    for (Session session : remaining) {
+      try {
+        writes.add(session.state, null);
+      } catch (RejectedExecutionException | UncheckedIOException e) {
+        LoggerFactory.getLogger(getClass()).error(e.getMessage(), e);
+      }
+    }
+    writes.close();
+  }
+
+  private void finish(final DeviceState state, final OwnershipVoucherEntry voucher) {
+
+    synchronized (sessions) {
+      sessions.remove(state.getDeviceSerialNo());
+    }
+    writes.add(state, voucher);
+  }
+
+  // Removes expired sessions, and adds them to the given list to be timed out once the
+  // lock is released.  The caller must hold the sessions lock.
+  private void expire(final List<DeviceState> expired) {
+
+    final Instant now = Instant.now();
+    final Iterator<Session> it = sessions.values().iterator();
+    while (it.hasNext()) {
+      final Session session = it.next();
+      if (now.isBefore(session.expires)) {
+        break;
+      }
+      expired.add(session.state);
+      it.remove();
+    }
+  }
+
+  // Queues a timed-out copy of each session.  The caller must not hold the sessions lock,
+  // since a full queue makes this wait.
+  private void timeout(final List<DeviceState> expired) {
+
+    for (DeviceState state : expired) {
+      expiredCount.increment();
+      final DeviceState timedOut = new DeviceState(
+          state.getDeviceSerialNo(),
+          state.getDiStart(),
+          Timestamp.from(Instant.now()),
+          state.getSessionData(),
+          DeviceStatus.TIMEOUT,
+          resourceBundleHolder_.get().getString("session.expired"));
+      try {
+        writes.add(timedOut, null);
+      } catch (RejectedExecutionException | UncheckedIOException e) {
+        // The session is already out of memory; losing its timeout only loses the record.
+        LoggerFactory.getLogger(getClass()).error(MessageFormat.format(
+            resourceBundleHolder_.get().getString("timeout.dropped"),
+            state.getDeviceSerialNo(), e.getMessage()), e);
+      }
+    }
+  }
+
+  private static class Session {
+
+    final DeviceState state;
+    final Instant expires;
+
+    Session(final DeviceState state, final Instant expires) {
+      this.state = state;
+      this.expires = expires;
+    }
+  }
+}
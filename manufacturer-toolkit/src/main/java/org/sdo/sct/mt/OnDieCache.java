@@ -10,37 +10,112 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.text.MessageFormat;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Attribute;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
+import org.sdo.sct.BouncyCastleSingleton;
+import org.sdo.sct.JceFactories;
+import org.sdo.sct.ResourceBundleHolder;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 
-
+/**
+ * An in-memory cache of the OnDie certificates and CRLs in the cache directory.
+ *
+ * <p>If the cache directory holds an indexed cache file, {@value #CACHE_FILE}, written by
+ * {@link OnDieCacheBuilder}, that file is memory-mapped and lookups return views of it.
+ * Otherwise, or if a .cer or .crl file in the directory is newer than the cache file,
+ * every .cer and .crl file in the directory is read into memory.
+ *
+ * <p>The cache is an immutable snapshot of the directory, replaced as a whole when the
+ * directory is updated, so lookups never touch the filesystem or take a lock.
+ * A background thread checks for the update touch file and loads the new snapshot.
+ * Requests in progress during a reload finish with the snapshot they started with.
+ *
+ * <p>Each snapshot also holds the certificates and CRLs it has parsed, by entry name,
+ * so an entry is parsed once however many devices refer to it, and the issuer chains
+ * built from them.  CRLs are indexed by serial number (see {@link OnDieCrl}).  A reload
+ * starts with nothing parsed.
+ */
 @Service
-public class OnDieCache {
+public class OnDieCache implements DisposableBean {
+
+  /**
+   * The name of the indexed cache file in the cache directory.
+   */
+  public static final String CACHE_FILE = "ondie.cache";
+
+  /**
+   * The name of the touch file which signals that the cache directory has been updated.
+   */
+  public static final String CACHE_UPDATED_TOUCH_FILE = "cache_updated";
 
   private boolean autoUpdate = false;
 
-  private String cacheDir = "";
+  private String cacheDir = null;
 
   private final List<URL> sourceUrl = new ArrayList<URL>();
 
-  private HashMap<String, byte[]> cacheMap = new HashMap<String, byte[]>();
+  private volatile Snapshot snapshot = new Snapshot(OnDieCacheFile.EMPTY);
+
+  private final String cacheUpdatedTouchFile = CACHE_UPDATED_TOUCH_FILE;
+
+  private final ScheduledExecutorService reloader;
 
-  private final String cacheUpdatedTouchFile = "cache_updated";
+  private final LongAdder reloadCount = new LongAdder();
+
+  private final LongAdder parseCount = new LongAdder();
+
+  private final LongAdder parsedHitCount = new LongAdder();
+
+  private final LongAdder chainHitCount = new LongAdder();
+
+  private static ResourceBundleHolder resourceBundleHolder_ =
+      new ResourceBundleHolder(OnDieCache.class.getName());
+
+  /**
+   * Constructor.
+   *
+   * <p>The cache directory is read once, and again only when {@link #reload} is called.
+   *
+   * @param cacheDir cacheDir
+   * @param autoUpdate autoUpdate
+   * @param sourceUrlList sourceUrlList
+   */
+  public OnDieCache(final String cacheDir,
+                    final boolean autoUpdate,
+                    final String sourceUrlList)
+      throws Exception {
+    this(cacheDir, autoUpdate, sourceUrlList, Duration.ZERO);
+  }
 
   /**
    * Constructor.
@@ -48,11 +123,14 @@ public class OnDieCache {
    * @param cacheDir cacheDir
    * @param autoUpdate autoUpdate
    * @param sourceUrlList sourceUrlList
+   * @param reloadInterval how often to check the cache directory for updates,
+   *                       or zero to check only when {@link #reload} is called
    */
   @Autowired
   public OnDieCache(@Value("${sdo.ondiecache.cachedir:#{null}}") final String cacheDir,
                     @Value("${sdo.ondiecache.autoupdate:false}") final boolean autoUpdate,
-                    @Value("${sdo.ondiecache.urlsources:}") final String sourceUrlList)
+                    @Value("${sdo.ondiecache.urlsources:}") final String sourceUrlList,
+                    @Value("${sdo.ondiecache.reload:10s}") final Duration reloadInterval)
       throws Exception {
 
     if (sourceUrlList != null && !sourceUrlList.isEmpty()) {
@@ -83,6 +161,18 @@ public class OnDieCache {
       }
       loadCacheMap();
     }
+
+    if (null == this.cacheDir || reloadInterval.isZero() || reloadInterval.isNegative()) {
+      reloader = null;
+    } else {
+      reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "ondie-cache-reload");
+        thread.setDaemon(true);
+        return thread;
+      });
+      reloader.scheduleWithFixedDelay(this::poll,
+          reloadInterval.toMillis(), reloadInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
   }
 
 
@@ -133,48 +223,153 @@ public class OnDieCache {
   /**
    * Loads the memory map of cache values from the cache directory.
    *
+   * <p>The indexed cache file and the loose .cer and .crl files can both be present, for
+   * example when autoupdate has downloaded files into a directory which also holds a
+   * cache file from {@link OnDieCacheBuilder}.  Whichever was written last is loaded.
+   *
+   * <p>The new map replaces the old one only once it is complete.
+   *
    * @throws Exception if error
    */
   private void loadCacheMap() throws IOException {
     if (cacheDir != null) {
       File cache = new File(cacheDir);
+      List<File> looseFiles = new ArrayList<>();
+      long looseModified = Long.MIN_VALUE;
 
-      // Read each file and load into the hashmap
       File[] files = new File(cache.getAbsolutePath()).listFiles();
       if (files != null) {
         for (File file : files) {
           if (!file.isDirectory()) {
             if (file.getName().toLowerCase().endsWith(".crl")
                 || file.getName().toLowerCase().endsWith(".cer")) {
-              cacheMap.put(file.getName(), Files.readAllBytes(Paths.get(file.getAbsolutePath())));
+              looseFiles.add(file);
+              looseModified = Math.max(looseModified, file.lastModified());
             }
           }
         }
       }
+
+      Path cacheFile = Paths.get(cacheDir, CACHE_FILE);
+      if (Files.exists(cacheFile)
+          && Files.getLastModifiedTime(cacheFile).toMillis() >= looseModified) {
+        try {
+          snapshot = new Snapshot(OnDieCacheFile.open(cacheFile));
+        } catch (IllegalArgumentException e) {
+          throw new IOException(e.getMessage() + ": " + cacheFile, e);
+        }
+        logLoaded(cacheFile.toString());
+        return;
+      }
+
+      // Read each file and load into the hashmap
+      Map<String, byte[]> map = new HashMap<>();
+      for (File file : looseFiles) {
+        map.put(file.getName(), Files.readAllBytes(Paths.get(file.getAbsolutePath())));
+      }
+      snapshot = new Snapshot(OnDieCacheFile.of(map));
+      logLoaded(resourceBundleHolder_.get().getString("source.files"));
     }
   }
 
+  private void logLoaded(final String source) {
+    LoggerFactory.getLogger(getClass()).info(MessageFormat.format(
+        resourceBundleHolder_.get().getString("cache.loaded"),
+        cacheDir, getNumOfCerts(), getNumOfCrls(), source));
+  }
 
-  private boolean isCacheUpdateNeeded() throws IOException {
-    if (cacheDir != null) {
-      File cache = new File(cacheDir);
+  /**
+   * Reloads the cache if the cache directory has been updated.
+   *
+   * <p>An update is signalled by the touch file which {@link OnDieCacheBuilder} creates
+   * once it has finished writing.  The touch file is removed only once the update has
+   * loaded, so an update which fails to load is tried again at the next check.
+   *
+   * @return true if the cache was reloaded.
+   * @throws IOException if the updated directory can't be read.
+   *                     The previous contents of the cache are kept.
+   */
+  public synchronized boolean reload() throws IOException {
+    if (isCacheUpdateNeeded()) {
+      installNewFiles();
+      loadCacheMap();
+      Files.delete(Paths.get(cacheDir, cacheUpdatedTouchFile));
+      reloadCount.increment();
+      return true;
+    }
+    return false;
+  }
 
-      // check for the "files updated" touch file
-      if (Files.exists(Paths.get(cache.getAbsolutePath(), cacheUpdatedTouchFile))) {
-        // rename all .new files and remove touch file
-        FilenameFilter filter = (dir, name) -> name.endsWith(".new");
-        File[] files = new File(cache.getAbsolutePath()).listFiles(filter);
-        for (File file : files) {
-          File targetFile = new File(file.getAbsolutePath().replaceAll(".new", ""));
-          targetFile.delete();
-          file.renameTo(targetFile);
-          file.delete();
-        }
-        Files.delete(Paths.get(cacheDir, cacheUpdatedTouchFile));
-        return true;
+  /**
+   * Returns the number of times the cache has been reloaded since it was built.
+   *
+   * @return long the number of reloads
+   */
+  public long getReloadCount() {
+    return reloadCount.sum();
+  }
+
+  /**
+   * Returns the number of certificates and CRLs parsed since the cache was built.
+   *
+   * @return long the number of entries parsed
+   */
+  public long getParseCount() {
+    return parseCount.sum();
+  }
+
+  /**
+   * Returns the number of lookups served with an already parsed certificate or CRL.
+   *
+   * @return long the number of lookups which didn't parse
+   */
+  public long getParsedHitCount() {
+    return parsedHitCount.sum();
+  }
+
+  /**
+   * Returns the number of lookups served with an already built issuer chain.
+   *
+   * @return long the number of issuer chains reused
+   */
+  public long getChainHitCount() {
+    return chainHitCount.sum();
+  }
+
+  @Override
+  public void destroy() {
+    if (null != reloader) {
+      reloader.shutdownNow();
+    }
+  }
+
+  private void poll() {
+    try {
+      reload();
+    } catch (IOException | RuntimeException e) {
+      LoggerFactory.getLogger(getClass()).warn(e.getMessage(), e);
+    }
+  }
+
+
+  private boolean isCacheUpdateNeeded() {
+    // check for the "files updated" touch file
+    return cacheDir != null && Files.exists(Paths.get(cacheDir, cacheUpdatedTouchFile));
+  }
+
+  // Renames each .new file in the cache directory over the file it replaces.
+  private void installNewFiles() {
+    File cache = new File(cacheDir);
+    FilenameFilter filter = (dir, name) -> name.endsWith(".new");
+    File[] files = new File(cache.getAbsolutePath()).listFiles(filter);
+    if (files != null) {
+      for (File file : files) {
+        File targetFile = new File(file.getAbsolutePath().replaceAll(".new", ""));
+        targetFile.delete();
+        file.renameTo(targetFile);
+        file.delete();
       }
     }
-    return false;
   }
 
 
@@ -188,20 +383,164 @@ public class OnDieCache {
    * @throws Exception if error
    */
   public byte[] getCertOrCrl(String pathName) throws IOException, IllegalArgumentException {
-    if (isCacheUpdateNeeded()) {
-      loadCacheMap();  // initialize cache if not yet initialized
+    ByteBuffer buffer = getCertOrCrlBuffer(pathName);
+    if (buffer == null) {
+      return null;
     }
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
 
-    URL url = new URL(pathName);
-    if (url == null) {
-      throw new IllegalArgumentException("OnDieCache: illegal crl reference: " + pathName);
+  /**
+   * Returns the certificate or CRL corresponding to the specified pathname, without
+   * copying it.
+   *
+   * @param pathName pathName of cache entry to retrieve
+   * @return a read-only view of the cert or crl bytes, or null if there is none
+   * @throws Exception if error
+   */
+  public ByteBuffer getCertOrCrlBuffer(String pathName)
+      throws IOException, IllegalArgumentException {
+    return snapshot.file.get(getEntryName(pathName));
+  }
+
+  /**
+   * Returns the parsed certificate corresponding to the specified pathname.
+   * The pathname is typically the AIA URL of the certificate it issued.
+   *
+   * @param pathName pathName of cache entry to retrieve
+   * @return the certificate, or null if there is none
+   * @throws IOException if the pathName isn't a URL
+   * @throws CertificateException if the entry isn't a certificate
+   */
+  public X509Certificate getCertificate(String pathName)
+      throws IOException, CertificateException {
+    return lookupCertificate(snapshot, getEntryName(pathName));
+  }
+
+  /**
+   * Returns the chain of certificates which issued a device's ROM certificate,
+   * from its issuer up to the OnDie CA.
+   *
+   * <p>Devices of the same family share this chain, so it is built once per reload.
+   *
+   * @param pathName the AIA URL of the ROM certificate
+   * @return the issuing chain
+   * @throws IOException if a URL in the chain is malformed
+   * @throws CertificateException if an entry in the chain isn't a certificate
+   * @throws IllegalArgumentException if a certificate in the chain isn't in the cache
+   */
+  public List<X509Certificate> getIssuerChain(String pathName)
+      throws IOException, CertificateException {
+    final Snapshot current = snapshot;
+    List<X509Certificate> chain = current.issuerChains.get(pathName);
+    if (chain != null) {
+      chainHitCount.increment();
+      return chain;
     }
+
+    final List<X509Certificate> built = new ArrayList<>();
+    String certId = pathName;
+    while (true) {
+      X509Certificate cert = lookupCertificate(current, getEntryName(certId));
+      if (cert == null) {
+        throw new IllegalArgumentException(
+          "Could not find cert in OnDie cache: unable to build cert chain for device: " + certId);
+      }
+      built.add(cert);
+
+      // if we are at the root CA then we have the complete chain
+      try {
+        certId = OnDieCertPath.getIssuingCertificate(cert);
+      } catch (Exception ex) {
+        break;
+      }
+    }
+
+    chain = List.copyOf(built);
+    final List<X509Certificate> prior = current.issuerChains.putIfAbsent(pathName, chain);
+    return prior != null ? prior : chain;
+  }
+
+  /**
+   * Returns the parsed CRL corresponding to the specified pathname.
+   * The pathname is typically a CRL distribution point URL.
+   *
+   * @param pathName pathName of cache entry to retrieve
+   * @return the CRL, or null if there is none
+   * @throws IOException if the pathName isn't a URL
+   * @throws CRLException if the entry isn't a CRL
+   */
+  public X509CRL getCrl(String pathName) throws IOException, CRLException {
+    final OnDieCrl crl = getOnDieCrl(pathName);
+    return crl != null ? crl.getCrl() : null;
+  }
+
+  /**
+   * Returns the parsed and indexed CRL corresponding to the specified pathname.
+   *
+   * @param pathName pathName of cache entry to retrieve
+   * @return the CRL, or null if there is none
+   * @throws IOException if the pathName isn't a URL
+   * @throws CRLException if the entry isn't a CRL
+   */
+  OnDieCrl getOnDieCrl(String pathName) throws IOException, CRLException {
+    final Snapshot current = snapshot;
+    final String name = getEntryName(pathName);
+    OnDieCrl crl = current.crls.get(name);
+    if (crl != null) {
+      parsedHitCount.increment();
+      return crl;
+    }
+    final ByteBuffer bytes = current.file.get(name);
+    if (bytes == null) {
+      return null;
+    }
+    try (JceFactories.Lease<CertificateFactory> factory = getCertificateFactory()) {
+      crl = new OnDieCrl(
+          (X509CRL) factory.get().generateCRL(new ByteBufferInputStream(bytes)));
+    } catch (CertificateException e) {
+      throw new CRLException(e);
+    }
+    parseCount.increment();
+    final OnDieCrl prior = current.crls.putIfAbsent(name, crl);
+    return prior != null ? prior : crl;
+  }
+
+  private X509Certificate lookupCertificate(Snapshot current, String name)
+      throws CertificateException {
+    X509Certificate cert = current.certificates.get(name);
+    if (cert != null) {
+      parsedHitCount.increment();
+      return cert;
+    }
+    final ByteBuffer bytes = current.file.get(name);
+    if (bytes == null) {
+      return null;
+    }
+    try (JceFactories.Lease<CertificateFactory> factory = getCertificateFactory()) {
+      cert = (X509Certificate) factory.get()
+          .generateCertificate(new ByteBufferInputStream(bytes));
+    }
+    parseCount.increment();
+    final X509Certificate prior = current.certificates.putIfAbsent(name, cert);
+    return prior != null ? prior : cert;
+  }
+
+  private static String getEntryName(String pathName) throws IOException {
+    URL url = new URL(pathName);
     Path path = Paths.get(url.getFile());
     Path fileName = path.getFileName();
     if (fileName == null) {
       throw new IllegalArgumentException("OnDieCache: illegal crl reference: " + pathName);
     }
-    return cacheMap.get(fileName.toString());
+    return fileName.toString();
+  }
+
+  private static JceFactories.Lease<CertificateFactory> getCertificateFactory()
+      throws CertificateException {
+    return JceFactories.certificateFactory("X509", BouncyCastleSingleton.INSTANCE);
   }
 
   /**
@@ -211,7 +550,7 @@ public class OnDieCache {
    */
   public int getNumOfCerts() {
     int count = 0;
-    for (String index : cacheMap.keySet()) {
+    for (String index : snapshot.file.names()) {
       if (index.toLowerCase().endsWith(".cer")) {
         count++;
       }
@@ -227,7 +566,7 @@ public class OnDieCache {
    */
   public int getNumOfCrls() {
     int count = 0;
-    for (String index : cacheMap.keySet()) {
+    for (String index : snapshot.file.names()) {
       if (index.toLowerCase().endsWith(".crl")) {
         count++;
       }
@@ -235,5 +574,20 @@ public class OnDieCache {
     return count;
   }
 
-}
 
+  /**
+   * The cache contents as loaded at one moment, with the entries parsed from them so far.
+   */
+  private static final class Snapshot {
+
+    private final OnDieCacheFile file;
+    private final ConcurrentMap<String, X509Certificate> certificates = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, OnDieCrl> crls = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, List<X509Certificate>> issuerChains =
+        new ConcurrentHashMap<>();
+
+    Snapshot(final OnDieCacheFile file) {
+      this.file = file;
+    }
+  }
+}
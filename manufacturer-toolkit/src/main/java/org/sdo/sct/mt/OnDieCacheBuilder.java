@@ -0,0 +1,154 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Builds the indexed OnDie cache file from Intel's published certificates and CRLs.
+ *
+ * <p>Usage:
+ * <pre>
+ * java -cp manufacturer-toolkit.jar org.sdo.sct.mt.OnDieCacheBuilder --cachedir CACHEDIR
+ *     [--source SOURCE] [-f]
+ * </pre>
+ *
+ * <p>SOURCE is the URL or path of a ZIP bundle, or a directory of .cer and .crl files.
+ * It defaults to {@value #DEFAULT_SOURCE}.  The bundle is read as a stream and never
+ * unpacked to disk.
+ *
+ * <p>The cache file is written to CACHEDIR/{@value OnDieCache#CACHE_FILE} by renaming,
+ * so a running toolkit never sees a partial file.  Then the touch file is created,
+ * and the toolkit loads the new file at its next reload check.  If the touch file from
+ * an earlier run is still present, the builder stops unless -f is given.
+ */
+public final class OnDieCacheBuilder {
+
+  /**
+   * The default source of OnDie certificates and CRLs.
+   */
+  public static final String DEFAULT_SOURCE = "https://tsci.intel.com/content/csme.zip";
+
+  private OnDieCacheBuilder() {
+  }
+
+  /**
+   * Command-line entry point.
+   *
+   * @param args see the class description.
+   */
+  public static void main(final String[] args) {
+
+    Path cacheDir = null;
+    String source = DEFAULT_SOURCE;
+    boolean force = false;
+
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "-c":
+        case "--cachedir":
+          cacheDir = Paths.get(args[++i]);
+          break;
+        case "-s":
+        case "--source":
+          source = args[++i];
+          break;
+        case "-f":
+          force = true;
+          break;
+        default:
+          cacheDir = null;
+          i = args.length;
+          break;
+      }
+    }
+
+    if (null == cacheDir) {
+      System.err.println("usage: OnDieCacheBuilder --cachedir CACHEDIR [--source SOURCE] [-f]");
+      System.exit(2);
+    }
+
+    if (!force && Files.exists(cacheDir.resolve(OnDieCache.CACHE_UPDATED_TOUCH_FILE))) {
+      System.out.println("previous update not yet processed (touch file still exists), exiting.");
+      return;
+    }
+
+    try {
+      final int count = build(cacheDir, source);
+      System.out.println("wrote " + count + " certs and CRLs to "
+          + cacheDir.resolve(OnDieCache.CACHE_FILE));
+    } catch (IOException | RuntimeException e) {
+      System.err.println("OnDieCacheBuilder: " + e);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Builds the cache file and signals the update.
+   *
+   * @param cacheDir The cache directory.
+   * @param source   The URL or path of a ZIP bundle, or a directory.
+   *
+   * @return the number of entries in the cache file.
+   *
+   * @throws IOException if the source can't be read or the cache can't be written.
+   */
+  static int build(final Path cacheDir, final String source) throws IOException {
+
+    final Map<String, byte[]> entries = read(source);
+    OnDieCacheFile.write(cacheDir.resolve(OnDieCache.CACHE_FILE), entries);
+
+    final Path touchFile = cacheDir.resolve(OnDieCache.CACHE_UPDATED_TOUCH_FILE);
+    if (!Files.exists(touchFile)) {
+      Files.createFile(touchFile);
+    }
+    return entries.size();
+  }
+
+  private static Map<String, byte[]> read(final String source) throws IOException {
+
+    final Map<String, byte[]> entries = new TreeMap<>();
+    final Path path = source.contains("://") ? null : Paths.get(source);
+
+    if (null != path && Files.isDirectory(path)) {
+      try (Stream<Path> files = Files.list(path)) {
+        for (Path file : (Iterable<Path>) files::iterator) {
+          final String name = file.getFileName().toString();
+          if (Files.isRegularFile(file) && isCertOrCrl(name)) {
+            entries.put(name, Files.readAllBytes(file));
+          }
+        }
+      }
+      return entries;
+    }
+
+    try (InputStream in = null == path ? new URL(source).openStream() : Files.newInputStream(path);
+        ZipInputStream zip = new ZipInputStream(in)) {
+
+      for (ZipEntry entry = zip.getNextEntry(); null != entry; entry = zip.getNextEntry()) {
+        final String name = Paths.get(entry.getName()).getFileName().toString();
+        if (!entry.isDirectory() && isCertOrCrl(name)) {
+          entries.put(name, zip.readAllBytes());
+        }
+      }
+    }
+    return entries;
+  }
+
+  private static boolean isCertOrCrl(final String name) {
+    final String lower = name.toLowerCase(Locale.ROOT);
+    return lower.endsWith(".cer") || lower.endsWith(".crl");
+  }
+}
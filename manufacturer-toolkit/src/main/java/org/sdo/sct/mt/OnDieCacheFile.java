@@ -0,0 +1,277 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An indexed, read-only file of OnDie certificates and CRLs.
+ *
+ * <p>The file is laid out so that it can be memory-mapped and searched in place:
+ * <pre>
+ * magic    8 bytes, "SDOODC" 0x00 0x01
+ * count    4 bytes
+ * index    count entries of 24 bytes, sorted by name hash:
+ *            name hash    8 bytes, 64-bit FNV-1a of the UTF-8 name
+ *            name offset  4 bytes
+ *            name length  4 bytes
+ *            data offset  4 bytes
+ *            data length  4 bytes
+ * names    the UTF-8 entry names, contiguous
+ * data     the DER entries, contiguous
+ * </pre>
+ * All integers are big-endian and all offsets are from the start of the file.
+ *
+ * <p>A lookup is a binary search of the index, and returns a read-only view of the
+ * entry's bytes in the file.  Nothing is copied, and opening a file costs the same
+ * however many entries it holds.
+ *
+ * <p>This class uses only the JDK, so that {@link OnDieCacheBuilder} can run without the
+ * rest of the toolkit's dependencies.
+ */
+class OnDieCacheFile {
+
+  private static final byte[] MAGIC = {'S', 'D', 'O', 'O', 'D', 'C', 0, 1};
+  private static final int HEADER_SIZE = MAGIC.length + Integer.BYTES;
+  private static final int INDEX_ENTRY_SIZE = Long.BYTES + 4 * Integer.BYTES;
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  /**
+   * An empty cache.
+   */
+  static final OnDieCacheFile EMPTY = of(Map.of());
+
+  private final ByteBuffer buffer;
+  private final int count;
+
+  private OnDieCacheFile(final ByteBuffer buffer) {
+
+    this.buffer = buffer.asReadOnlyBuffer();
+
+    final byte[] magic = new byte[MAGIC.length];
+    if (buffer.capacity() < HEADER_SIZE) {
+      throw new IllegalArgumentException("OnDieCacheFile: truncated header");
+    }
+    for (int i = 0; i < magic.length; i++) {
+      magic[i] = this.buffer.get(i);
+    }
+    if (!Arrays.equals(MAGIC, magic)) {
+      throw new IllegalArgumentException("OnDieCacheFile: not an OnDie cache file");
+    }
+
+    count = this.buffer.getInt(MAGIC.length);
+    if (count < 0 || (long) HEADER_SIZE + (long) count * INDEX_ENTRY_SIZE > buffer.capacity()) {
+      throw new IllegalArgumentException("OnDieCacheFile: truncated index");
+    }
+    for (int i = 0; i < count; i++) {
+      final int entry = HEADER_SIZE + i * INDEX_ENTRY_SIZE + Long.BYTES;
+      checkRange(this.buffer.getInt(entry), this.buffer.getInt(entry + Integer.BYTES));
+      checkRange(this.buffer.getInt(entry + 2 * Integer.BYTES),
+          this.buffer.getInt(entry + 3 * Integer.BYTES));
+    }
+  }
+
+  /**
+   * Memory-maps a cache file.
+   *
+   * <p>The mapping stays valid if the file is later replaced by renaming another over it,
+   * as {@link #write} does.
+   *
+   * @param path The file.
+   *
+   * @return the cache.
+   *
+   * @throws IOException              if the file can't be read.
+   * @throws IllegalArgumentException if the file isn't a valid cache file.
+   */
+  static OnDieCacheFile open(final Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return new OnDieCacheFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Builds a cache in memory.
+   *
+   * @param entries The entries, by name.
+   *
+   * @return the cache.
+   */
+  static OnDieCacheFile of(final Map<String, byte[]> entries) {
+    return new OnDieCacheFile(encode(entries));
+  }
+
+  /**
+   * Writes a cache file.
+   *
+   * <p>The file is written beside the target and renamed over it, so readers see either the
+   * old file or the complete new one.
+   *
+   * @param path    The file.
+   * @param entries The entries, by name.
+   *
+   * @throws IOException if the file can't be written.
+   */
+  static void write(final Path path, final Map<String, byte[]> entries) throws IOException {
+
+    final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+    final ByteBuffer encoded = encode(entries);
+    try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (encoded.hasRemaining()) {
+        channel.write(encoded);
+      }
+      channel.force(true);
+    }
+    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Looks up an entry.
+   *
+   * @param name The entry name, for example <code>OnDie_CA_CSME_Indirect.crl</code>.
+   *
+   * @return a read-only view of the entry's bytes, or null if there is no such entry.
+   */
+  ByteBuffer get(final String name) {
+
+    final byte[] key = name.getBytes(StandardCharsets.UTF_8);
+    final long hash = hash(key);
+
+    // Find the first entry with this hash, then check each entry which shares it.
+    int low = 0;
+    int high = count;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (Long.compareUnsigned(hashAt(mid), hash) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+
+    for (int i = low; i < count && hashAt(i) == hash; i++) {
+      final int entry = HEADER_SIZE + i * INDEX_ENTRY_SIZE + Long.BYTES;
+      if (nameEquals(buffer.getInt(entry), buffer.getInt(entry + Integer.BYTES), key)) {
+        return slice(buffer.getInt(entry + 2 * Integer.BYTES),
+            buffer.getInt(entry + 3 * Integer.BYTES));
+      }
+    }
+    return null;
+  }
+
+  /**
+   * The names of every entry, in index order.
+   */
+  List<String> names() {
+
+    final List<String> names = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      final int entry = HEADER_SIZE + i * INDEX_ENTRY_SIZE + Long.BYTES;
+      final ByteBuffer name = slice(buffer.getInt(entry), buffer.getInt(entry + Integer.BYTES));
+      names.add(StandardCharsets.UTF_8.decode(name).toString());
+    }
+    return names;
+  }
+
+  /**
+   * The number of entries.
+   */
+  int size() {
+    return count;
+  }
+
+  private static ByteBuffer encode(final Map<String, byte[]> entries) {
+
+    final List<Map.Entry<byte[], byte[]>> sorted = new ArrayList<>(entries.size());
+    for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+      sorted.add(Map.entry(entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue()));
+    }
+    sorted.sort(Comparator.comparing(
+        (Map.Entry<byte[], byte[]> e) -> hash(e.getKey()), Long::compareUnsigned));
+
+    long namesSize = 0;
+    long dataSize = 0;
+    for (Map.Entry<byte[], byte[]> entry : sorted) {
+      namesSize += entry.getKey().length;
+      dataSize += entry.getValue().length;
+    }
+    final long size = HEADER_SIZE + (long) sorted.size() * INDEX_ENTRY_SIZE + namesSize + dataSize;
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("OnDieCacheFile: too large: " + size);
+    }
+
+    final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+    buffer.put(MAGIC).putInt(sorted.size());
+
+    int nameOffset = HEADER_SIZE + sorted.size() * INDEX_ENTRY_SIZE;
+    int dataOffset = nameOffset + (int) namesSize;
+    for (Map.Entry<byte[], byte[]> entry : sorted) {
+      buffer
+        .putLong(hash(entry.getKey()))
+        .putInt(nameOffset)
+        .putInt(entry.getKey().length)
+        .putInt(dataOffset)
+        .putInt(entry.getValue().length);
+      nameOffset += entry.getKey().length;
+      dataOffset += entry.getValue().length;
+    }
+    for (Map.Entry<byte[], byte[]> entry : sorted) {
+      buffer.put(entry.getKey());
+    }
+    for (Map.Entry<byte[], byte[]> entry : sorted) {
+      buffer.put(entry.getValue());
+    }
+
+    return buffer.flip();
+  }
+
+  private static long hash(final byte[] bytes) {
+    long hash = FNV_OFFSET_BASIS;
+    for (byte b : bytes) {
+      hash ^= b & 0xff;
+      hash *= FNV_PRIME;
+    }
+    return hash;
+  }
+
+  private long hashAt(final int index) {
+    return buffer.getLong(HEADER_SIZE + index * INDEX_ENTRY_SIZE);
+  }
+
+  private boolean nameEquals(final int offset, final int length, final byte[] key) {
+    if (length != key.length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (buffer.get(offset + i) != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private ByteBuffer slice(final int offset, final int length) {
+    return buffer.duplicate().position(offset).limit(offset + length).slice();
+  }
+
+  private void checkRange(final int offset, final int length) {
+    if (offset < 0 || length < 0 || (long) offset + length > buffer.capacity()) {
+      throw new IllegalArgumentException("OnDieCacheFile: entry out of bounds");
+    }
+  }
+}
@@ -13,7 +13,6 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
-import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -23,6 +22,7 @@ import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
 import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.util.encoders.Base64;
 import org.sdo.sct.BouncyCastleSingleton;
+import org.sdo.sct.JceFactories;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -30,15 +30,12 @@ import org.springframework.stereotype.Service;
 @Service
 public class OnDieCertPath {
 
-  private CertificateFactory certFactory;
-
   /**
    * Constructor.
    *
    */
   @Autowired
   public OnDieCertPath() throws CertificateException {
-    certFactory = CertificateFactory.getInstance("X509", BouncyCastleSingleton.INSTANCE);
   }
 
   /**
@@ -52,6 +49,17 @@ public class OnDieCertPath {
       String b64DeviceCertChain, OnDieCache onDieCertCache)
       throws CertificateException, IOException, IllegalArgumentException {
 
+    // CertificateFactory isn't thread-safe, and this service is shared by every request.
+    try (JceFactories.Lease<CertificateFactory> lease =
+        JceFactories.certificateFactory("X509", BouncyCastleSingleton.INSTANCE)) {
+      return buildCertPath(b64DeviceCertChain, onDieCertCache, lease.get());
+    }
+  }
+
+  private CertPath buildCertPath(
+      String b64DeviceCertChain, OnDieCache onDieCertCache, CertificateFactory certFactory)
+      throws CertificateException, IOException, IllegalArgumentException {
+
     List<Certificate> deviceCertChain = new ArrayList<Certificate>();
 
     // parse the device input chain into a list of x509 certificates
@@ -65,32 +73,22 @@ public class OnDieCertPath {
     // and then each subsequent issuing certificate. Append them to the list
     // to complete an end-to-end cert chain.
     // leaf -> DAL -> Kernel -> ROM -> platform -> intermediate -> OnDie CA
-
-    // Start with the ROM cert, loop until we get to the CA
-    String certId  = getIssuingCertificate(deviceCertChain.get(0));
-    while (true) {
-      byte[] cert = onDieCertCache.getCertOrCrl(certId);
-      if (cert == null) {
-        throw new IllegalArgumentException(
-          "Could not find cert in OnDie cache: unable to build cert chain for device: " + certId);
-      }
-      ByteArrayInputStream is = new ByteArrayInputStream(cert);
-      X509Certificate x509Cert = (X509Certificate) certFactory.generateCertificate(is);
-      deviceCertChain.add(x509Cert);
-      is.close();
-
-      // if we are at the root CA then we have the complete chain
-      try {
-        certId = getIssuingCertificate(x509Cert);
-      } catch (Exception ex) {
-        break;
-      }
-    }
+    // Devices of the same family share everything above the ROM cert, so the cache
+    // builds that part once.
+    deviceCertChain.addAll(
+        onDieCertCache.getIssuerChain(getIssuingCertificate(deviceCertChain.get(0))));
 
     return certFactory.generateCertPath(deviceCertChain);
   }
 
-  private String getIssuingCertificate(Certificate cert)
+  /**
+   * Returns the AIA URL of the certificate which issued the given certificate.
+   *
+   * @param cert the issued certificate
+   * @return the AIA URL
+   * @throws IllegalArgumentException if the certificate has no single AIA location
+   */
+  static String getIssuingCertificate(Certificate cert)
       throws IllegalArgumentException, CertificateEncodingException, IOException {
     X509CertificateHolder certholder = new X509CertificateHolder(cert.getEncoded());
     AuthorityInformationAccess aia =
@@ -0,0 +1,96 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.cert.CRLException;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.X509CRLEntryHolder;
+import org.bouncycastle.cert.X509CRLHolder;
+
+/**
+ * A parsed OnDie CRL, indexed by revoked serial number.
+ *
+ * <p>Checking a certificate is a hash lookup of its serial number, then a comparison of
+ * issuers, which an indirect CRL records per entry.
+ */
+class OnDieCrl {
+
+  private final X509CRL crl;
+  private final String version;
+  private final Map<BigInteger, List<X500Name>> revoked = new HashMap<>();
+
+  /**
+   * Constructor.
+   *
+   * @param crl The parsed CRL.
+   *
+   * @throws CRLException if the CRL can't be indexed.
+   */
+  OnDieCrl(final X509CRL crl) throws CRLException {
+    this.crl = crl;
+
+    final X509CRLHolder holder;
+    try {
+      holder = new X509CRLHolder(crl.getEncoded());
+    } catch (IOException e) {
+      throw new CRLException(e);
+    }
+
+    final Extension crlNumber = holder.getExtension(Extension.cRLNumber);
+    this.version = null != crlNumber
+      ? "crlNumber:" + CRLNumber.getInstance(crlNumber.getParsedValue()).getCRLNumber()
+      : "thisUpdate:" + crl.getThisUpdate().getTime();
+
+    // Entries of an indirect CRL carry their issuer forward from the previous entry,
+    // which X509CRLHolder resolves.
+    for (Object o : (Collection<?>) holder.getRevokedCertificates()) {
+      final X509CRLEntryHolder entry = (X509CRLEntryHolder) o;
+      final GeneralNames issuer = entry.getCertificateIssuer();
+      final X500Name issuerName = null == issuer
+          ? holder.getIssuer()
+          : X500Name.getInstance(issuer.getNames()[0].getName());
+      revoked.computeIfAbsent(entry.getSerialNumber(), k -> new ArrayList<>(1)).add(issuerName);
+    }
+  }
+
+  /**
+   * The parsed CRL.
+   */
+  X509CRL getCrl() {
+    return crl;
+  }
+
+  /**
+   * The CRL number if the CRL has one, otherwise its thisUpdate time.
+   */
+  String getVersion() {
+    return version;
+  }
+
+  /**
+   * Checks whether the CRL revokes a certificate.
+   *
+   * @param cert The certificate.
+   *
+   * @return true if the certificate is revoked.
+   */
+  boolean isRevoked(final X509Certificate cert) {
+    final List<X500Name> issuers = revoked.get(cert.getSerialNumber());
+    return null != issuers
+      && issuers.contains(X500Name.getInstance(cert.getIssuerX500Principal().getEncoded()));
+  }
+}
@@ -3,37 +3,57 @@
 
 package org.sdo.sct.mt;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.security.PublicKey;
 import java.security.Signature;
-import java.security.cert.CRL;
 import java.security.cert.CRLException;
 import java.security.cert.CertPath;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
-import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+import org.bouncycastle.asn1.ASN1OctetString;
 import org.bouncycastle.asn1.x509.CRLDistPoint;
 import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.GeneralName;
 import org.bouncycastle.asn1.x509.GeneralNames;
-import org.bouncycastle.cert.X509CertificateHolder;
+import org.sdo.sct.JceFactories;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 
+/**
+ * Validates the test signature of an OnDie device against its certificate path.
+ *
+ * <p>Validation has two independent parts: checking every certificate in the path against
+ * the cached CRLs, and verifying the test signature with the device's key.  By default they
+ * run one after the other on the calling thread.  If a revocation thread pool is configured,
+ * the revocation checks run on the pool while the calling thread verifies the signature,
+ * and the result is ready when both finish.  When the pool's queue is full, validation
+ * falls back to running both parts on the calling thread.
+ */
 @Service
-public class OnDieSignatureValidator {
+public class OnDieSignatureValidator implements DisposableBean {
 
   private OnDieCache onDieCache;
   private boolean checkRevocations = true;
+  private final ExecutorService revocationExecutor;
+  private final LongAdder parallelCount = new LongAdder();
+  private final LongAdder serialCount = new LongAdder();
 
   private static final int taskInfoLength = 36;  // length of the taskinfo part of OnDie signature
   private static final int rLength = 48;  // length of the r field part of OnDie signature
@@ -41,13 +61,54 @@ public class OnDieSignatureValidator {
 
   /**
    * Constructor.
+   *
+   * <p>Revocation checks and signature verification run on the calling thread.
+   */
+  public OnDieSignatureValidator(
+      OnDieCache onDieCache,
+      final boolean checkRevocations) {
+    this(onDieCache, checkRevocations, 0, 0);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param onDieCache       the cache of OnDie certificates and CRLs
+   * @param checkRevocations whether to check the certificate path for revocations
+   * @param threads          the number of threads which check revocations in parallel with
+   *                         signature verification, or zero to do both on the calling thread
+   * @param queue            the number of revocation checks which may wait for a thread
    */
   @Autowired
   public OnDieSignatureValidator(
       OnDieCache onDieCache,
-      @Value("${sdo.ondiecache.revocations:true}") final boolean checkRevocations) {
+      @Value("${sdo.ondiecache.revocations:true}") final boolean checkRevocations,
+      @Value("${sdo.ondiecache.validation.threads:0}") final int threads,
+      @Value("${sdo.ondiecache.validation.queue:1000}") final int queue) {
+
+    if (threads < 0) {
+      throw new IllegalArgumentException("sdo.ondiecache.validation.threads: " + threads);
+    }
+    if (queue < 0) {
+      throw new IllegalArgumentException("sdo.ondiecache.validation.queue: " + queue);
+    }
+
     this.onDieCache = onDieCache;
     this.checkRevocations = checkRevocations;
+
+    if (0 == threads || !checkRevocations) {
+      revocationExecutor = null;
+    } else {
+      final AtomicInteger count = new AtomicInteger();
+      revocationExecutor = new ThreadPoolExecutor(
+          threads, threads, 0L, TimeUnit.MILLISECONDS,
+          queue > 0 ? new ArrayBlockingQueue<>(queue) : new SynchronousQueue<>(),
+          r -> {
+            final Thread thread = new Thread(r, "ondie-revocations-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          });
+    }
   }
 
   /**
@@ -66,123 +127,151 @@ public class OnDieSignatureValidator {
 
     List<Certificate> certificateList = (List<Certificate>) certChain.getCertificates();
 
-    // Check revocations first.
-    if (checkRevocations && !checkRevocations(certificateList)) {
-      return false;
+    if (!checkRevocations) {
+      return verifySignature(certificateList, signedData, signature);
     }
 
-    try {
-      // check minimum length (taskinfo + R + S)
-      if (signature.length < (taskInfoLength + rLength + sLength)) {
-        return false;
+    Future<Boolean> revocations = null;
+    if (null != revocationExecutor) {
+      try {
+        revocations = revocationExecutor.submit(() -> checkRevocations(certificateList));
+      } catch (RejectedExecutionException e) {
+        revocations = null;
       }
-      byte[] taskInfo = Arrays.copyOfRange(signature, 0, taskInfoLength);
-
-      // adjust the signed data
-      // data-to-verify format is: [ task-info | nonce (optional) | data ]
-      // First 36 bytes of signature is the taskinfo. This value must be prepended
-      // to the signed data
-      ByteArrayOutputStream adjSignedData = new ByteArrayOutputStream();
-      adjSignedData.write(Arrays.copyOfRange(signature, 0, taskInfo.length));
-      adjSignedData.write(signedData);
-
-      byte[] adjSignature = convertSignature(signature, taskInfo);
-      PublicKey publicKey = certificateList.get(0).getPublicKey();
-
-      Signature sig = Signature.getInstance("SHA384withECDSA");
-      sig.initVerify(publicKey);
-      sig.update(adjSignedData.toByteArray());
-      return sig.verify(adjSignature);
-    } catch (Exception ex) {
-      return false;
     }
-  }
 
-  private static byte[] convertSignature(byte[] signature, byte[] taskInfo)
-      throws IllegalArgumentException, IOException {
-    if (taskInfo.length != 36) {
-      throw new IllegalArgumentException("taskinfo length is incorrect: " + taskInfo.length);
+    if (null == revocations) {
+      // Check revocations first.
+      serialCount.increment();
+      return checkRevocations(certificateList)
+          && verifySignature(certificateList, signedData, signature);
     }
 
-    // Format for signature should be as follows:
-    // 0x30 b1 0x02 b2 (vr) 0x02 b3 (vs)
-    // The b1 = length of remaining bytes,
-    // b2 = length of R value (vr), b3 = length of S value (vs)
-    byte[] rvalue = Arrays.copyOfRange(signature, taskInfo.length, taskInfo.length + rLength);
-    byte[] svalue = Arrays.copyOfRange(signature,
-      taskInfo.length + rLength,
-      taskInfo.length + rLength + sLength);
-
-    boolean appendZeroToR = false;
-    boolean appendZeroToS = false;
-    if ((rvalue[0] & 0x80) != 0) {
-      appendZeroToR = true;
+    parallelCount.increment();
+    if (!verifySignature(certificateList, signedData, signature)) {
+      revocations.cancel(false);
+      return false;
     }
-    if ((svalue[0] & 0x80) != 0) {
-      appendZeroToS = true;
+    try {
+      return revocations.get();
+    } catch (ExecutionException e) {
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
     }
+  }
 
-    ByteArrayOutputStream adjSignature = new ByteArrayOutputStream();
-    adjSignature.write(0x30);
-    // total length of remaining bytes
-    adjSignature.write(4
-        + (appendZeroToR ? rLength + 1 : rLength)
-        + (appendZeroToS ? sLength + 1 : sLength));
-    adjSignature.write(0x02);
-    // R value
-    if (appendZeroToR) {
-      adjSignature.write(rLength + 1);
-      adjSignature.write(0x00);
-      adjSignature.write(rvalue);
-    } else {
-      adjSignature.write(rLength);
-      adjSignature.write(rvalue);
+  /**
+   * Returns the number of validations whose revocation checks ran on the thread pool.
+   *
+   * @return long the number of parallel validations
+   */
+  public long getParallelCount() {
+    return parallelCount.sum();
+  }
+
+  /**
+   * Returns the number of revocation-checked validations which ran entirely on the
+   * calling thread, because no pool is configured or its queue was full.
+   *
+   * @return long the number of serial validations
+   */
+  public long getSerialCount() {
+    return serialCount.sum();
+  }
+
+  @Override
+  public void destroy() {
+    if (null != revocationExecutor) {
+      revocationExecutor.shutdownNow();
     }
-    adjSignature.write(0x02);
-    // S value
-    if (appendZeroToS) {
-      adjSignature.write(sLength + 1);
-      adjSignature.write(0x00);
-      adjSignature.write(svalue);
-    } else {
-      adjSignature.write(sLength);
-      adjSignature.write(svalue);
+  }
+
+  private static boolean verifySignature(List<Certificate> certificateList,
+                                         byte[] signedData,
+                                         byte[] signature) {
+
+    // check minimum length (taskinfo + R + S)
+    if (signature.length < (taskInfoLength + rLength + sLength)) {
+      return false;
+    }
+
+    // data-to-verify format is: [ task-info | nonce (optional) | data ]
+    // First 36 bytes of signature is the taskinfo. This value must be prepended
+    // to the signed data, so feed both to the verifier in turn.
+    try (JceFactories.Lease<Signature> lease = JceFactories.signature("SHA384withECDSA", null)) {
+      Signature sig = lease.get();
+      sig.initVerify(certificateList.get(0).getPublicKey());
+      sig.update(signature, 0, taskInfoLength);
+      sig.update(signedData);
+      return sig.verify(convertSignature(signature));
+    } catch (Exception ex) {
+      return false;
     }
-    return adjSignature.toByteArray();
+  }
+
+  /**
+   * Converts the raw R and S values which follow the taskinfo into a DER ECDSA signature.
+   *
+   * <p>Format for signature should be as follows:
+   * 0x30 b1 0x02 b2 (vr) 0x02 b3 (vs)
+   * The b1 = length of remaining bytes,
+   * b2 = length of R value (vr), b3 = length of S value (vs).
+   * R and S are unsigned, so each gets a leading zero if its top bit is set.
+   */
+  static byte[] convertSignature(byte[] signature) {
+    final int roffset = taskInfoLength;
+    final int soffset = taskInfoLength + rLength;
+    final int rpad = (signature[roffset] & 0x80) >>> 7;
+    final int spad = (signature[soffset] & 0x80) >>> 7;
+
+    final byte[] der = new byte[6 + rpad + rLength + spad + sLength];
+    int i = 0;
+    der[i++] = 0x30;
+    der[i++] = (byte) (der.length - 2); // total length of remaining bytes
+    der[i++] = 0x02;
+    der[i++] = (byte) (rpad + rLength);
+    i += rpad;
+    System.arraycopy(signature, roffset, der, i, rLength);
+    i += rLength;
+    der[i++] = 0x02;
+    der[i++] = (byte) (spad + sLength);
+    i += spad;
+    System.arraycopy(signature, soffset, der, i, sLength);
+    return der;
   }
 
   private boolean checkRevocations(List<Certificate> certificateList) {
-    // Check revocations first.
     try {
-      CertificateFactory certificateFactory = CertificateFactory.getInstance("X509");
       for (Certificate cert: certificateList) {
         X509Certificate x509cert = (X509Certificate) cert;
-        X509CertificateHolder certHolder = new X509CertificateHolder(x509cert.getEncoded());
-        CRLDistPoint cdp = CRLDistPoint.fromExtensions(certHolder.getExtensions());
-        if (cdp != null) {
+        // read the one extension rather than re-encoding the whole certificate
+        byte[] cdpValue = x509cert.getExtensionValue(Extension.cRLDistributionPoints.getId());
+        if (cdpValue != null) {
+          CRLDistPoint cdp =
+              CRLDistPoint.getInstance(ASN1OctetString.getInstance(cdpValue).getOctets());
           DistributionPoint[] distPoints = cdp.getDistributionPoints();
           for (DistributionPoint dp : distPoints) {
             GeneralName[] generalNames =
               GeneralNames.getInstance(dp.getDistributionPoint().getName()).getNames();
             for (GeneralName generalName : generalNames) {
-              byte[] crlBytes = onDieCache.getCertOrCrl(generalName.toString());
-              if (crlBytes == null) {
+              // the name is the bare URL; GeneralName.toString() prefixes it with the tag
+              OnDieCrl crl = onDieCache.getOnDieCrl(generalName.getName().toString());
+              if (crl == null) {
                 LoggerFactory.getLogger(getClass()).error(
                     "CRL ({}) not found in cache for cert: {}",
                     generalName.getName().toString(),
                     x509cert.getIssuerX500Principal().getName());
                 return false;
-              } else {
-                CRL crl = certificateFactory.generateCRL(new ByteArrayInputStream(crlBytes));
-                if (crl.isRevoked(cert)) {
-                  return false;
-                }
+              } else if (crl.isRevoked(x509cert)) {
+                return false;
               }
             }
           }
         }
       }
-    } catch (IOException | CertificateException | CRLException ex) {
+    } catch (IOException | CRLException ex) {
       return false;
     }
     return true;
@@ -0,0 +1,262 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import java.net.URI;
+import java.text.MessageFormat;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.Period;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.sdo.sct.RendezvousInfo;
+import org.sdo.sct.RendezvousInfoBuilder;
+import org.sdo.sct.ResourceBundleHolder;
+import org.sdo.sct.VoucherHeader;
+import org.sdo.sct.domain.ServerSettings;
+import org.sdo.sct.domain.ServerSettingsRepo;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Holds the {@link ServerSettings} row, parsed and ready to use.
+ *
+ * <p>The rendezvous info is also held in its SDO text encoding, so that building a
+ * {@link VoucherHeader} does no rendezvous work.  It is parsed and encoded again only when
+ * the text in the row changes.
+ *
+ * <p>The row is read when the settings are first needed, and then again on every refresh.
+ * Refreshes happen on a fixed interval, if one is configured, and whenever {@link #refresh}
+ * is called, for example from {@link ServerSettingsController}.
+ *
+ * <p>A refresh which fails, because the row can't be read or doesn't parse, leaves the
+ * previous settings in place.  Until a refresh succeeds, those settings are stale,
+ * and every read of them is counted.
+ */
+@Service
+class ServerSettingsCache implements DisposableBean {
+
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+  private static ResourceBundleHolder resourceBundleHolder_ =
+      new ResourceBundleHolder(ServerSettingsCache.class.getName());
+
+  private final ServerSettingsRepo serverSettingsRepo;
+  private final ScheduledExecutorService poller;
+  private volatile Snapshot snapshot = null;
+  private volatile boolean stale = false;
+  private final LongAdder refreshCount = new LongAdder();
+  private final LongAdder failedRefreshCount = new LongAdder();
+  private final LongAdder staleReadCount = new LongAdder();
+
+  /**
+   * Constructor.
+   *
+   * <p>The settings are read only when first needed and when refreshed explicitly.
+   *
+   * @param serverSettingsRepo The repository holding the settings.
+   */
+  ServerSettingsCache(final ServerSettingsRepo serverSettingsRepo) {
+    this(serverSettingsRepo, Duration.ZERO);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param serverSettingsRepo The repository holding the settings.
+   * @param refreshInterval    How often the settings are read again, or zero to read them
+   *                           only when refreshed explicitly.
+   */
+  @Autowired
+  ServerSettingsCache(
+      final ServerSettingsRepo serverSettingsRepo,
+      @Value("${sdo.serversettings.refresh:30s}") final Duration refreshInterval) {
+
+    this.serverSettingsRepo = serverSettingsRepo;
+
+    if (refreshInterval.isZero() || refreshInterval.isNegative()) {
+      poller = null;
+    } else {
+      poller = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "server-settings-refresh");
+        thread.setDaemon(true);
+        return thread;
+      });
+      poller.scheduleWithFixedDelay(this::poll,
+          refreshInterval.toMillis(), refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * The current settings.
+   *
+   * @throws RuntimeException if the settings have never been read, and can't be read now.
+   */
+  Snapshot get() {
+
+    Snapshot result = snapshot;
+    if (null == result) {
+      result = refresh();
+    } else if (stale) {
+      staleReadCount.increment();
+    }
+    return result;
+  }
+
+  /**
+   * Reads and parses the settings row, replacing the current settings.
+   *
+   * @return the new settings.
+   *
+   * @throws RuntimeException if the settings can't be read or parsed.  The current
+   *                          settings, if any, are kept.
+   */
+  synchronized Snapshot refresh() {
+
+    try {
+      final Snapshot result = new Snapshot(serverSettingsRepo.get(), snapshot, Instant.now());
+      snapshot = result;
+      stale = false;
+      refreshCount.increment();
+      return result;
+
+    } catch (RuntimeException e) {
+      failedRefreshCount.increment();
+      stale = null != snapshot;
+      throw e;
+    }
+  }
+
+  /**
+   * The number of successful refreshes.
+   */
+  long getRefreshCount() {
+    return refreshCount.sum();
+  }
+
+  /**
+   * The number of failed refreshes.
+   */
+  long getFailedRefreshCount() {
+    return failedRefreshCount.sum();
+  }
+
+  /**
+   * The number of reads served from settings which a later refresh failed to replace.
+   */
+  long getStaleReadCount() {
+    return staleReadCount.sum();
+  }
+
+  /**
+   * True if the most recent refresh failed and older settings are still in use.
+   */
+  boolean isStale() {
+    return stale;
+  }
+
+  @Override
+  public void destroy() {
+    if (null != poller) {
+      poller.shutdownNow();
+    }
+  }
+
+  private void poll() {
+    try {
+      refresh();
+    } catch (RuntimeException e) {
+      LoggerFactory.getLogger(getClass()).warn(MessageFormat.format(
+          resourceBundleHolder_.get().getString("refresh.failed"), e.getMessage()));
+    }
+  }
+
+  private static RendezvousInfo parseRendezvousInfo(final String config) {
+
+    final List<URI> uris = Arrays.stream(WHITESPACE.split(config.trim()))
+        .map(URI::create)
+        .collect(Collectors.toUnmodifiableList());
+
+    return new RendezvousInfoBuilder().with(uris).build();
+  }
+
+  /**
+   * The settings as read at one moment, with their parsed forms.
+   */
+  static class Snapshot {
+
+    private final ServerSettings settings;
+    private final RendezvousInfo rendezvousInfo;
+    private final String encodedRendezvousInfo;
+    private final Period certificateValidityPeriod;
+    private final Instant loaded;
+
+    Snapshot(final ServerSettings settings, final Snapshot previous, final Instant loaded) {
+      this.settings = settings;
+
+      // Parsing validates every address, so skip it if the text hasn't changed.
+      if (null != previous && Objects.equals(
+          previous.settings.getRendezvousInfo(), settings.getRendezvousInfo())) {
+        this.rendezvousInfo = previous.rendezvousInfo;
+        this.encodedRendezvousInfo = previous.encodedRendezvousInfo;
+      } else {
+        this.rendezvousInfo = parseRendezvousInfo(settings.getRendezvousInfo());
+        this.encodedRendezvousInfo = rendezvousInfo.toString();
+      }
+
+      this.certificateValidityPeriod = null == settings.getCertificateValidityPeriod()
+        ? null
+        : Period.parse(settings.getCertificateValidityPeriod());
+      this.loaded = loaded;
+    }
+
+    /**
+     * The settings row.
+     */
+    ServerSettings getSettings() {
+      return settings;
+    }
+
+    /**
+     * The parsed rendezvous info.
+     *
+     * @see ServerSettings#getRendezvousInfo()
+     */
+    RendezvousInfo getRendezvousInfo() {
+      return rendezvousInfo;
+    }
+
+    /**
+     * The rendezvous info in SDO text encoding, ready for a {@link VoucherHeader}.
+     */
+    String getEncodedRendezvousInfo() {
+      return encodedRendezvousInfo;
+    }
+
+    /**
+     * The parsed certificate validity period, or null if none is set.
+     *
+     * @see ServerSettings#getCertificateValidityPeriod()
+     */
+    Period getCertificateValidityPeriod() {
+      return certificateValidityPeriod;
+    }
+
+    /**
+     * When the settings were read.
+     */
+    Instant getLoaded() {
+      return loaded;
+    }
+  }
+}
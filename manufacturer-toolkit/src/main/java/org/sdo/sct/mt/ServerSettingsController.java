@@ -0,0 +1,47 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import java.util.concurrent.Callable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@SuppressWarnings("unused")
+class ServerSettingsController {
+
+  private final ServerSettingsCache serverSettingsCache;
+
+  @Autowired
+  ServerSettingsController(final ServerSettingsCache serverSettingsCache) {
+    this.serverSettingsCache = serverSettingsCache;
+  }
+
+  @PostMapping(path = "/api/v1/serversettings:refresh", produces = MediaType.APPLICATION_JSON_VALUE)
+  Callable<String> refresh() {
+
+    return this::refresh_;
+  }
+
+  private String refresh_() {
+
+    final ServerSettingsCache.Snapshot snapshot;
+    try {
+      snapshot = serverSettingsCache.refresh();
+    } catch (RuntimeException e) {
+      throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), e);
+    }
+
+    return "{"
+      + "\"loaded\":\"" + snapshot.getLoaded() + "\""
+      + ",\"refreshCount\":" + serverSettingsCache.getRefreshCount()
+      + ",\"failedRefreshCount\":" + serverSettingsCache.getFailedRefreshCount()
+      + ",\"staleReadCount\":" + serverSettingsCache.getStaleReadCount()
+      + "}";
+  }
+}
@@ -3,25 +3,34 @@
 
 package org.sdo.sct.mt;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.security.GeneralSecurityException;
 import java.security.KeyFactory;
 import java.security.KeyStore.Entry;
 import java.security.KeyStore.PasswordProtection;
 import java.security.KeyStore.PrivateKeyEntry;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.SecureRandom;
 import java.security.cert.CertPath;
 import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateFactory;
 import java.security.spec.X509EncodedKeySpec;
+import java.text.MessageFormat;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import javax.security.auth.DestroyFailedException;
+import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.cert.X509v3CertificateBuilder;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
@@ -31,53 +40,192 @@ import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.bouncycastle.pkcs.PKCS10CertificationRequest;
 import org.sdo.sct.BouncyCastleSingleton;
 import org.sdo.sct.CryptoLevel;
+import org.sdo.sct.JceFactories;
 import org.sdo.sct.KeyFinder;
 import org.sdo.sct.KeyHandle;
 import org.sdo.sct.KeyType;
 import org.sdo.sct.KeyUtils;
 import org.sdo.sct.PasswordCallbackFunction;
+import org.sdo.sct.ResourceBundleHolder;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+/**
+ * Issues device certificates for DI.AppStart certificate signing requests.
+ *
+ * <p>Each {@link KeyType} has an issuer context, built from the keystore entry
+ * {@link KeyFinder} chose for that type: the issuer's name, its certificate chain and a
+ * signer factory.  If KeyFinder later chooses another entry, the context is rebuilt.
+ *
+ * <p>By default the context also keeps the issuer's private key, which is destroyed when
+ * the service is, or when the context is rebuilt and no request is still using it.
+ * Deployments which must not keep private keys in memory can set
+ * <code>sdo.certpath.destroykeys</code>, and the key is then fetched from the keystore and
+ * destroyed for each certificate, as it always was.
+ */
 @Service
-public class SimpleCertPathService implements CertPathService {
+public class SimpleCertPathService implements CertPathService, DisposableBean {
+
+  // The number of random bits in a certificate serial number.
+  private static final int SERIAL_BITS = 64;
+
+  private static ResourceBundleHolder resourceBundleHolder_ =
+      new ResourceBundleHolder(SimpleCertPathService.class.getName());
+
+  private static final SecureRandom random = new SecureRandom();
 
   private final CertificateValidityPeriodFactory certificateValidityPeriodFactory;
   private final PasswordCallbackFunction passwordCallbackFn;
   private final KeyFinder keyFinder;
+  private final boolean destroyKeys;
+  private final Map<KeyType, Issuer> issuers = new ConcurrentHashMap<>();
+  private final LongAdder issuerCount = new LongAdder();
 
   /**
    * Constuctor.
    *
+   * <p>Issuer keys are kept until the service is destroyed.
+   *
    * @param passwordCallbackFn passwordCallbackFn
    * @param certificateValidityPeriodFactory certificateValidityPeriodFactory
    * @param keyFinder keyFinder
    */
-  @Autowired
   public SimpleCertPathService(
       final PasswordCallbackFunction passwordCallbackFn,
       final CertificateValidityPeriodFactory certificateValidityPeriodFactory,
       final KeyFinder keyFinder) {
 
+    this(passwordCallbackFn, certificateValidityPeriodFactory, keyFinder, false);
+  }
+
+  /**
+   * Constuctor.
+   *
+   * @param passwordCallbackFn passwordCallbackFn
+   * @param certificateValidityPeriodFactory certificateValidityPeriodFactory
+   * @param keyFinder keyFinder
+   * @param destroyKeys If true, fetch and destroy the issuer key for each certificate
+   *                    instead of keeping it.
+   */
+  @Autowired
+  public SimpleCertPathService(
+      final PasswordCallbackFunction passwordCallbackFn,
+      final CertificateValidityPeriodFactory certificateValidityPeriodFactory,
+      final KeyFinder keyFinder,
+      @Value("${sdo.certpath.destroykeys:false}") final boolean destroyKeys) {
+
     this.passwordCallbackFn = passwordCallbackFn;
     this.certificateValidityPeriodFactory = certificateValidityPeriodFactory;
     this.keyFinder = keyFinder;
+    this.destroyKeys = destroyKeys;
   }
 
   @Override
   public CertPath apply(PKCS10CertificationRequest csr) throws Exception {
 
     // Find a signing key of the same type as the device's.
-    final KeyFactory keyFactory = KeyFactory.getInstance(
-        csr.getSubjectPublicKeyInfo().getAlgorithm().getAlgorithm().toString(),
-        BouncyCastleSingleton.INSTANCE);
     final X509EncodedKeySpec subjectKeySpec =
         new X509EncodedKeySpec(csr.getSubjectPublicKeyInfo().getEncoded());
-    final PublicKey subjectPublicKey = keyFactory.generatePublic(subjectKeySpec);
+    final PublicKey subjectPublicKey;
+    try (JceFactories.Lease<KeyFactory> keyFactory = JceFactories.keyFactory(
+        csr.getSubjectPublicKeyInfo().getAlgorithm().getAlgorithm().toString(),
+        BouncyCastleSingleton.INSTANCE)) {
+      subjectPublicKey = keyFactory.get().generatePublic(subjectKeySpec);
+    }
     final KeyType keyType = KeyUtils.toType(subjectPublicKey);
     final KeyHandle keyHandle = keyFinder.find(keyType).orElseThrow(
         () -> new NoSuchElementException("KeyType " + keyType + " not found in keystore"));
 
+    // The current issuer is found without locking; only a missing or replaced one is built
+    // under the map's lock.  A replaced issuer's key is destroyed once no request uses it.
+    Issuer issuer;
+    do {
+      issuer = issuers.get(keyType);
+      if (null == issuer || !issuer.isFor(keyHandle)) {
+        try {
+          issuer = issuers.compute(keyType, (type, current) -> {
+            if (null != current && current.isFor(keyHandle)) {
+              return current;
+            }
+            final Issuer replacement = newIssuer(keyHandle, type);
+            if (null != current) {
+              current.release();
+            }
+            return replacement;
+          });
+        } catch (UncheckedGeneralSecurityException e) {
+          throw e.getCause();
+        }
+      }
+    } while (!issuer.acquire());
+
+    final X509CertificateHolder certHolder;
+    try {
+      final X509v3CertificateBuilder certBuilder = new X509v3CertificateBuilder(
+          issuer.name,
+          newSerialNumber(),
+          Date.from(Instant.now()),
+          Date.from(ZonedDateTime.now().plus(certificateValidityPeriodFactory.get()).toInstant()),
+          csr.getSubject(),
+          csr.getSubjectPublicKeyInfo());
+
+      if (null != issuer.key) {
+        certHolder = certBuilder.build(issuer.newSigner(issuer.key));
+
+      } else {
+        final PrivateKey issuerKey = getEntry(keyHandle).getPrivateKey();
+        try {
+          certHolder = certBuilder.build(issuer.newSigner(issuerKey));
+        } finally {
+          destroyKey(issuerKey);
+        } // try (issuer key)
+      }
+    } finally {
+      issuer.release();
+    }
+
+    final List<Certificate> devCertChain = new ArrayList<>(issuer.chain.size() + 1);
+    devCertChain.add(new JcaX509CertificateConverter()
+        .setProvider(BouncyCastleSingleton.INSTANCE)
+        .getCertificate(certHolder));
+    devCertChain.addAll(issuer.chain);
+
+    try (JceFactories.Lease<CertificateFactory> certFactory =
+        JceFactories.certificateFactory("X.509", BouncyCastleSingleton.INSTANCE)) {
+      return certFactory.get().generateCertPath(devCertChain);
+    }
+  }
+
+  /**
+   * Destroys the kept issuer keys, each once no request is using it.
+   */
+  @Override
+  public void destroy() {
+    for (Issuer issuer : issuers.values()) {
+      issuer.release();
+    }
+    issuers.clear();
+  }
+
+  /**
+   * The number of issuer contexts built.
+   */
+  public long getIssuerCount() {
+    return issuerCount.sum();
+  }
+
+  // Serial numbers are random rather than sequential so that devices certified in the
+  // same millisecond, or by different instances, never share one.  The top bit is set to
+  // keep the number positive and of a fixed length.
+  private static BigInteger newSerialNumber() {
+    return new BigInteger(SERIAL_BITS, random).setBit(SERIAL_BITS);
+  }
+
+  private PrivateKeyEntry getEntry(final KeyHandle keyHandle) throws GeneralSecurityException {
+
     // KeyStoreSpi does not support callbacks for getEntry,
     // we must fetch the password ourselves
     final Entry entry;
@@ -86,55 +234,133 @@ public class SimpleCertPathService implements CertPathService {
     try {
       entry = keyHandle.getKeyStore().getEntry(keyHandle.getAlias(), pp);
     } finally {
-      pp.destroy();
+      try {
+        pp.destroy();
+      } catch (DestroyFailedException e) {
+        // no-op: PasswordProtection only clears its password
+      }
     }
 
     if (!(entry instanceof PrivateKeyEntry)) {
       throw new IllegalArgumentException("keystore entry must contain a private key");
     }
+    return (PrivateKeyEntry) entry;
+  }
 
-    final PrivateKeyEntry pkEntry = (PrivateKeyEntry) entry;
+  private Issuer newIssuer(final KeyHandle keyHandle, final KeyType keyType) {
 
-    final X509CertificateHolder certHolder;
-    final PrivateKey issuerKey = pkEntry.getPrivateKey();
     try {
-      final ContentSigner signer;
+      final PrivateKeyEntry pkEntry = getEntry(keyHandle);
+      final PrivateKey issuerKey = pkEntry.getPrivateKey();
+      final Issuer issuer;
       try {
-        signer =
-          new JcaContentSignerBuilder(CryptoLevel.of(keyType).getSignatureAlgorithm(issuerKey))
-            .setProvider(keyHandle.getKeyStore().getProvider())
-            .build(issuerKey);
-      } catch (OperatorCreationException e) {
-        throw new RuntimeException(e);
+        issuer = new Issuer(
+            keyHandle,
+            new X509CertificateHolder(pkEntry.getCertificate().getEncoded()).getSubject(),
+            List.of(pkEntry.getCertificateChain()),
+            new JcaContentSignerBuilder(CryptoLevel.of(keyType).getSignatureAlgorithm(issuerKey))
+                .setProvider(keyHandle.getKeyStore().getProvider()),
+            destroyKeys ? null : issuerKey);
+      } catch (IOException e) {
+        throw new CertificateEncodingException(e);
+      } finally {
+        if (destroyKeys) {
+          destroyKey(issuerKey);
+        }
       }
 
-      final X509v3CertificateBuilder certBuilder = new X509v3CertificateBuilder(
-          new X509CertificateHolder(pkEntry.getCertificate().getEncoded()).getSubject(),
-          BigInteger.valueOf(System.currentTimeMillis()),
-          Date.from(Instant.now()),
-          Date.from(ZonedDateTime.now().plus(certificateValidityPeriodFactory.get()).toInstant()),
-          csr.getSubject(),
-          csr.getSubjectPublicKeyInfo());
+      issuerCount.increment();
+      LoggerFactory.getLogger(getClass()).info(MessageFormat.format(
+          resourceBundleHolder_.get().getString("issuer.cached"),
+          keyType, keyHandle.getAlias(), issuer.name,
+          resourceBundleHolder_.get().getString(destroyKeys ? "key.destroyed" : "key.cached")));
+      return issuer;
 
-      certHolder = certBuilder.build(signer);
+    } catch (GeneralSecurityException e) {
+      throw new UncheckedGeneralSecurityException(e);
+    }
+  }
 
-    } finally {
+  private static void destroyKey(final PrivateKey key) {
+    try {
+      key.destroy();
+    } catch (DestroyFailedException e) {
+      // no-op: most key implementations don't do this right, but we must try
+    }
+  }
+
+  /**
+   * The issuer of certificates for one key type.
+   */
+  private static class Issuer {
+
+    private final KeyHandle handle;
+    private final X500Name name;
+    private final List<Certificate> chain;
+    private final JcaContentSignerBuilder signerBuilder;
+    private final PrivateKey key;
+
+    // The number of requests using the issuer, plus one while it is current.
+    private final AtomicInteger users = new AtomicInteger(1);
+
+    Issuer(
+        final KeyHandle handle,
+        final X500Name name,
+        final List<Certificate> chain,
+        final JcaContentSignerBuilder signerBuilder,
+        final PrivateKey key) {
+
+      this.handle = handle;
+      this.name = name;
+      this.chain = chain;
+      this.signerBuilder = signerBuilder;
+      this.key = key;
+    }
+
+    boolean isFor(final KeyHandle other) {
+      return handle.getKeyStore() == other.getKeyStore()
+          && handle.getAlias().equals(other.getAlias());
+    }
+
+    // Counts a request as a user, unless the issuer has been replaced and is no longer
+    // in use, in which case its key may already be destroyed.
+    boolean acquire() {
+      for (int n = users.get(); n > 0; n = users.get()) {
+        if (users.compareAndSet(n, n + 1)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    // Ends a request's use, or the issuer's time as current.  The last of these destroys
+    // the key.
+    void release() {
+      if (0 == users.decrementAndGet() && null != key) {
+        destroyKey(key);
+      }
+    }
+
+    // The builder is configured once, and build() only reads that configuration,
+    // so threads can share it.  Each ContentSigner has its own Signature.
+    ContentSigner newSigner(final PrivateKey key) {
       try {
-        issuerKey.destroy();
-      } catch (DestroyFailedException e) {
-        // no-op: most key implementations don't do this right, but we must try
+        return signerBuilder.build(key);
+      } catch (OperatorCreationException e) {
+        throw new RuntimeException(e);
       }
-    } // try (issuer key)
+    }
+  }
 
-    final List<Certificate> devCertChain = new ArrayList<>();
-    devCertChain.add(new JcaX509CertificateConverter()
-        .setProvider(BouncyCastleSingleton.INSTANCE)
-        .getCertificate(certHolder));
-    devCertChain.addAll(Arrays.asList(pkEntry.getCertificateChain()));
+  private static class UncheckedGeneralSecurityException extends RuntimeException {
+
+    UncheckedGeneralSecurityException(final GeneralSecurityException cause) {
+      super(cause);
+    }
 
-    CertificateFactory certFactory =
-        CertificateFactory.getInstance("X.509", BouncyCastleSingleton.INSTANCE);
-    return certFactory.generateCertPath(devCertChain);
+    @Override
+    public synchronized GeneralSecurityException getCause() {
+      return (GeneralSecurityException) super.getCause();
+    }
   }
 }
-
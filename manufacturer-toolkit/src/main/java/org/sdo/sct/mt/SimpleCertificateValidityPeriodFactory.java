@@ -4,8 +4,6 @@
 package org.sdo.sct.mt;
 
 import java.time.Period;
-import org.sdo.sct.domain.ServerSettings;
-import org.sdo.sct.domain.ServerSettingsRepo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -13,16 +11,15 @@ import org.springframework.stereotype.Service;
 @SuppressWarnings("unused")
 public class SimpleCertificateValidityPeriodFactory implements CertificateValidityPeriodFactory {
 
-  private final ServerSettingsRepo serverSettingsRepo;
+  private final ServerSettingsCache serverSettingsCache;
 
   @Autowired
-  SimpleCertificateValidityPeriodFactory(ServerSettingsRepo serverSettingsRepo) {
-    this.serverSettingsRepo = serverSettingsRepo;
+  SimpleCertificateValidityPeriodFactory(ServerSettingsCache serverSettingsCache) {
+    this.serverSettingsCache = serverSettingsCache;
   }
 
   @Override
   public Period get() {
-    ServerSettings settings = serverSettingsRepo.get();
-    return Period.parse(settings.getCertificateValidityPeriod());
+    return serverSettingsCache.get().getCertificateValidityPeriod();
   }
 }
@@ -0,0 +1,166 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.bouncycastle.asn1.x500.X500NameBuilder;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.pkcs.PKCS10CertificationRequest;
+import org.bouncycastle.pkcs.jcajce.JcaPKCS10CertificationRequestBuilder;
+import org.junit.jupiter.api.Test;
+import org.sdo.sct.BouncyCastleSingleton;
+import org.sdo.sct.KeyFinder;
+import org.sdo.sct.KeyStoresFactory;
+import org.sdo.sct.PasswordCallbackFunction;
+import org.springframework.core.io.ClassPathResource;
+
+class CertificatesControllerTest {
+
+  // The bundle position before which a malformed block is inserted.
+  static final int MALFORMED = 3;
+
+  PasswordCallbackFunction pw = "123456"::toCharArray;
+
+  PKCS10CertificationRequest buildCsr(String curve, String signatureAlg) throws Exception {
+    KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC", BouncyCastleSingleton.INSTANCE);
+    kpg.initialize(new ECGenParameterSpec(curve), SecureRandom.getInstance("SHA1PRNG"));
+    KeyPair dev = kpg.generateKeyPair();
+    return new JcaPKCS10CertificationRequestBuilder(new X500NameBuilder().build(), dev.getPublic())
+      .build(new JcaContentSignerBuilder(signatureAlg)
+        .setProvider(BouncyCastleSingleton.INSTANCE)
+        .build(dev.getPrivate()));
+  }
+
+  String toPem(PKCS10CertificationRequest csr) throws Exception {
+    StringWriter sw = new StringWriter();
+    try (JcaPEMWriter writer = new JcaPEMWriter(sw)) {
+      writer.writeObject(csr);
+    }
+    return sw.toString();
+  }
+
+  List<JsonNode> readLines(ByteArrayOutputStream out) throws Exception {
+    List<JsonNode> lines = new ArrayList<>();
+    ObjectMapper mapper = new ObjectMapper();
+    for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+      lines.add(mapper.readTree(line));
+    }
+    return lines;
+  }
+
+  @Test
+  void testBatch() throws Exception {
+
+    KeyStoresFactory keyStoresFactory =
+        new KeyStoresFactory(pw, new ClassPathResource("org/sdo/sct/test.p12"));
+    keyStoresFactory.setSingleton(false);
+    SimpleCertPathService certPathService = new SimpleCertPathService(
+        pw, () -> Period.ofDays(1), new KeyFinder(keyStoresFactory.getObject(), pw));
+    CertificatesController controller = new CertificatesController(certPathService, 2);
+
+    List<PKCS10CertificationRequest> csrs = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      csrs.add(buildCsr("secp256r1", "SHA256withECDSA"));
+    }
+    csrs.add(buildCsr("secp384r1", "SHA384withECDSA"));
+
+    // A PEM bundle, with one malformed block in the middle and one block that isn't a CSR.
+    StringBuilder pem = new StringBuilder();
+    for (int i = 0; i < csrs.size(); i++) {
+      if (MALFORMED == i) {
+        pem.append("-----BEGIN CERTIFICATE REQUEST-----\n")
+          .append("bm90IGEgQ1NS\n")
+          .append("-----END CERTIFICATE REQUEST-----\n");
+      }
+      pem.append(toPem(csrs.get(i)));
+    }
+    pem.append("-----BEGIN PUBLIC KEY-----\n")
+      .append(Base64.getEncoder().encodeToString(
+        csrs.get(0).getSubjectPublicKeyInfo().getEncoded()))
+      .append("\n-----END PUBLIC KEY-----\n");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    controller.postBatchPem(new ByteArrayInputStream(pem.toString().getBytes(
+      StandardCharsets.US_ASCII))).getBody().writeTo(out);
+
+    List<JsonNode> lines = readLines(out);
+    assertEquals(csrs.size() + 3, lines.size());
+    Set<BigInteger> serials = new HashSet<>();
+    for (int i = 0; i <= csrs.size(); i++) {
+      // Results come back in request order, each identified by its position in the bundle.
+      JsonNode line = lines.get(i);
+      assertEquals(Integer.toString(i + 1), line.get("id").asText());
+      if (MALFORMED == i) {
+        assertTrue(line.has("error"));
+        assertFalse(line.get("error").asText().isEmpty());
+        continue;
+      }
+
+      // Each is a device cert and its issuer's chain, and no two devices share a serial.
+      assertTrue(line.get("certPath").toString().startsWith("[1,"));
+      X509Certificate cert = (X509Certificate) CertificateFactory.getInstance("X.509")
+          .generateCertificate(new ByteArrayInputStream(Base64.getDecoder().decode(
+            line.get("certPath").get(2).get(0).get(1).asText())));
+      assertTrue(cert.getSerialNumber().bitLength() > 64);
+      assertTrue(serials.add(cert.getSerialNumber()));
+    }
+    assertEquals(csrs.size(), serials.size());
+    assertTrue(lines.get(csrs.size() + 1).has("error"));
+    JsonNode summary = lines.get(csrs.size() + 2);
+    assertEquals(csrs.size(), summary.get("issued").asInt());
+    assertEquals(2, summary.get("failed").asInt());
+    assertTrue(summary.has("certsPerSecond"));
+
+    // NDJSON, with the CSRs as PEM or base64 DER, and one that doesn't decode.
+    String ndjson = "{\"id\":\"a\",\"csr\":" + new ObjectMapper().writeValueAsString(
+        toPem(csrs.get(0))) + "}\n"
+      + "\n"
+      + "{\"id\":\"b\",\"csr\":\""
+      + Base64.getEncoder().encodeToString(csrs.get(1).getEncoded()) + "\"}\n"
+      + "{\"id\":\"c\",\"csr\":\"bm90IGEgQ1NS\"}\n";
+
+    out.reset();
+    controller.postBatchNdjson(new ByteArrayInputStream(ndjson.getBytes(
+      StandardCharsets.UTF_8))).getBody().writeTo(out);
+
+    lines = readLines(out);
+    assertEquals(4, lines.size());
+    assertEquals("a", lines.get(0).get("id").asText());
+    assertTrue(lines.get(0).has("certPath"));
+    assertEquals("b", lines.get(1).get("id").asText());
+    assertTrue(lines.get(1).has("certPath"));
+    assertEquals("c", lines.get(2).get("id").asText());
+    assertTrue(lines.get(2).has("error"));
+    assertEquals(2, lines.get(3).get("issued").asInt());
+
+    assertEquals(csrs.size() + 2, controller.getIssuedCount());
+    assertEquals(3, controller.getFailedCount());
+    // One issuer context for each key type.
+    assertEquals(2, certPathService.getIssuerCount());
+    controller.destroy();
+  }
+}
@@ -8,6 +8,7 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.sdo.sct.BouncyCastleSingleton;
 import org.sdo.sct.CryptoLevel;
 import org.sdo.sct.KeyFinder;
@@ -73,6 +74,18 @@ class DITest {
   @Autowired
   private
   DiAppStartController diAppStartController;
+  @Autowired
+  private
+  DiSessionStore sessionStore;
+  @Autowired
+  private
+  DiExecutors diExecutors;
+  @Autowired
+  private
+  DiMetrics diMetrics;
+  @Autowired
+  private
+  SimpleMeterRegistry meterRegistry;
 
   static Stream<Arguments> paramProvider() {
     return Stream.of(
@@ -119,9 +132,12 @@ class DITest {
       m += "\00" + toPEM(csr);
     }
 
-    ResponseEntity<DiSetCredentials> response = diAppStartController
-      .post(new DiAppStart(Base64.getEncoder().encodeToString(m.getBytes())))
-      .call();
+    @SuppressWarnings("unchecked")
+    ResponseEntity<DiSetCredentials> response = (ResponseEntity<DiSetCredentials>)
+      diAppStartController
+        .post(new DiAppStart(Base64.getEncoder().encodeToString(m.getBytes())))
+        .getCallable()
+        .call();
 
     // Did the call succeed?
     assertNotNull(response);
@@ -151,9 +167,11 @@ class DITest {
     final String auth = Base64.getEncoder()
       .withoutPadding()
       .encodeToString(serial.getBytes(StandardCharsets.UTF_16));
-    Callable<DiDone> callable =
-      new DiSetHmacController(deviceStateRepo, ownerVoucherRepo)
-        .post(auth, new DiSetHmac("[32,108,\"1IOGFrfUn1dIRRSxuMbXgCfpdagOvB90dIla9Ki+aN8=\"]"));
+    @SuppressWarnings("unchecked")
+    Callable<DiDone> callable = (Callable<DiDone>)
+      new DiSetHmacController(sessionStore, diExecutors, diMetrics)
+        .post(auth, new DiSetHmac("[32,108,\"1IOGFrfUn1dIRRSxuMbXgCfpdagOvB90dIla9Ki+aN8=\"]"))
+        .getCallable();
 
     assertNotNull(callable);
     assertNotNull(callable.call());
@@ -163,6 +181,14 @@ class DITest {
     assertFalse(ove.getVoucher().isBlank());
     assertTrue(ove.getVoucher().startsWith("{\"sz\":0,\"oh\":{\"pv\":113,\"pe\":"));
 
+    // The voucher save is tagged with the device and key type from DI.AppStart.
+    // An RSA device's CSR is ignored, so it's an EPID device.
+    final boolean ecdsa = useCsr && KeyType.RSA2048RESTR != keyType;
+    assertTrue(0 < meterRegistry.get(DiMetrics.STAGE_TIMER)
+      .tags("stage", "voucher.save", "device", ecdsa ? "ecdsa" : "epid",
+        "keyType", keyType.name())
+      .timer().count());
+
     // Is the device state table properly updated?
     opt = deviceStateRepo.findById(serial);
     assertTrue(opt.isPresent());
@@ -209,9 +235,32 @@ class DITest {
     @Autowired
     DeviceStateRepo deviceStateRepo;
 
+    @Autowired
+    OwnershipVoucherRepo ownerVoucherRepo;
+
     @Autowired
     ServerSettingsRepo serverSettingsRepo;
 
+    @Bean
+    DiSessionStore sessionStore() {
+      return new JpaDiSessionStore(deviceStateRepo, ownerVoucherRepo);
+    }
+
+    @Bean
+    DiExecutors diExecutors() {
+      return new DiExecutors();
+    }
+
+    @Bean
+    SimpleMeterRegistry meterRegistry() {
+      return new SimpleMeterRegistry();
+    }
+
+    @Bean
+    DiMetrics diMetrics() {
+      return new DiMetrics(meterRegistry());
+    }
+
     @Bean
     CertPathService certPathService() throws Exception {
       return new SimpleCertPathService(
@@ -247,9 +296,11 @@ class DITest {
         onDieCertPathService(),
         onDieCertCache(),
         onDieSignatureValidator(),
-        deviceStateRepo,
-        serverSettingsRepo,
-        new KeyFinder(keyStores(), passwordCallbackFunction()));
+        sessionStore(),
+        new ServerSettingsCache(serverSettingsRepo),
+        new KeyFinder(keyStores(), passwordCallbackFunction()),
+        diExecutors(),
+        diMetrics());
     }
 
     @Bean
@@ -0,0 +1,173 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.sdo.sct.mt.DiExecutors.Message;
+import org.sdo.sct.mt.DiExecutors.Mode;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.task.TaskExecutionProperties;
+import org.springframework.boot.task.TaskExecutorBuilder;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+/**
+ * Checks how many messages each execution mode runs at once.
+ *
+ * <p>Each message only sleeps, standing in for blocking database and keystore calls.
+ * {@link DiLoadTest} runs real DI sessions.
+ */
+class DiExecutorsTest {
+
+  static final int SESSIONS = 400;
+  static final Duration BLOCKING_TIME = Duration.ofMillis(20);
+
+  // Builds the executor Spring Boot gives Spring MVC for async requests, as
+  // TaskExecutionAutoConfiguration does with the default spring.task.execution properties.
+  static ThreadPoolTaskExecutor applicationTaskExecutor() {
+    final TaskExecutionProperties.Pool pool = new TaskExecutionProperties().getPool();
+    final ThreadPoolTaskExecutor executor = new TaskExecutorBuilder()
+        .queueCapacity(pool.getQueueCapacity())
+        .corePoolSize(pool.getCoreSize())
+        .maxPoolSize(pool.getMaxSize())
+        .allowCoreThreadTimeOut(pool.isAllowCoreThreadTimeout())
+        .keepAlive(pool.getKeepAlive())
+        .threadNamePrefix(new TaskExecutionProperties().getThreadNamePrefix())
+        .build();
+    executor.initialize();
+    return executor;
+  }
+
+  // Runs every session on the executor a controller would use.  In default mode that's
+  // Spring Boot's applicationTaskExecutor.
+  int runSessions(DiExecutors diExecutors) throws Exception {
+
+    final ThreadPoolTaskExecutor defaultExecutor = applicationTaskExecutor();
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger peak = new AtomicInteger();
+    final List<Future<?>> futures = new ArrayList<>();
+
+    final long start = System.nanoTime();
+    for (int i = 0; i < SESSIONS; i++) {
+      final int session = i;
+      WebAsyncTask<Integer> task = diExecutors.submit(Message.DI_APP_START, () -> {
+        peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+          Thread.sleep(BLOCKING_TIME.toMillis());
+        } finally {
+          inFlight.decrementAndGet();
+        }
+        return session;
+      });
+      AsyncTaskExecutor executor =
+          null == task.getExecutor() ? defaultExecutor : task.getExecutor();
+      futures.add(executor.submit(task.getCallable()));
+    }
+
+    try {
+      for (int i = 0; i < SESSIONS; i++) {
+        assertEquals(i, futures.get(i).get());
+      }
+    } finally {
+      defaultExecutor.shutdown();
+    }
+    final Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+    LoggerFactory.getLogger(getClass()).info(
+        "{} mode: {} sessions in {} ms, at most {} at once, {} sessions/s",
+        diExecutors.getMode(), SESSIONS, elapsed.toMillis(), peak.get(),
+        SESSIONS * 1000L / Math.max(1, elapsed.toMillis()));
+
+    assertEquals(SESSIONS, diExecutors.getCompletedCount(Message.DI_APP_START));
+    assertEquals(0, diExecutors.getActiveCount(Message.DI_APP_START));
+    return peak.get();
+  }
+
+  @Test
+  void testDefault() throws Exception {
+    DiExecutors diExecutors = new DiExecutors();
+    assertNull(diExecutors.submit(Message.ERROR, () -> null).getExecutor());
+    // Spring Boot's executor has 8 core threads and an unbounded queue, so never grows.
+    assertTrue(runSessions(diExecutors) <= 8);
+  }
+
+  @Test
+  void testBounded() throws Exception {
+    DiExecutors diExecutors = new DiExecutors(Mode.BOUNDED, 8, SESSIONS);
+    try {
+      assertTrue(runSessions(diExecutors) <= 8);
+      assertEquals(0, diExecutors.getRejectedCount(Message.DI_APP_START));
+    } finally {
+      diExecutors.destroy();
+    }
+  }
+
+  @Test
+  void testVirtual() throws Exception {
+    DiExecutors diExecutors = new DiExecutors(Mode.VIRTUAL, 8, SESSIONS);
+    try {
+      if (Runtime.version().feature() < 21) {
+        assertEquals(Mode.BOUNDED, diExecutors.getMode());
+      }
+      assumeTrue(Mode.VIRTUAL == diExecutors.getMode());
+      assertTrue(runSessions(diExecutors) > 8);
+    } finally {
+      diExecutors.destroy();
+    }
+  }
+
+  @Test
+  void testRejection() throws Exception {
+
+    DiExecutors diExecutors = new DiExecutors(Mode.BOUNDED, 1, 1);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+        WebAsyncTask<Object> task = diExecutors.submit(Message.DI_SET_HMAC, () -> {
+          started.countDown();
+          release.await();
+          return null;
+        });
+        futures.add(task.getExecutor().submit(task.getCallable()));
+      }
+      started.await();
+
+      // One message is running and one is queued, so a third is turned away.
+      assertEquals(1, diExecutors.getActiveCount(Message.DI_SET_HMAC));
+      assertEquals(1, diExecutors.getQueueDepth(Message.DI_SET_HMAC));
+      WebAsyncTask<Object> task = diExecutors.submit(Message.DI_SET_HMAC, () -> null);
+      assertThrows(RejectedExecutionException.class,
+          () -> task.getExecutor().submit(task.getCallable()));
+      assertEquals(1, diExecutors.getRejectedCount(Message.DI_SET_HMAC));
+
+      // Other message types have their own executors.
+      WebAsyncTask<Object> error = diExecutors.submit(Message.ERROR, () -> "ok");
+      assertEquals("ok", error.getExecutor().submit(error.getCallable()).get());
+
+      release.countDown();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      release.countDown();
+      diExecutors.destroy();
+    }
+  }
+}
@@ -0,0 +1,280 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.bouncycastle.asn1.x500.X500NameBuilder;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.pkcs.jcajce.JcaPKCS10CertificationRequestBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.sdo.sct.BouncyCastleSingleton;
+import org.sdo.sct.KeyFinder;
+import org.sdo.sct.KeyStores;
+import org.sdo.sct.KeyStoresFactory;
+import org.sdo.sct.KeyType;
+import org.sdo.sct.KeyTypeCodec;
+import org.sdo.sct.PasswordCallbackFunction;
+import org.sdo.sct.domain.DeviceStateRepo;
+import org.sdo.sct.domain.OwnershipVoucherRepo;
+import org.sdo.sct.domain.ServerSettings;
+import org.sdo.sct.domain.ServerSettingsRepo;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+/**
+ * Drives complete DI sessions through the DI controllers, in each execution mode.
+ *
+ * <p>Each of {@link #CLIENTS} devices runs DI.AppStart and then DI.SetHMAC, over and over,
+ * as a factory line's devices would.  Half the devices send a CSR, so their DI.AppStart
+ * signs a device certificate; the rest are EPID devices.  Every message blocks on the
+ * database, as it does in service.  Each message runs on the executor Spring MVC would
+ * hand it to: the mode's own, or in default mode Spring Boot's
+ * <code>applicationTaskExecutor</code>.  The session rate and latency are logged for
+ * each mode.
+ */
+@DataJpaTest(showSql = false)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class DiLoadTest {
+
+  static final int CLIENTS = 32;
+  static final int SESSIONS = 400;
+  static final int WARMUP = 100;
+
+  private static final String HMAC = "[32,108,\"1IOGFrfUn1dIRRSxuMbXgCfpdagOvB90dIla9Ki+aN8=\"]";
+
+  @Autowired
+  private
+  OwnershipVoucherRepo ownerVoucherRepo;
+  @Autowired
+  private
+  ServerSettingsRepo serverSettingsRepo;
+  @Autowired
+  private
+  DiSessionStore sessionStore;
+  @Autowired
+  private
+  CertPathService certPathService;
+  @Autowired
+  private
+  KeyFinder keyFinder;
+
+  private ThreadPoolTaskExecutor applicationTaskExecutor;
+  private String csr;
+
+  @BeforeEach
+  void beforeEach() throws Exception {
+
+    // Tests here don't roll back, so the settings saved by the first are kept.
+    if (0 == serverSettingsRepo.count()) {
+      serverSettingsRepo.save(
+        new ServerSettings(
+          null,
+          "http://localhost:8040 https://127.0.0.1:8040",
+          Period.ofDays(1).toString()));
+    }
+
+    applicationTaskExecutor = DiExecutorsTest.applicationTaskExecutor();
+
+    // Devices' keys don't matter to the toolkit, so they can share one CSR.
+    KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC", BouncyCastleSingleton.INSTANCE);
+    kpg.initialize(new ECGenParameterSpec("secp256r1"));
+    KeyPair keyPair = kpg.generateKeyPair();
+    StringWriter sw = new StringWriter();
+    try (JcaPEMWriter pw = new JcaPEMWriter(sw)) {
+      pw.writeObject(new JcaPKCS10CertificationRequestBuilder(
+        new X500NameBuilder().build(), keyPair.getPublic())
+        .build(new JcaContentSignerBuilder("SHA256withECDSA").build(keyPair.getPrivate())));
+    }
+    csr = sw.toString();
+  }
+
+  @AfterEach
+  void afterEach() {
+    applicationTaskExecutor.shutdown();
+  }
+
+  @ParameterizedTest
+  @EnumSource(DiExecutors.Mode.class)
+  void test(DiExecutors.Mode mode) throws Exception {
+
+    final DiExecutors diExecutors = new DiExecutors(mode, 0, SESSIONS);
+    try {
+      assumeTrue(mode == diExecutors.getMode());
+
+      final DiMetrics diMetrics = new DiMetrics(new SimpleMeterRegistry());
+      final DiAppStartController appStart = new DiAppStartController(
+          certPathService,
+          new OnDieCertPath(),
+          new OnDieCache(null, false, null),
+          new OnDieSignatureValidator(new OnDieCache(null, false, null), false),
+          sessionStore,
+          new ServerSettingsCache(serverSettingsRepo),
+          keyFinder,
+          diExecutors,
+          diMetrics);
+      final DiSetHmacController setHmac =
+          new DiSetHmacController(sessionStore, diExecutors, diMetrics);
+
+      // Warm up, so that the first mode tested isn't charged for compilation.
+      for (int i = 0; i < WARMUP; i++) {
+        runSession(appStart, setHmac, 0 == i % 2);
+      }
+
+      final long vouchers = ownerVoucherRepo.count();
+      final long[] latencies = new long[SESSIONS];
+      final ExecutorService devices = Executors.newFixedThreadPool(CLIENTS);
+      final List<Future<?>> futures = new ArrayList<>();
+
+      final long start = System.nanoTime();
+      try {
+        for (int i = 0; i < SESSIONS; i++) {
+          final int session = i;
+          futures.add(devices.submit(() -> {
+            final long sessionStart = System.nanoTime();
+            runSession(appStart, setHmac, 0 == session % 2);
+            latencies[session] = System.nanoTime() - sessionStart;
+            return null;
+          }));
+        }
+        for (Future<?> future : futures) {
+          future.get();
+        }
+      } finally {
+        devices.shutdown();
+      }
+      final Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+      Arrays.sort(latencies);
+      LoggerFactory.getLogger(getClass()).info(
+          "{} mode: {} sessions from {} devices in {} ms, {} sessions/s, "
+            + "latency p50 {} ms, p99 {} ms",
+          diExecutors.getMode(), SESSIONS, CLIENTS, elapsed.toMillis(),
+          SESSIONS * 1000L / Math.max(1, elapsed.toMillis()),
+          Duration.ofNanos(latencies[SESSIONS / 2]).toMillis(),
+          Duration.ofNanos(latencies[SESSIONS * 99 / 100]).toMillis());
+
+      assertEquals(vouchers + SESSIONS, ownerVoucherRepo.count());
+      assertEquals(WARMUP + SESSIONS,
+          diExecutors.getCompletedCount(DiExecutors.Message.DI_APP_START));
+      assertEquals(WARMUP + SESSIONS,
+          diExecutors.getCompletedCount(DiExecutors.Message.DI_SET_HMAC));
+      assertEquals(0, diExecutors.getRejectedCount(DiExecutors.Message.DI_APP_START));
+      assertEquals(0, diExecutors.getRejectedCount(DiExecutors.Message.DI_SET_HMAC));
+    } finally {
+      diExecutors.destroy();
+    }
+  }
+
+  private void runSession(
+      final DiAppStartController appStart,
+      final DiSetHmacController setHmac,
+      final boolean useCsr) throws Exception {
+
+    final String serial = UUID.randomUUID().toString();
+    String m = KeyTypeCodec.encode(useCsr ? KeyType.ECDSA_P_256 : KeyType.RSA2048RESTR)
+        + "\00" + serial
+        + "\00" + UUID.randomUUID();
+    if (useCsr) {
+      m += "\00" + csr;
+    }
+
+    final ResponseEntity<DiSetCredentials> response = execute(appStart.post(
+        new DiAppStart(Base64.getEncoder().encodeToString(m.getBytes(StandardCharsets.US_ASCII)))));
+    assertNotNull(response.getHeaders().getFirst(HttpHeaders.AUTHORIZATION));
+
+    final String auth = Base64.getEncoder()
+        .withoutPadding()
+        .encodeToString(serial.getBytes(StandardCharsets.UTF_16));
+    assertNotNull(execute(setHmac.post(auth, new DiSetHmac(HMAC))));
+  }
+
+  // Runs a controller's task as Spring MVC would, and waits for its result.
+  private <T> T execute(final WebAsyncTask<T> task) throws Exception {
+    final AsyncTaskExecutor executor =
+        null == task.getExecutor() ? applicationTaskExecutor : task.getExecutor();
+    @SuppressWarnings("unchecked")
+    final Callable<T> callable = (Callable<T>) task.getCallable();
+    return executor.submit(callable).get();
+  }
+
+  @Configuration
+  @EnableJpaRepositories("org.sdo.sct.domain")
+  @EntityScan("org.sdo.sct.domain")
+  static class Config {
+
+    @Autowired
+    DeviceStateRepo deviceStateRepo;
+
+    @Autowired
+    OwnershipVoucherRepo ownerVoucherRepo;
+
+    @Bean
+    DiSessionStore sessionStore() {
+      return new JpaDiSessionStore(deviceStateRepo, ownerVoucherRepo);
+    }
+
+    @Bean
+    KeyFinder keyFinder() throws Exception {
+      return new KeyFinder(keyStores(), passwordCallbackFunction());
+    }
+
+    @Bean
+    CertPathService certPathService() throws Exception {
+      return new SimpleCertPathService(
+        passwordCallbackFunction(),
+        () -> Period.ofDays(1),
+        keyFinder());
+    }
+
+    @Bean
+    KeyStores keyStores() throws Exception {
+      KeyStoresFactory ksf = new KeyStoresFactory(
+        passwordCallbackFunction(), new ClassPathResource("org/sdo/sct/test.p12"));
+      ksf.setSingleton(false);
+      return ksf.getObject();
+    }
+
+    @Bean
+    PasswordCallbackFunction passwordCallbackFunction() {
+      return "123456"::toCharArray;
+    }
+  }
+}
@@ -0,0 +1,59 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import org.sdo.sct.KeyType;
+
+class DiMetricsTest {
+
+  @Test
+  void testStageTimers() throws Exception {
+
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    DiMetrics metrics = new DiMetrics(registry);
+
+    assertEquals("x", metrics.call(DiMetrics.Stage.KEY_FIND,
+        DiMetrics.DeviceType.ECDSA, KeyType.ECDSA_P_384, () -> "x"));
+    assertThrows(IllegalStateException.class, () -> metrics.call(DiMetrics.Stage.KEY_FIND,
+        DiMetrics.DeviceType.ECDSA, KeyType.ECDSA_P_384, () -> {
+          throw new IllegalStateException();
+        }));
+    metrics.run(DiMetrics.Stage.VOUCHER_SAVE, null, null, () -> { });
+
+    Timer found = registry.get(DiMetrics.STAGE_TIMER)
+        .tags("stage", "key.find", "device", "ecdsa", "keyType", "ECDSA_P_384",
+          "outcome", "success")
+        .timer();
+    assertEquals(1, found.count());
+    assertEquals(1, registry.get(DiMetrics.STAGE_TIMER)
+        .tags("stage", "key.find", "outcome", "failure").timer().count());
+    assertEquals(1, registry.get(DiMetrics.STAGE_TIMER)
+        .tags("stage", "voucher.save", "device", "unknown", "keyType", "unknown")
+        .timer().count());
+    // The timer for a tag combination is registered once and reused.
+    metrics.run(DiMetrics.Stage.VOUCHER_SAVE, null, null, () -> { });
+    assertEquals(2, registry.get(DiMetrics.STAGE_TIMER)
+        .tags("stage", "voucher.save").timer().count());
+    metrics.record(DiMetrics.Stage.KEY_FIND, DiMetrics.DeviceType.ECDSA, KeyType.ECDSA_P_384,
+        true, 1);
+    assertEquals(2, found.count());
+    assertEquals(3, registry.get(DiMetrics.STAGE_TIMER).timers().size());
+  }
+
+  @Test
+  void testDeviceType() throws Exception {
+
+    byte[] mstring = getClass().getClassLoader().getResourceAsStream("mstring.dat").readAllBytes();
+    MStringParser.ParseResult onDie =
+        new MStringParser().parse(new String(mstring, StandardCharsets.US_ASCII));
+    assertEquals(DiMetrics.DeviceType.ONDIE, DiMetrics.DeviceType.of(onDie));
+  }
+}
@@ -11,11 +11,13 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.sdo.sct.domain.DeviceState;
 import org.sdo.sct.domain.DeviceStateRepo;
+import org.sdo.sct.domain.OwnershipVoucherRepo;
 import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.Base64;
 import java.util.NoSuchElementException;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,6 +28,7 @@ import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.web.client.HttpClientErrorException.BadRequest;
 import org.springframework.web.client.HttpClientErrorException.Unauthorized;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
 @DataJpaTest(showSql = false)
 @ContextConfiguration
@@ -46,36 +49,49 @@ class ErrorControllerTest {
   @Autowired
   private DeviceStateRepo deviceStateRepo;
 
+  @Autowired
+  private OwnershipVoucherRepo ownershipVoucherRepo;
+
+  private DiExecutors diExecutors;
+  private ErrorController controller;
+
   @BeforeEach
   void beforeEach() {
     DeviceState state = new DeviceState(
       serial, Timestamp.from(Instant.now()), null, null, DeviceStatus.PENDING, null);
     deviceStateRepo.save(state);
+
+    diExecutors = new DiExecutors();
+    controller = new ErrorController(
+      new JpaDiSessionStore(deviceStateRepo, ownershipVoucherRepo), diExecutors);
+  }
+
+  @AfterEach
+  void afterEach() {
+    diExecutors.destroy();
   }
 
   @Test
   void post_badAuth_throwsUnauthorizedException() {
-    assertThrows(Unauthorized.class, () ->
-      new ErrorController(deviceStateRepo).post(null, new Error(0, 0, "hello world")).call());
-    assertThrows(Unauthorized.class, () ->
-      new ErrorController(deviceStateRepo).post("", new Error(0, 0, "hello world")).call());
-    assertThrows(Unauthorized.class, () ->
-      new ErrorController(deviceStateRepo).post(auth + "x", new Error(0, 0, "hello world")).call());
-    assertThrows(Unauthorized.class, () ->
-      new ErrorController(deviceStateRepo).post(auth + "\03", new Error(0, 0, "hello world"))
-        .call());
+    Error error = new Error(0, 0, "hello world");
+    assertThrows(Unauthorized.class, () -> controller.post(null, error));
+    assertThrows(Unauthorized.class, () -> controller.post("", error));
+    assertThrows(Unauthorized.class, () -> controller.post(auth + "\03", error));
+
+    // This one decodes, but to a device with no session.
+    WebAsyncTask<Void> task = controller.post(auth + "x", error);
+    assertThrows(Unauthorized.class, () -> task.getCallable().call());
   }
 
   @Test
   void post_badBody_throwsBadRequestException() {
-    assertThrows(BadRequest.class, () ->
-      new ErrorController(deviceStateRepo).post(auth, null).call());
+    assertThrows(BadRequest.class, () -> controller.post(auth, null));
   }
 
   @Test
   void post_recordsDeviceState() {
-    assertDoesNotThrow(() ->
-      new ErrorController(deviceStateRepo).post(auth, new Error(0, 0, "hello world")).call());
+    WebAsyncTask<Void> task = controller.post(auth, new Error(0, 0, "hello world"));
+    assertDoesNotThrow(() -> task.getCallable().call());
 
     DeviceState entity =
       deviceStateRepo.findById(serial).orElseThrow(NoSuchElementException::new);
@@ -88,7 +104,7 @@ class ErrorControllerTest {
 
   @Test
   void post_validInput_ok() {
-    assertDoesNotThrow(() ->
-      new ErrorController(deviceStateRepo).post(auth, new Error(0, 0, "hello world")).call());
+    WebAsyncTask<Void> task = controller.post(auth, new Error(0, 0, "hello world"));
+    assertDoesNotThrow(() -> task.getCallable().call());
   }
 }
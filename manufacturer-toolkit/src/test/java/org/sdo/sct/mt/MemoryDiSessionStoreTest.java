@@ -0,0 +1,209 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPairGenerator;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import javax.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sdo.sct.Hash;
+import org.sdo.sct.RendezvousInfoBuilder;
+import org.sdo.sct.Voucher;
+import org.sdo.sct.VoucherHeader;
+import org.sdo.sct.domain.DeviceState;
+import org.sdo.sct.domain.DeviceStateRepo;
+import org.sdo.sct.domain.OwnershipVoucherEntry;
+import org.sdo.sct.domain.OwnershipVoucherRepo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+@DataJpaTest(showSql = false)
+@ContextConfiguration
+class MemoryDiSessionStoreTest {
+
+  @Configuration
+  @EnableJpaRepositories("org.sdo.sct.domain")
+  @EntityScan("org.sdo.sct.domain")
+  static class Config {
+
+  }
+
+  @Autowired
+  private DeviceStateRepo deviceStateRepo;
+
+  @Autowired
+  private OwnershipVoucherRepo ownershipVoucherRepo;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @TempDir
+  Path tempDir;
+
+  // The writer thread never runs on its own during these tests; they flush explicitly.
+  MemoryDiSessionStore buildStore(int capacity, Duration ttl) {
+    return buildStore(capacity, ttl, "");
+  }
+
+  MemoryDiSessionStore buildStore(int capacity, Duration ttl, String journal) {
+    return new MemoryDiSessionStore(deviceStateRepo, entityManagerFactory, transactionManager,
+      capacity, ttl, 50, Duration.ofMillis(10), 100, Duration.ofHours(1), journal);
+  }
+
+  DeviceState pending(String serial) {
+    return new DeviceState(
+      serial, Timestamp.from(Instant.now()), null, "session", DeviceStatus.PENDING, null);
+  }
+
+  String buildVoucher() throws Exception {
+    VoucherHeader oh = new VoucherHeader(
+        new RendezvousInfoBuilder().with(URI.create("http://localhost:8040")).build(),
+        UUID.randomUUID(),
+        "test",
+        KeyPairGenerator.getInstance("EC").generateKeyPair().getPublic(),
+        null);
+    return new Voucher(oh.toString(), new Hash.Null().toString(), null, Collections.emptyList())
+      .toString();
+  }
+
+  @Test
+  void testSessionLifecycle() throws Exception {
+
+    MemoryDiSessionStore store = buildStore(10, Duration.ofMinutes(5));
+    try {
+      DeviceState state = pending("device-1");
+      store.save(state);
+
+      // In-flight sessions stay out of the database.
+      assertSame(state, store.find("device-1").orElseThrow());
+      assertFalse(deviceStateRepo.findById("device-1").isPresent());
+      assertEquals(1, store.getSessionCount());
+
+      state.setStatus(DeviceStatus.OK);
+      store.save(state, new OwnershipVoucherEntry("device-1", buildVoucher(), null));
+      assertEquals(0, store.getSessionCount());
+      assertEquals(1, store.getPendingWriteCount());
+
+      store.flush();
+      assertEquals(0, store.getPendingWriteCount());
+      assertEquals(1, store.getWrittenCount());
+      assertEquals(DeviceStatus.OK,
+          deviceStateRepo.findById("device-1").orElseThrow().getStatus().intValue());
+      assertTrue(ownershipVoucherRepo.findById("device-1").isPresent());
+
+      // Finished sessions are found in the database.
+      assertTrue(store.find("device-1").isPresent());
+    } finally {
+      store.destroy();
+    }
+  }
+
+  @Test
+  void testExpiry() throws Exception {
+
+    MemoryDiSessionStore store = buildStore(2, Duration.ofMillis(1));
+    try {
+      store.save(pending("device-2"));
+      Thread.sleep(10);
+
+      assertFalse(store.find("device-2").isPresent());
+      assertEquals(1, store.getExpiredCount());
+      store.flush();
+      assertEquals(DeviceStatus.TIMEOUT,
+          deviceStateRepo.findById("device-2").orElseThrow().getStatus().intValue());
+      assertTrue(store.find("device-2").isPresent()); // from the database
+    } finally {
+      store.destroy();
+    }
+  }
+
+  @Test
+  void testCapacity() {
+
+    MemoryDiSessionStore store = buildStore(2, Duration.ofMinutes(5));
+    store.save(pending("device-3"));
+    store.save(pending("device-4"));
+    store.save(pending("device-5"));
+
+    // The oldest session was pushed out.
+    assertEquals(2, store.getSessionCount());
+    assertEquals(1, store.getExpiredCount());
+
+    // Sessions in flight at shutdown are written as they are.
+    store.destroy();
+    assertEquals(DeviceStatus.TIMEOUT,
+        deviceStateRepo.findById("device-3").orElseThrow().getStatus().intValue());
+    assertEquals(DeviceStatus.PENDING,
+        deviceStateRepo.findById("device-5").orElseThrow().getStatus().intValue());
+  }
+
+  @Test
+  void testJournalReplay() throws Exception {
+
+    String journal = tempDir.resolve("sessions.journal").toString();
+    MemoryDiSessionStore crashed = buildStore(10, Duration.ofMinutes(5), journal);
+    DeviceState state = pending("device-6");
+    state.setStatus(DeviceStatus.OK);
+    crashed.save(state, new OwnershipVoucherEntry("device-6", buildVoucher(), null));
+    assertEquals(1, Files.readAllLines(Path.of(journal)).size());
+
+    // A new store finds the unwritten session in the journal, as it would after a crash.
+    MemoryDiSessionStore restarted = buildStore(10, Duration.ofMinutes(5), journal);
+    try {
+      assertEquals(1, restarted.getPendingWriteCount());
+      restarted.flush();
+      assertEquals(1, restarted.getWrittenCount());
+      assertEquals(DeviceStatus.OK,
+          deviceStateRepo.findById("device-6").orElseThrow().getStatus().intValue());
+      assertTrue(ownershipVoucherRepo.findById("device-6").isPresent());
+      assertEquals(0, Files.size(Path.of(journal)));
+    } finally {
+      restarted.destroy();
+      crashed.destroy();
+    }
+  }
+
+  @Test
+  void testBackpressure() {
+
+    MemoryDiSessionStore store = buildStore(1000, Duration.ofMinutes(5));
+    try {
+      for (int i = 0; i < 50; i++) {
+        DeviceState state = pending("device-full-" + i);
+        state.setStatus(DeviceStatus.OK);
+        store.save(state, null);
+      }
+
+      // The queue holds 50 sessions, and nothing drains it during this test.
+      DeviceState state = pending("device-full-50");
+      state.setStatus(DeviceStatus.OK);
+      assertThrows(RejectedExecutionException.class, () -> store.save(state, null));
+    } finally {
+      store.destroy();
+    }
+  }
+}
@@ -0,0 +1,120 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+
+class OnDieCacheFileTest {
+
+  static byte[] bytes(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return bytes;
+  }
+
+  @Test
+  void testRoundTrip(@TempDir Path dir) throws Exception {
+
+    Map<String, byte[]> entries = new HashMap<>();
+    for (int i = 0; i < 100; i++) {
+      entries.put("entry_" + i + ".cer", ("der " + i).getBytes());
+    }
+    entries.put("empty.crl", new byte[0]);
+
+    Path file = dir.resolve("ondie.cache");
+    OnDieCacheFile.write(file, entries);
+    OnDieCacheFile cache = OnDieCacheFile.open(file);
+
+    assertEquals(entries.size(), cache.size());
+    for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+      ByteBuffer value = cache.get(entry.getKey());
+      assertTrue(value.isReadOnly());
+      assertArrayEquals(entry.getValue(), bytes(value));
+    }
+    assertNull(cache.get("missing.cer"));
+    assertEquals(entries.keySet(), new HashSet<>(cache.names()));
+
+    assertEquals(0, OnDieCacheFile.EMPTY.size());
+    assertNull(OnDieCacheFile.EMPTY.get("entry_0.cer"));
+  }
+
+  @Test
+  void testBadFile(@TempDir Path dir) throws Exception {
+
+    Path file = dir.resolve("ondie.cache");
+    Files.write(file, "not a cache file".getBytes());
+    assertThrows(IllegalArgumentException.class, () -> OnDieCacheFile.open(file));
+
+    OnDieCacheFile.write(file, Map.of("a.cer", new byte[] {1, 2, 3}));
+    byte[] truncated = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(truncated, truncated.length - 1));
+    assertThrows(IllegalArgumentException.class, () -> OnDieCacheFile.open(file));
+  }
+
+  @Test
+  void testBuilder(@TempDir Path cacheDir) throws Exception {
+
+    Path source = Paths.get(new ClassPathResource("cachedir").getURI());
+    assertEquals(6, OnDieCacheBuilder.build(cacheDir, source.toString()));
+    assertTrue(Files.exists(cacheDir.resolve(OnDieCache.CACHE_UPDATED_TOUCH_FILE)));
+
+    OnDieCache fromFile = new OnDieCache(cacheDir.toString(), false, null);
+    OnDieCache fromFiles = new OnDieCache(source.toString(), false, null);
+    String crl = "https://tsde.intel.com/content/OnDieCA/certs/TGL_00001846_OnDie_CA.crl";
+    assertArrayEquals(fromFiles.getCertOrCrl(crl), fromFile.getCertOrCrl(crl));
+    assertEquals(fromFiles.getNumOfCerts(), fromFile.getNumOfCerts());
+    assertEquals(fromFiles.getNumOfCrls(), fromFile.getNumOfCrls());
+  }
+
+  @Test
+  void testNewerSource(@TempDir Path cacheDir) throws Exception {
+
+    OnDieCacheFile.write(cacheDir.resolve(OnDieCache.CACHE_FILE),
+        Map.of("a.cer", new byte[] {1}));
+    Path loose = cacheDir.resolve("a.cer");
+    Files.write(loose, new byte[] {2});
+    String cer = "https://tsde.intel.com/content/OnDieCA/certs/a.cer";
+
+    // A file downloaded after the cache file was built wins over it.
+    Files.setLastModifiedTime(cacheDir.resolve(OnDieCache.CACHE_FILE),
+        FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+    OnDieCache onDieCache = new OnDieCache(cacheDir.toString(), false, null);
+    assertArrayEquals(new byte[] {2}, onDieCache.getCertOrCrl(cer));
+
+    // A cache file built after the download wins over the file.
+    Files.setLastModifiedTime(loose, FileTime.fromMillis(System.currentTimeMillis() - 120_000));
+    Files.createFile(cacheDir.resolve(OnDieCache.CACHE_UPDATED_TOUCH_FILE));
+    assertTrue(onDieCache.reload());
+    assertArrayEquals(new byte[] {1}, onDieCache.getCertOrCrl(cer));
+
+    // An update which fails to load keeps its touch file, and is tried again.
+    // The update replaces the cache file, as the builder does, rather than overwriting it.
+    Path bad = Files.write(cacheDir.resolve("bad.tmp"), "not a cache file".getBytes());
+    Files.move(bad, cacheDir.resolve(OnDieCache.CACHE_FILE), StandardCopyOption.REPLACE_EXISTING);
+    Files.createFile(cacheDir.resolve(OnDieCache.CACHE_UPDATED_TOUCH_FILE));
+    assertThrows(IOException.class, () -> onDieCache.reload());
+    assertTrue(Files.exists(cacheDir.resolve(OnDieCache.CACHE_UPDATED_TOUCH_FILE)));
+    assertArrayEquals(new byte[] {1}, onDieCache.getCertOrCrl(cer));
+    assertEquals(1, onDieCache.getReloadCount());
+  }
+}
@@ -3,21 +3,47 @@
 
 package org.sdo.sct.mt;
 
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CRLConverter;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.rules.TemporaryFolder;
 import org.sdo.sct.BouncyCastleSingleton;
 import org.springframework.core.io.ClassPathResource;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigInteger;
 import java.net.MalformedURLException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
 import java.security.cert.CertPath;
 import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Date;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -35,6 +61,16 @@ class OnDieTest {
     certFactory = CertificateFactory.getInstance("X509", BouncyCastleSingleton.INSTANCE);
   }
 
+  // Copies the test cache into a directory the test may change.
+  void copyTestCache(Path cacheDir) throws Exception {
+    Path source = Paths.get(new ClassPathResource(cacheDirForTesting).getURI());
+    try (var files = Files.list(source)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.copy(file, cacheDir.resolve(file.getFileName()));
+      }
+    }
+  }
+
   MStringParser.ParseResult getParsedMstring() throws IOException {
     final InputStream stream =
       getClass().getClassLoader().getResourceAsStream("mstring.dat");
@@ -108,6 +144,91 @@ class OnDieTest {
     assertTrue(onDieCache.getNumOfCrls() > 0);
   }
 
+  @Test
+  @DisplayName("OnDie cache reload test")
+  void testOnDieCacheReload(@TempDir Path cacheDir) throws Exception {
+    copyTestCache(cacheDir);
+    OnDieCache onDieCache = new OnDieCache(cacheDir.toString(), false, null);
+    String crl = "https://tsde.intel.com/content/OnDieCA/certs/TGL_00001846_OnDie_CA.crl";
+    byte[] original = onDieCache.getCertOrCrl(crl);
+
+    // Nothing changes until the touch file says the update is complete.
+    Files.write(cacheDir.resolve("TGL_00001846_OnDie_CA.crl.new"), new byte[] {1, 2, 3});
+    assertFalse(onDieCache.reload());
+    assertArrayEquals(original, onDieCache.getCertOrCrl(crl));
+
+    Files.createFile(cacheDir.resolve("cache_updated"));
+    assertArrayEquals(original, onDieCache.getCertOrCrl(crl)); // lookups do no I/O
+    assertTrue(onDieCache.reload());
+    assertArrayEquals(new byte[] {1, 2, 3}, onDieCache.getCertOrCrl(crl));
+    assertFalse(Files.exists(cacheDir.resolve("cache_updated")));
+    assertEquals(1, onDieCache.getReloadCount());
+  }
+
+  @Test
+  @DisplayName("OnDie parsed cache test")
+  void testOnDieParsedCache(@TempDir Path cacheDir) throws Exception {
+    copyTestCache(cacheDir);
+    OnDieCache onDieCache = new OnDieCache(cacheDir.toString(), false, null);
+    String cer = "https://tsde.intel.com/content/OnDieCA/certs/OnDie_CA_CSME_Intermediate.cer";
+    String crl = "https://tsde.intel.com/content/OnDieCA/crls/OnDie_CA_CSME_Indirect.crl";
+
+    X509Certificate cert = onDieCache.getCertificate(cer);
+    assertNotNull(cert);
+    assertSame(cert, onDieCache.getCertificate(cer));
+    assertSame(cert, onDieCache.getCertificate(cer.replace("tsde", "tsci")));
+    X509CRL x509Crl = onDieCache.getCrl(crl);
+    assertNotNull(x509Crl);
+    assertSame(x509Crl, onDieCache.getCrl(crl));
+    assertNull(onDieCache.getCrl("https://tsde.intel.com/content/OnDieCA/crls/NOT_IN_THE_CACHE.crl"));
+    assertEquals(2, onDieCache.getParseCount());
+    assertEquals(3, onDieCache.getParsedHitCount());
+
+    // A reload drops everything parsed from the previous contents.
+    Files.createFile(cacheDir.resolve("cache_updated"));
+    assertTrue(onDieCache.reload());
+    X509Certificate reloaded = onDieCache.getCertificate(cer);
+    assertNotSame(cert, reloaded);
+    assertEquals(cert, reloaded);
+    assertEquals(3, onDieCache.getParseCount());
+    assertNotSame(x509Crl, onDieCache.getCrl(crl)); // and the CRL's index
+  }
+
+  @Test
+  @DisplayName("OnDie CRL index test")
+  void testOnDieCrlIndex() throws Exception {
+    KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC");
+    kpg.initialize(256);
+    KeyPair caKeys = kpg.generateKeyPair();
+    X500Name ca = new X500Name("CN=Test OnDie CA");
+    ContentSigner signer = new JcaContentSignerBuilder("SHA256withECDSA").build(caKeys.getPrivate());
+    Date now = new Date();
+    Date later = new Date(now.getTime() + 86_400_000L);
+
+    X509Certificate revoked = new JcaX509CertificateConverter().getCertificate(
+      new JcaX509v3CertificateBuilder(ca, BigInteger.valueOf(2), now, later,
+        new X500Name("CN=revoked"), kpg.generateKeyPair().getPublic()).build(signer));
+    X509Certificate good = new JcaX509CertificateConverter().getCertificate(
+      new JcaX509v3CertificateBuilder(ca, BigInteger.valueOf(3), now, later,
+        new X500Name("CN=good"), kpg.generateKeyPair().getPublic()).build(signer));
+    X509Certificate otherIssuer = new JcaX509CertificateConverter().getCertificate(
+      new JcaX509v3CertificateBuilder(new X500Name("CN=Other CA"), BigInteger.valueOf(2), now,
+        later, new X500Name("CN=other"), kpg.generateKeyPair().getPublic()).build(signer));
+
+    X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(ca, now);
+    crlBuilder.addCRLEntry(BigInteger.valueOf(2), now, CRLReason.keyCompromise);
+    crlBuilder.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.valueOf(7)));
+    X509CRL crl = new JcaX509CRLConverter().getCRL(crlBuilder.build(signer));
+
+    OnDieCrl onDieCrl = new OnDieCrl(crl);
+    assertEquals("crlNumber:7", onDieCrl.getVersion());
+    assertTrue(onDieCrl.isRevoked(revoked));
+    assertFalse(onDieCrl.isRevoked(good));
+    assertFalse(onDieCrl.isRevoked(otherIssuer)); // same serial, different issuer
+    assertEquals(crl.isRevoked(revoked), onDieCrl.isRevoked(revoked));
+    assertEquals(crl.isRevoked(good), onDieCrl.isRevoked(good));
+  }
+
   @Test
   @DisplayName("OnDie cert path test")
   void testCertPath() throws Exception {
@@ -131,6 +252,12 @@ class OnDieTest {
     CertPath certpath =
       assertDoesNotThrow(() -> onDieCertPath.buildCertPath(parsedM.getOnDieCertChain(), onDieCache));
 
+    // the second device of the same family reuses the issuer chain
+    long parsed = onDieCache.getParseCount();
+    CertPath second = onDieCertPath.buildCertPath(parsedM.getOnDieCertChain(), onDieCache);
+    assertEquals(certpath.getCertificates(), second.getCertificates());
+    assertEquals(parsed, onDieCache.getParseCount());
+    assertEquals(1, onDieCache.getChainHitCount());
   }
 
   @Test
@@ -202,6 +329,118 @@ class OnDieTest {
       certpath,
       parsedM.getSerialNumber().getBytes(),
       Base64.getDecoder().decode(parsedM.getOnDieTestSignature())));
+
+    // the test cache lacks the CRL for the device's issuing CA, so revocation checks fail
+    OnDieSignatureValidator revocationsValidator = new OnDieSignatureValidator(onDieCache, true);
+    assertFalse(revocationsValidator.validate(
+      certpath,
+      parsedM.getSerialNumber().getBytes(),
+      Base64.getDecoder().decode(parsedM.getOnDieTestSignature())));
+  }
+
+  @Test
+  @DisplayName("OnDie parallel validation test")
+  void testOnDieParallelValidation(@TempDir Path cacheDir) throws Exception {
+    copyTestCache(cacheDir);
+    // stand in for the CRL of the test device's issuing CA, which the test cache lacks
+    Files.copy(cacheDir.resolve("TGL_00001846_OnDie_CA.crl"),
+      cacheDir.resolve("TGL_DEBUG000_OnDie_CA.crl"));
+    OnDieCache onDieCache = new OnDieCache(cacheDir.toString(), false, null);
+
+    MStringParser.ParseResult parsedM = getParsedMstring();
+    CertPath certpath = new OnDieCertPath().buildCertPath(parsedM.getOnDieCertChain(), onDieCache);
+    byte[] signedData = parsedM.getSerialNumber().getBytes();
+    byte[] signature = Base64.getDecoder().decode(parsedM.getOnDieTestSignature());
+
+    OnDieSignatureValidator serial = new OnDieSignatureValidator(onDieCache, true);
+    OnDieSignatureValidator parallel = new OnDieSignatureValidator(onDieCache, true, 2, 10);
+    try {
+      assertTrue(serial.validate(certpath, signedData, signature));
+      assertTrue(parallel.validate(certpath, signedData, signature));
+      assertFalse(parallel.validate(certpath, "other data".getBytes(), signature));
+      assertEquals(1, serial.getSerialCount());
+      assertEquals(2, parallel.getParallelCount());
+      assertEquals(0, parallel.getSerialCount());
+    } finally {
+      parallel.destroy();
+    }
+  }
+
+  @Test
+  @DisplayName("OnDie revoked device test")
+  void testOnDieRevokedDevice(@TempDir Path cacheDir) throws Exception {
+    MStringParser.ParseResult parsedM = getParsedMstring();
+    byte[] signedData = parsedM.getSerialNumber().getBytes();
+    byte[] signature = Base64.getDecoder().decode(parsedM.getOnDieTestSignature());
+
+    // The first certificate in the path with a CRL names it by URL; the cache holds it by
+    // file name.
+    CertPath certpath = new OnDieCertPath().buildCertPath(parsedM.getOnDieCertChain(),
+      new OnDieCache(new ClassPathResource(cacheDirForTesting).getURL().getPath(), false, null));
+    X509Certificate device = certpath.getCertificates().stream()
+      .map(X509Certificate.class::cast)
+      .filter(c -> null != c.getExtensionValue(Extension.cRLDistributionPoints.getId()))
+      .findFirst()
+      .orElseThrow();
+    GeneralName crlName = GeneralNames.getInstance(CRLDistPoint.getInstance(
+        ASN1OctetString.getInstance(device.getExtensionValue(Extension.cRLDistributionPoints.getId()))
+          .getOctets())
+      .getDistributionPoints()[0].getDistributionPoint().getName()).getNames()[0];
+    String crlUrl = crlName.getName().toString();
+    String crlFile = crlUrl.substring(crlUrl.lastIndexOf('/') + 1);
+
+    // Stand-in CRLs from the certificate's issuer, one of which revokes the certificate.
+    // As in the parallel validation test, another CA's CRL stands in for the one the test
+    // cache lacks.
+    KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC");
+    kpg.initialize(256);
+    ContentSigner signer =
+      new JcaContentSignerBuilder("SHA256withECDSA").build(kpg.generateKeyPair().getPrivate());
+    X500Name issuer = X500Name.getInstance(device.getIssuerX500Principal().getEncoded());
+    Date now = new Date();
+
+    Path goodDir = Files.createDirectory(cacheDir.resolve("good"));
+    copyTestCache(goodDir);
+    Files.copy(goodDir.resolve("TGL_00001846_OnDie_CA.crl"),
+      goodDir.resolve("TGL_DEBUG000_OnDie_CA.crl"), StandardCopyOption.REPLACE_EXISTING);
+    Files.write(goodDir.resolve(crlFile), new X509v2CRLBuilder(issuer, now)
+      .build(signer).getEncoded());
+
+    Path revokedDir = Files.createDirectory(cacheDir.resolve("revoked"));
+    copyTestCache(revokedDir);
+    Files.copy(revokedDir.resolve("TGL_00001846_OnDie_CA.crl"),
+      revokedDir.resolve("TGL_DEBUG000_OnDie_CA.crl"), StandardCopyOption.REPLACE_EXISTING);
+    X509v2CRLBuilder revoking = new X509v2CRLBuilder(issuer, now);
+    revoking.addCRLEntry(device.getSerialNumber(), now, CRLReason.keyCompromise);
+    Files.write(revokedDir.resolve(crlFile), revoking.build(signer).getEncoded());
+
+    OnDieCache good = new OnDieCache(goodDir.toString(), false, null);
+    assertTrue(new OnDieSignatureValidator(good, true).validate(
+      new OnDieCertPath().buildCertPath(parsedM.getOnDieCertChain(), good),
+      signedData, signature));
+
+    OnDieCache revoked = new OnDieCache(revokedDir.toString(), false, null);
+    assertTrue(revoked.getOnDieCrl(crlUrl).isRevoked(device));
+    assertFalse(new OnDieSignatureValidator(revoked, true).validate(
+      new OnDieCertPath().buildCertPath(parsedM.getOnDieCertChain(), revoked),
+      signedData, signature));
+  }
+
+  @Test
+  @DisplayName("OnDie signature conversion test")
+  void testConvertSignature() throws Exception {
+    byte[] signature = new byte[36 + 48 + 48];
+    Arrays.fill(signature, 36, 36 + 48, (byte) 0x81); // R needs a leading zero
+    Arrays.fill(signature, 36 + 48, signature.length, (byte) 0x11); // S doesn't
+
+    byte[] der = OnDieSignatureValidator.convertSignature(signature);
+
+    assertEquals(2 + 2 + 49 + 2 + 48, der.length);
+    assertArrayEquals(new byte[] {0x30, (byte) (der.length - 2), 0x02, 49, 0x00},
+      Arrays.copyOfRange(der, 0, 5));
+    assertArrayEquals(Arrays.copyOfRange(signature, 36, 84), Arrays.copyOfRange(der, 5, 53));
+    assertArrayEquals(new byte[] {0x02, 48}, Arrays.copyOfRange(der, 53, 55));
+    assertArrayEquals(Arrays.copyOfRange(signature, 84, 132), Arrays.copyOfRange(der, 55, 103));
   }
 
   @Test
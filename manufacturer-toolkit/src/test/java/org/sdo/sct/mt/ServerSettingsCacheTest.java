@@ -0,0 +1,100 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.time.Period;
+import org.junit.jupiter.api.Test;
+import org.sdo.sct.RendezvousInfoBuilder;
+import org.sdo.sct.domain.ServerSettings;
+import org.sdo.sct.domain.ServerSettingsRepo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.ContextConfiguration;
+
+@DataJpaTest(showSql = false)
+@ContextConfiguration
+class ServerSettingsCacheTest {
+
+  @Configuration
+  @EnableJpaRepositories("org.sdo.sct.domain")
+  @EntityScan("org.sdo.sct.domain")
+  static class Config {
+
+  }
+
+  @Autowired
+  private ServerSettingsRepo serverSettingsRepo;
+
+  @Test
+  void testRefresh() {
+
+    ServerSettings settings = serverSettingsRepo.save(
+        new ServerSettings(null, " http://localhost:8040  https://127.0.0.1:8041 ", "P1D"));
+    ServerSettingsCache cache = new ServerSettingsCache(serverSettingsRepo);
+
+    // Settings are read once, on first use, and parsed ready for use.
+    ServerSettingsCache.Snapshot snapshot = cache.get();
+    assertSame(snapshot, cache.get());
+    assertEquals(1, cache.getRefreshCount());
+    assertEquals(Period.ofDays(1), snapshot.getCertificateValidityPeriod());
+    assertEquals(
+        new RendezvousInfoBuilder()
+          .with(URI.create("http://localhost:8040"))
+          .with(URI.create("https://127.0.0.1:8041"))
+          .build(),
+        snapshot.getRendezvousInfo());
+
+    assertEquals(snapshot.getRendezvousInfo().toString(), snapshot.getEncodedRendezvousInfo());
+
+    // Unchanged rendezvous text isn't parsed again.
+    ServerSettingsCache.Snapshot same = cache.refresh();
+    assertSame(snapshot.getRendezvousInfo(), same.getRendezvousInfo());
+    assertSame(snapshot.getEncodedRendezvousInfo(), same.getEncodedRendezvousInfo());
+
+    // A change is seen only after a refresh.
+    serverSettingsRepo.delete(settings);
+    serverSettingsRepo.save(new ServerSettings(null, "http://localhost:8040", "P2D"));
+    assertEquals(Period.ofDays(1), cache.get().getCertificateValidityPeriod());
+    ServerSettingsCache.Snapshot changed = cache.refresh();
+    assertEquals(Period.ofDays(2), changed.getCertificateValidityPeriod());
+    assertEquals(
+        new RendezvousInfoBuilder().with(URI.create("http://localhost:8040")).build().toString(),
+        changed.getEncodedRendezvousInfo());
+    assertEquals(3, cache.getRefreshCount());
+  }
+
+  @Test
+  void testFailedRefresh() {
+
+    serverSettingsRepo.save(new ServerSettings(null, "http://localhost:8040", "P1D"));
+    ServerSettingsCache cache = new ServerSettingsCache(serverSettingsRepo);
+    ServerSettingsCache.Snapshot snapshot = cache.get();
+
+    // Settings which don't parse are refused, and the old ones stay in use.
+    serverSettingsRepo.deleteAll();
+    serverSettingsRepo.save(new ServerSettings(null, "http://localhost:8040", "one day"));
+    assertThrows(RuntimeException.class, cache::refresh);
+    assertEquals(1, cache.getFailedRefreshCount());
+    assertTrue(cache.isStale());
+
+    assertSame(snapshot, cache.get());
+    assertSame(snapshot, cache.get());
+    assertEquals(2, cache.getStaleReadCount());
+
+    serverSettingsRepo.deleteAll();
+    serverSettingsRepo.save(new ServerSettings(null, "http://localhost:8040", "P3D"));
+    assertEquals(Period.ofDays(3), cache.refresh().getCertificateValidityPeriod());
+    assertFalse(cache.isStale());
+  }
+}
@@ -4,6 +4,7 @@
 package org.sdo.sct.mt;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 import org.sdo.sct.BouncyCastleSingleton;
@@ -74,6 +75,15 @@ class SimpleCertPathServiceTest {
 
   @Test
   void test() throws Exception {
+    assertValidates(false);
+  }
+
+  @Test
+  void testDestroyKeys() throws Exception {
+    assertValidates(true);
+  }
+
+  void assertValidates(boolean destroyKeys) throws Exception {
     KeyPairGenerator keyPairGenerator =
       KeyPairGenerator.getInstance("EC", BouncyCastleSingleton.INSTANCE);
     keyPairGenerator.initialize(256, SecureRandom.getInstance("SHA1PRNG"));
@@ -100,17 +110,34 @@ class SimpleCertPathServiceTest {
     mfrKeyStore.setKeyEntry("x", mfr.getPrivate(), pw(), new Certificate[] {mfrCert});
     KeyStores mfrKeyStores = () -> List.of(mfrKeyStore).iterator();
 
+    KeyFinder keyFinder = new KeyFinder(mfrKeyStores, this::pw);
     SimpleCertPathService cps = new SimpleCertPathService(
       this::pw,
       () -> Period.ofDays(1),
-      new KeyFinder(mfrKeyStores, this::pw));
-    CertPath certPath = cps.apply(csr);
+      keyFinder,
+      destroyKeys);
 
     // This generated cert path should verify against the mfr key
     CertPathValidator validator =
       CertPathValidator.getInstance("PKIX", BouncyCastleSingleton.INSTANCE);
     PKIXParameters parameters = new PKIXParameters(Set.of(new TrustAnchor(caCert, null)));
     parameters.setRevocationEnabled(false);
+    for (int i = 0; i < 2; i++) {
+      CertPath certPath = cps.apply(csr);
+      assertDoesNotThrow(() -> validator.validate(certPath, parameters));
+    }
+
+    // Both certificates came from the one issuer context.
+    assertEquals(1, cps.getIssuerCount());
+
+    // A new keystore entry replaces the issuer context.
+    mfrKeyStore.deleteEntry("x");
+    mfrKeyStore.setKeyEntry("y", mfr.getPrivate(), pw(), new Certificate[] {mfrCert});
+    keyFinder.reload();
+    CertPath certPath = cps.apply(csr);
     assertDoesNotThrow(() -> validator.validate(certPath, parameters));
+    assertEquals(2, cps.getIssuerCount());
+    cps.destroy();
+    keyFinder.destroy();
   }
 }
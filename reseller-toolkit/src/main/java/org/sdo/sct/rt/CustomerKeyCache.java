@@ -0,0 +1,144 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.rt;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import org.sdo.sct.KeyType;
+import org.sdo.sct.domain.Customer;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * A bounded cache of decoded customer public keys.
+ *
+ * <p>Entries are keyed by customer ID and {@link KeyType}, and remember the PEM text they were
+ * decoded from.  If a customer's PEM changes, the stale entry is discarded on next use.
+ * The least recently used entry is evicted when the cache is full.
+ */
+@Service
+class CustomerKeyCache {
+
+  private final Map<CacheKey, CacheValue> cache;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param capacity the maximum number of keys to keep.
+   */
+  @Autowired
+  CustomerKeyCache(@Value("${sdo.customer.keycache.capacity:1024}") final int capacity) {
+
+    if (capacity < 1) {
+      throw new IllegalArgumentException(Integer.toString(capacity));
+    }
+
+    this.cache = new LinkedHashMap<>(capacity, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheValue> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Returns the customer's public key of the given type, decoding it if needed.
+   *
+   * @see VouchersController#getKey(KeyType, Customer)
+   */
+  PublicKey get(final KeyType type, final Customer customer)
+      throws InvalidKeySpecException, IOException, NoSuchAlgorithmException {
+
+    final String pem = customer.getKey();
+    if (null == customer.getId() || null == pem) {
+      misses.incrementAndGet();
+      return VouchersController.getKey(type, customer);
+    }
+
+    final CacheKey key = new CacheKey(customer.getId(), type);
+    final CacheValue cached;
+    synchronized (cache) {
+      cached = cache.get(key);
+    }
+
+    if (null != cached && cached.pem.equals(pem)) {
+      hits.incrementAndGet();
+      return cached.publicKey;
+    }
+
+    // Decode outside the lock.  Racing threads may both decode the same key,
+    // which is harmless.
+    final long missCount = misses.incrementAndGet();
+    LoggerFactory.getLogger(getClass()).debug(
+        "customer key cache miss: {} hits, {} misses", hits.get(), missCount);
+    final PublicKey publicKey = VouchersController.getKey(type, customer);
+    synchronized (cache) {
+      cache.put(key, new CacheValue(pem, publicKey));
+    }
+    return publicKey;
+  }
+
+  /**
+   * The number of lookups answered from the cache.
+   */
+  long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * The number of lookups which decoded a key.
+   */
+  long getMissCount() {
+    return misses.get();
+  }
+
+  private static class CacheKey {
+
+    private final int customerId;
+    private final KeyType type;
+
+    CacheKey(final int customerId, final KeyType type) {
+      this.customerId = customerId;
+      this.type = type;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      CacheKey that = (CacheKey) o;
+      return customerId == that.customerId && type == that.type;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(customerId, type);
+    }
+  }
+
+  private static class CacheValue {
+
+    private final String pem;
+    private final PublicKey publicKey;
+
+    CacheValue(final String pem, final PublicKey publicKey) {
+      this.pem = pem;
+      this.publicKey = publicKey;
+    }
+  }
+}
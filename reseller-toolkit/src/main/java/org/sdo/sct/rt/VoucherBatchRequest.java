@@ -0,0 +1,40 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.rt;
+
+import java.util.List;
+
+/**
+ * The body of a batch voucher request.
+ *
+ * <p>A request names either a list of device serial numbers or a customer descriptor,
+ * but not both.
+ */
+class VoucherBatchRequest {
+
+  private List<String> serials;
+  private String customer;
+
+  /**
+   * The serial numbers of the requested devices.
+   */
+  public List<String> getSerials() {
+    return serials;
+  }
+
+  public void setSerials(List<String> serials) {
+    this.serials = serials;
+  }
+
+  /**
+   * The descriptor of the customer whose vouchers are requested.
+   */
+  public String getCustomer() {
+    return customer;
+  }
+
+  public void setCustomer(String customer) {
+    this.customer = customer;
+  }
+}
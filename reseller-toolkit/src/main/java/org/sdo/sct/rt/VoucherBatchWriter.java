@@ -0,0 +1,159 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.rt;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes the results of a batch voucher request.
+ */
+interface VoucherBatchWriter extends Closeable {
+
+  /**
+   * The media type of newline-delimited JSON.
+   */
+  String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+  /**
+   * The media type of ZIP archives.
+   */
+  String APPLICATION_ZIP_VALUE = "application/zip";
+
+  /**
+   * Writes one voucher.
+   *
+   * @param serial  The device serial number.
+   * @param voucher The voucher text.
+   */
+  void write(String serial, String voucher) throws IOException;
+
+  /**
+   * Records that a voucher could not be produced.
+   *
+   * @param serial  The device serial number.
+   * @param message A description of the failure.
+   */
+  void error(String serial, String message) throws IOException;
+
+  /**
+   * Finishes writing.
+   *
+   * <p>The underlying output stream is flushed, but not closed.
+   */
+  @Override
+  void close() throws IOException;
+
+  /**
+   * Builds a writer which writes one JSON object per line.
+   *
+   * <p>Each line is either <code>{"serial":...,"voucher":...}</code> or
+   * <code>{"serial":...,"error":...}</code>.
+   */
+  static VoucherBatchWriter ndjson(final OutputStream out) throws IOException {
+    return new NdjsonWriter(out);
+  }
+
+  /**
+   * Builds a writer which writes a ZIP archive.
+   *
+   * <p>Each voucher is stored in the {@value ZipWriter#VOUCHERS_DIR} directory, in an entry
+   * named for its device serial number.  The serial number is URL-encoded, with dots encoded
+   * too, so it can't name a file outside the directory.  Failures, if any, are listed in a
+   * final NDJSON entry named {@value ZipWriter#ERRORS_ENTRY}.
+   */
+  static VoucherBatchWriter zip(final OutputStream out) {
+    return new ZipWriter(out);
+  }
+
+  class NdjsonWriter implements VoucherBatchWriter {
+
+    // The caller owns the output stream, so closing this writer mustn't close it.
+    private static final JsonFactory JSON_FACTORY =
+        new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private final JsonGenerator generator;
+
+    NdjsonWriter(final OutputStream out) throws IOException {
+      this.generator = JSON_FACTORY.createGenerator(out);
+    }
+
+    @Override
+    public void write(final String serial, final String voucher) throws IOException {
+      generator.writeStartObject();
+      generator.writeStringField("serial", serial);
+      generator.writeFieldName("voucher");
+      generator.writeRawValue(voucher);
+      generator.writeEndObject();
+      generator.writeRaw('\n');
+    }
+
+    @Override
+    public void error(final String serial, final String message) throws IOException {
+      generator.writeStartObject();
+      generator.writeStringField("serial", serial);
+      generator.writeStringField("error", message);
+      generator.writeEndObject();
+      generator.writeRaw('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+      generator.close();
+    }
+  }
+
+  class ZipWriter implements VoucherBatchWriter {
+
+    static final String ERRORS_ENTRY = "errors.ndjson";
+    static final String VOUCHERS_DIR = "vouchers/";
+
+    private final ZipOutputStream zip;
+    private final ByteArrayOutputStream errorBytes = new ByteArrayOutputStream();
+    private VoucherBatchWriter errors = null;
+
+    ZipWriter(final OutputStream out) {
+      this.zip = new ZipOutputStream(out);
+    }
+
+    @Override
+    public void write(final String serial, final String voucher) throws IOException {
+      zip.putNextEntry(new ZipEntry(entryName(serial)));
+      zip.write(voucher.getBytes(StandardCharsets.US_ASCII));
+      zip.closeEntry();
+    }
+
+    @Override
+    public void error(final String serial, final String message) throws IOException {
+      if (null == errors) {
+        errors = ndjson(errorBytes);
+      }
+      errors.error(serial, message);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (null != errors) {
+        errors.close();
+        zip.putNextEntry(new ZipEntry(ERRORS_ENTRY));
+        errorBytes.writeTo(zip);
+        zip.closeEntry();
+      }
+      zip.finish();
+      zip.flush();
+    }
+
+    static String entryName(final String serial) {
+      return VOUCHERS_DIR + URLEncoder.encode(serial, StandardCharsets.UTF_8).replace(".", "%2E");
+    }
+  }
+}
@@ -5,17 +5,20 @@ package org.sdo.sct.rt;
 
 import java.io.IOException;
 import java.io.StringReader;
-import java.security.GeneralSecurityException;
 import java.security.KeyFactory;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
-import java.security.PrivateKey;
 import java.security.PublicKey;
-import java.security.Signature;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
 import java.text.MessageFormat;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Callable;
@@ -23,26 +26,29 @@ import java.util.stream.Collectors;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
 import org.bouncycastle.openssl.PEMParser;
 import org.sdo.sct.BouncyCastleSingleton;
-import org.sdo.sct.CryptoLevel;
-import org.sdo.sct.KeyFinder;
+import org.sdo.sct.JceFactories;
 import org.sdo.sct.KeyHandle;
-import org.sdo.sct.KeyHandle.AutoCloseableKey;
 import org.sdo.sct.KeyType;
 import org.sdo.sct.KeyUtils;
-import org.sdo.sct.NoSuchKeyException;
-import org.sdo.sct.PasswordCallbackFunction;
 import org.sdo.sct.ResourceBundleHolder;
+import org.sdo.sct.SignerPool;
 import org.sdo.sct.Voucher;
-import org.sdo.sct.VoucherHeader;
 import org.sdo.sct.domain.Customer;
 import org.sdo.sct.domain.OwnershipVoucherEntry;
 import org.sdo.sct.domain.OwnershipVoucherRepo;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @SuppressWarnings("unused")
@@ -52,17 +58,24 @@ class VouchersController {
       new ResourceBundleHolder(VouchersController.class.getName());
 
   private final OwnershipVoucherRepo ownershipVoucherRepo;
-  private final PasswordCallbackFunction pwCallback;
-  private final KeyFinder keyFinder;
+  private final SignerPool signerPool;
+  private final CustomerKeyCache customerKeyCache;
+  private final int pageSize;
 
   public VouchersController(
       final OwnershipVoucherRepo ownershipVoucherRepo,
-      final KeyFinder keyFinder,
-      final PasswordCallbackFunction pwCallback) {
+      final SignerPool signerPool,
+      final CustomerKeyCache customerKeyCache,
+      @Value("${sdo.vouchers.batch.page:100}") final int pageSize) {
+
+    if (pageSize < 1) {
+      throw new IllegalArgumentException("sdo.vouchers.batch.page: " + pageSize);
+    }
 
     this.ownershipVoucherRepo = ownershipVoucherRepo;
-    this.keyFinder = keyFinder;
-    this.pwCallback = pwCallback;
+    this.signerPool = signerPool;
+    this.customerKeyCache = customerKeyCache;
+    this.pageSize = pageSize;
   }
 
   static PublicKey getKey(KeyType type, Customer customer) throws
@@ -77,17 +90,19 @@ class VouchersController {
         // remove the common escape sequences /r, /t and leading/trailing whitespaces from the PEM
         // formatted public key.
         final String publicKeyAsPem =
-            keyEntry.getValue().replaceAll("\t", "").replaceAll("\r", "").trim();
+            keyEntry.getValue().replace("\t", "").replace("\r", "").trim();
         try (PEMParser pemParser = new PEMParser(new StringReader(publicKeyAsPem))) {
           for (Object o = pemParser.readObject(); null != o; o = pemParser.readObject()) {
             if (o instanceof SubjectPublicKeyInfo) {
               SubjectPublicKeyInfo subjectPublicKeyInfo = (SubjectPublicKeyInfo) o;
-              final KeyFactory keyFactory = KeyFactory.getInstance(
-                  subjectPublicKeyInfo.getAlgorithm().getAlgorithm().toString(),
-                  BouncyCastleSingleton.INSTANCE);
               final X509EncodedKeySpec subjectKeySpec =
                   new X509EncodedKeySpec(subjectPublicKeyInfo.getEncoded());
-              PublicKey key = keyFactory.generatePublic(subjectKeySpec);
+              final PublicKey key;
+              try (JceFactories.Lease<KeyFactory> keyFactory = JceFactories.keyFactory(
+                  subjectPublicKeyInfo.getAlgorithm().getAlgorithm().toString(),
+                  BouncyCastleSingleton.INSTANCE)) {
+                key = keyFactory.get().generatePublic(subjectKeySpec);
+              }
               if (type == KeyUtils.toType(key)) {
                 return key;
               }
@@ -123,7 +138,6 @@ class VouchersController {
     final OwnershipVoucherEntry voucherEntry = ownershipVoucherRepo.findById(id)
         .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
     final Voucher voucher = Voucher.of(voucherEntry.getVoucher());
-    final VoucherHeader oh = VoucherHeader.of(voucher.getOh());
 
     // If there's no customer assigned to the voucher, return it as-is.
     final Customer customer = voucherEntry.getCustomer();
@@ -139,38 +153,143 @@ class VouchersController {
     // digest and mac sizes.
     final KeyType keyType = KeyUtils.toType(voucher.getOwnerKey());
 
-    PublicKey recipientKey;
-    try {
-      recipientKey = getKey(keyType, customer);
+    final PublicKey recipientKey = getRecipientKey(keyType, customer);
+    Voucher newVoucher = signerPool.apply(keyType,
+        (signer, signerKey) -> voucher.assign(recipientKey, signer, signerKey));
+    return newVoucher.toString();
+  }
 
-    } catch (InvalidKeySpecException | IOException e) {
-      throw new IllegalArgumentException(e);
+  @PostMapping(path = "/api/v1/vouchers:batch",
+      consumes = MediaType.APPLICATION_JSON_VALUE,
+      produces = VoucherBatchWriter.APPLICATION_NDJSON_VALUE)
+  ResponseEntity<StreamingResponseBody> postBatchNdjson(
+      @RequestBody final VoucherBatchRequest request) {
 
-    } catch (NoSuchAlgorithmException e) {
-      throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage());
+    checkBatch(request);
+    return ResponseEntity.ok()
+      .contentType(MediaType.parseMediaType(VoucherBatchWriter.APPLICATION_NDJSON_VALUE))
+      .body(out -> writeBatch(request, VoucherBatchWriter.ndjson(out)));
+  }
+
+  @PostMapping(path = "/api/v1/vouchers:batch",
+      consumes = MediaType.APPLICATION_JSON_VALUE,
+      produces = VoucherBatchWriter.APPLICATION_ZIP_VALUE)
+  ResponseEntity<StreamingResponseBody> postBatchZip(
+      @RequestBody final VoucherBatchRequest request) {
+
+    checkBatch(request);
+    return ResponseEntity.ok()
+      .contentType(MediaType.parseMediaType(VoucherBatchWriter.APPLICATION_ZIP_VALUE))
+      .body(out -> writeBatch(request, VoucherBatchWriter.zip(out)));
+  }
+
+  private static void checkBatch(final VoucherBatchRequest request) {
+
+    if (null == request || (null == request.getSerials()) == (null == request.getCustomer())) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+        resourceBundleHolder_.get().getString("batch.bad.request"));
     }
+  }
+
+  // Vouchers are read a page at a time, and each is written as soon as it is assigned,
+  // so a batch holds no more than one page in memory however many devices it names.
+  private void writeBatch(
+      final VoucherBatchRequest request,
+      final VoucherBatchWriter writer) throws IOException {
+
+    final Instant start = Instant.now();
+    final long keyHits = customerKeyCache.getHitCount();
+    final long keyMisses = customerKeyCache.getMissCount();
+    final long borrowed = signerPool.getBorrowCount();
+    final long built = signerPool.getCreatedCount();
+    final long exhausted = signerPool.getExhaustedCount();
+    int written = 0;
+
+    try (writer) {
 
-    KeyHandle signingKeyHandle = keyFinder.find(keyType)
-        .orElseThrow(() -> new NoSuchKeyException(keyType));
+      if (null != request.getSerials()) {
+        // Results follow the order of the request, and missing serials are reported in place.
+        final List<String> serials = new ArrayList<>(new LinkedHashSet<>(request.getSerials()));
+        for (int i = 0; i < serials.size(); i += pageSize) {
+          final List<String> page = serials.subList(i, Math.min(i + pageSize, serials.size()));
+          final Map<String, OwnershipVoucherEntry> found = new HashMap<>();
+          for (OwnershipVoucherEntry entry : ownershipVoucherRepo.findAllById(page)) {
+            found.put(entry.getDeviceSerialNo(), entry);
+          }
 
-    final Signature signer;
-    try (AutoCloseableKey autoCloseableKey = signingKeyHandle.getKey(pwCallback)) {
-      if (!(autoCloseableKey.getKey() instanceof PrivateKey)) {
-        String format = resourceBundleHolder_.get().getString("key.not.private");
-        throw new ResponseStatusException(
-          HttpStatus.INTERNAL_SERVER_ERROR,
-          MessageFormat.format(format, signingKeyHandle.getAlias()));
+          for (String serial : page) {
+            final OwnershipVoucherEntry entry = found.get(serial);
+            if (null == entry) {
+              writer.error(serial, HttpStatus.NOT_FOUND.getReasonPhrase());
+            } else if (write(writer, entry)) {
+              written++;
+            }
+          }
+        }
+
+      } else {
+        String after = "";
+        List<OwnershipVoucherEntry> page;
+        do {
+          page = ownershipVoucherRepo.findByCustomerDescriptorAfter(
+            request.getCustomer(), after, PageRequest.of(0, pageSize));
+          for (OwnershipVoucherEntry entry : page) {
+            if (write(writer, entry)) {
+              written++;
+            }
+            after = entry.getDeviceSerialNo();
+          }
+        } while (page.size() == pageSize);
       }
+    }
+
+    // The counters are shared by every request, so these include any which overlapped.
+    final Duration elapsed = Duration.between(start, Instant.now());
+    LoggerFactory.getLogger(getClass()).info(MessageFormat.format(
+        resourceBundleHolder_.get().getString("batch.complete"), written, elapsed.toMillis(),
+        customerKeyCache.getHitCount() - keyHits, customerKeyCache.getMissCount() - keyMisses,
+        signerPool.getBorrowCount() - borrowed, signerPool.getCreatedCount() - built,
+        signerPool.getExhaustedCount() - exhausted));
+  }
 
-      signer = CryptoLevel.of(keyType).buildSignature(
-        autoCloseableKey.getKey(), signingKeyHandle.getKeyStore().getProvider());
-      signer.initSign((PrivateKey) autoCloseableKey.getKey());
+  // Writes one voucher, assigned to its customer if it has one, or the reason it can't be.
+  // Each customer's key is decoded once and then found in the customer key cache.
+  private boolean write(final VoucherBatchWriter writer, final OwnershipVoucherEntry entry)
+      throws IOException {
 
-    } catch (GeneralSecurityException e) {
-      throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage(), e);
+    final Customer customer = entry.getCustomer();
+    if (null == customer) {
+      writer.write(entry.getDeviceSerialNo(), entry.getVoucher());
+      return true;
     }
 
-    Voucher newVoucher = voucher.assign(recipientKey, signer);
-    return newVoucher.toString();
+    final String newVoucher;
+    try {
+      final Voucher voucher = Voucher.of(entry.getVoucher());
+      final KeyType keyType = KeyUtils.toType(voucher.getOwnerKey());
+      final PublicKey recipientKey = getRecipientKey(keyType, customer);
+      newVoucher = signerPool.apply(keyType, (signer, signerKey) ->
+        voucher.assign(recipientKey, signer, signerKey)).toString();
+
+    } catch (RuntimeException e) {
+      writer.error(entry.getDeviceSerialNo(), String.valueOf(e.getMessage()));
+      return false;
+    }
+
+    writer.write(entry.getDeviceSerialNo(), newVoucher);
+    return true;
+  }
+
+  private PublicKey getRecipientKey(final KeyType keyType, final Customer customer) {
+
+    try {
+      return customerKeyCache.get(keyType, customer);
+
+    } catch (InvalidKeySpecException | IOException e) {
+      throw new IllegalArgumentException(e);
+
+    } catch (NoSuchAlgorithmException e) {
+      throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage());
+    }
   }
 }
@@ -0,0 +1,76 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.rt;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.concurrent.TimeUnit;
+import org.sdo.sct.KeyFinder;
+import org.sdo.sct.SignerPool;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the reseller toolkit's own counters as Micrometer meters.
+ *
+ * <p>The meters read the counts the signer pool and caches already keep, when the registry
+ * is scraped.  Spring Boot binds every {@link MeterBinder} bean to the application's
+ * registry.
+ */
+@Component
+class VouchersMeterBinder implements MeterBinder {
+
+  private final SignerPool signerPool;
+  private final CustomerKeyCache customerKeyCache;
+  private final KeyFinder keyFinder;
+
+  @Autowired
+  VouchersMeterBinder(
+      final SignerPool signerPool,
+      final CustomerKeyCache customerKeyCache,
+      final KeyFinder keyFinder) {
+
+    this.signerPool = signerPool;
+    this.customerKeyCache = customerKeyCache;
+    this.keyFinder = keyFinder;
+  }
+
+  @Override
+  public void bindTo(final MeterRegistry registry) {
+
+    Gauge.builder("sdo.signerpool.capacity", signerPool, SignerPool::getCapacity)
+        .register(registry);
+    FunctionCounter.builder("sdo.signerpool.borrows", signerPool, SignerPool::getBorrowCount)
+        .register(registry);
+    FunctionCounter.builder("sdo.signerpool.created", signerPool, SignerPool::getCreatedCount)
+        .register(registry);
+    FunctionCounter.builder("sdo.signerpool.exhausted", signerPool,
+        SignerPool::getExhaustedCount)
+        .register(registry);
+    FunctionCounter.builder("sdo.signerpool.wait", signerPool,
+        p -> p.getWaitTime().toNanos() / 1e9)
+        .baseUnit("seconds")
+        .register(registry);
+
+    FunctionCounter.builder("sdo.customer.keycache.lookups", customerKeyCache,
+        CustomerKeyCache::getHitCount)
+        .tag("outcome", "hit")
+        .register(registry);
+    FunctionCounter.builder("sdo.customer.keycache.lookups", customerKeyCache,
+        CustomerKeyCache::getMissCount)
+        .tag("outcome", "miss")
+        .register(registry);
+
+    FunctionCounter.builder("sdo.keyfinder.lookups", keyFinder, KeyFinder::getLookupCount)
+        .register(registry);
+    FunctionTimer.builder("sdo.keyfinder.lookup", keyFinder, KeyFinder::getLookupCount,
+        f -> f.getLookupTime().toNanos(), TimeUnit.NANOSECONDS)
+        .register(registry);
+    FunctionCounter.builder("sdo.keyfinder.reloads", keyFinder, KeyFinder::getReloadCount)
+        .register(registry);
+  }
+}
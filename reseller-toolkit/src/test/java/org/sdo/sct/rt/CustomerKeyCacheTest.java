@@ -0,0 +1,61 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.rt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.spec.ECGenParameterSpec;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.junit.jupiter.api.Test;
+import org.sdo.sct.BouncyCastleSingleton;
+import org.sdo.sct.KeyType;
+import org.sdo.sct.domain.Customer;
+
+class CustomerKeyCacheTest {
+
+  @Test
+  void testGet() throws Exception {
+
+    KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC", BouncyCastleSingleton.INSTANCE);
+    kpg.initialize(new ECGenParameterSpec("secp256r1"), SecureRandom.getInstance("SHA1PRNG"));
+    KeyPair first = kpg.generateKeyPair();
+    KeyPair second = kpg.generateKeyPair();
+
+    CustomerKeyCache cache = new CustomerKeyCache(1);
+    Customer customer = new Customer(1, "first", toPem(first.getPublic()));
+
+    PublicKey key = cache.get(KeyType.ECDSA_P_256, customer);
+    assertEquals(first.getPublic(), key);
+    assertSame(key, cache.get(KeyType.ECDSA_P_256, customer));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+
+    // a changed PEM must not be answered from the cache
+    customer = new Customer(1, "first", toPem(second.getPublic()));
+    assertEquals(second.getPublic(), cache.get(KeyType.ECDSA_P_256, customer));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+
+    // a second customer evicts the first
+    cache.get(KeyType.ECDSA_P_256, new Customer(2, "second", toPem(first.getPublic())));
+    cache.get(KeyType.ECDSA_P_256, customer);
+    assertEquals(1, cache.getHitCount());
+    assertEquals(4, cache.getMissCount());
+  }
+
+  private String toPem(PublicKey key) throws IOException {
+    StringWriter sw = new StringWriter();
+    try (JcaPEMWriter pw = new JcaPEMWriter(sw)) {
+      pw.writeObject(key);
+    }
+    return KeyType.ECDSA_P_256 + ":" + sw;
+  }
+}
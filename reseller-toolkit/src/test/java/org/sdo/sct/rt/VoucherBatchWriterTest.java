@@ -0,0 +1,55 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.rt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.junit.jupiter.api.Test;
+
+class VoucherBatchWriterTest {
+
+  @Test
+  void testZipEntryNames() throws Exception {
+
+    List<String> serials = List.of("one", "errors.ndjson", "../../etc/passwd", "..", "a b/c");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (VoucherBatchWriter writer = VoucherBatchWriter.zip(out)) {
+      for (String serial : serials) {
+        writer.write(serial, "{}");
+      }
+      writer.error("missing", "not found");
+    }
+
+    List<String> names = new ArrayList<>();
+    try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+      for (ZipEntry entry = zip.getNextEntry(); null != entry; entry = zip.getNextEntry()) {
+        names.add(entry.getName());
+      }
+    }
+
+    // Every voucher stays in the vouchers directory, and the errors entry is left alone.
+    assertEquals(List.of(
+        "vouchers/one",
+        "vouchers/errors%2Endjson",
+        "vouchers/%2E%2E%2F%2E%2E%2Fetc%2Fpasswd",
+        "vouchers/%2E%2E",
+        "vouchers/a+b%2Fc",
+        VoucherBatchWriter.ZipWriter.ERRORS_ENTRY), names);
+
+    // The serial numbers can be recovered from the names.
+    for (int i = 0; i < serials.size(); i++) {
+      assertEquals(serials.get(i), URLDecoder.decode(
+          names.get(i).substring(VoucherBatchWriter.ZipWriter.VOUCHERS_DIR.length()),
+          StandardCharsets.UTF_8));
+    }
+  }
+}
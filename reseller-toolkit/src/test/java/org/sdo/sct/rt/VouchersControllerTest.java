@@ -5,11 +5,17 @@ package org.sdo.sct.rt;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.mock;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.security.KeyPair;
@@ -18,9 +24,17 @@ import java.security.PublicKey;
 import java.security.SecureRandom;
 import java.security.cert.CertificateFactory;
 import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
 import org.junit.jupiter.api.Test;
 import org.sdo.sct.BouncyCastleSingleton;
@@ -36,12 +50,14 @@ import org.sdo.sct.PasswordCallbackFunction;
 import org.sdo.sct.RendezvousInfo;
 import org.sdo.sct.RendezvousInfoBuilder;
 import org.sdo.sct.SignerNotOwnerException;
+import org.sdo.sct.SignerPool;
 import org.sdo.sct.Voucher;
 import org.sdo.sct.VoucherHeader;
 import org.sdo.sct.domain.Customer;
 import org.sdo.sct.domain.OwnershipVoucherEntry;
 import org.sdo.sct.domain.OwnershipVoucherRepo;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 
@@ -79,7 +95,8 @@ class VouchersControllerTest {
     String deviceSerial = "test";
     String customerId = "test";
 
-    VouchersController vc = new VouchersController(voucherRepo, keyFinder, pw);
+    VouchersController vc = new VouchersController(
+        voucherRepo, new SignerPool(keyFinder, pw), new CustomerKeyCache(16), 100);
     OwnershipVoucherEntry vEntry = new OwnershipVoucherEntry(deviceSerial, voucherText, null);
 
     ResponseStatusException ex =
@@ -119,6 +136,87 @@ class VouchersControllerTest {
     }
   }
 
+  @Test
+  void testBatch() throws Exception {
+
+    KeyStoresFactory keyStoresFactory =
+        new KeyStoresFactory(pw, new ClassPathResource("org/sdo/sct/test.p12"));
+    keyStoresFactory.setSingleton(false);
+    KeyFinder keyFinder = new KeyFinder(keyStoresFactory.getObject(), pw);
+    PublicKey ownerKey =
+        keyFinder.find(KeyType.ECDSA_P_384).orElseThrow().getCertificate().getPublicKey();
+
+    KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC", BouncyCastleSingleton.INSTANCE);
+    kpg.initialize(new ECGenParameterSpec("secp384r1"), SecureRandom.getInstance("SHA1PRNG"));
+    KeyPair customerKeyPair = kpg.generateKeyPair();
+    Customer customer = new Customer(
+        0, "customer", KeyType.ECDSA_P_384 + ":" + toX509(customerKeyPair.getPublic()));
+
+    RendezvousInfo r = new RendezvousInfoBuilder().with(URI.create("http://localhost")).build();
+    List<OwnershipVoucherEntry> entries = new ArrayList<>();
+    for (String serial : List.of("one", "two", "unassigned")) {
+      VoucherHeader oh = new VoucherHeader(r, UUID.randomUUID(), serial, ownerKey, null);
+      Voucher voucher = new Voucher(oh.toString(), new HashCodec().encode(new Hash.Null()),
+          null, Collections.emptyList());
+      entries.add(new OwnershipVoucherEntry(
+          serial, voucher.toString(), "unassigned".equals(serial) ? null : customer));
+    }
+
+    // Two vouchers to a page, so that every batch below takes more than one.
+    OwnershipVoucherRepo voucherRepo = mock(OwnershipVoucherRepo.class);
+    VouchersController vc = new VouchersController(
+        voucherRepo, new SignerPool(keyFinder, pw), new CustomerKeyCache(16), 2);
+
+    VoucherBatchRequest request = new VoucherBatchRequest();
+    assertThrows(ResponseStatusException.class, () -> vc.postBatchNdjson(request));
+
+    request.setSerials(List.of("one", "two", "unassigned", "missing", "one"));
+    given(voucherRepo.findAllById(List.of("one", "two"))).willReturn(entries.subList(0, 2));
+    given(voucherRepo.findAllById(List.of("unassigned", "missing")))
+        .willReturn(entries.subList(2, 3));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    vc.postBatchNdjson(request).getBody().writeTo(out);
+
+    // Results follow the request, without repeats.
+    Map<String, JsonNode> results = new LinkedHashMap<>();
+    ObjectMapper mapper = new ObjectMapper();
+    for (String line : out.toString(StandardCharsets.US_ASCII).split("\n")) {
+      JsonNode node = mapper.readTree(line);
+      results.put(node.get("serial").asText(), node);
+    }
+
+    assertEquals(List.of("one", "two", "unassigned", "missing"),
+        new ArrayList<>(results.keySet()));
+    assertTrue(results.get("missing").has("error"));
+    assertEquals(entries.get(2).getVoucher(), results.get("unassigned").get("voucher").toString());
+    for (String serial : List.of("one", "two")) {
+      Voucher voucher = Voucher.of(results.get(serial).get("voucher").toString());
+      assertEquals(1, voucher.getEn().size());
+      assertEquals(customerKeyPair.getPublic(), voucher.getOwnerKey());
+    }
+
+    request.setSerials(null);
+    request.setCustomer("customer");
+    given(voucherRepo.findByCustomerDescriptorAfter("customer", "", PageRequest.of(0, 2)))
+        .willReturn(entries.subList(0, 2));
+    given(voucherRepo.findByCustomerDescriptorAfter("customer", "two", PageRequest.of(0, 2)))
+        .willReturn(Collections.emptyList());
+
+    out.reset();
+    vc.postBatchZip(request).getBody().writeTo(out);
+
+    Set<String> names = new HashSet<>();
+    try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+      for (ZipEntry entry = zip.getNextEntry(); null != entry; entry = zip.getNextEntry()) {
+        names.add(entry.getName());
+        Voucher voucher = Voucher.of(new String(zip.readAllBytes(), StandardCharsets.US_ASCII));
+        assertEquals(customerKeyPair.getPublic(), voucher.getOwnerKey());
+      }
+    }
+    assertEquals(Set.of("vouchers/one", "vouchers/two"), names);
+  }
+
   private String toX509(PublicKey key) throws IOException {
     StringWriter sw = new StringWriter();
     try (JcaPEMWriter pw = new JcaPEMWriter(sw)) {
@@ -0,0 +1,52 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.rt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+import org.sdo.sct.KeyFinder;
+import org.sdo.sct.KeyStoresFactory;
+import org.sdo.sct.KeyType;
+import org.sdo.sct.PasswordCallbackFunction;
+import org.sdo.sct.SignerPool;
+import org.springframework.core.io.ClassPathResource;
+
+class VouchersMeterBinderTest {
+
+  final PasswordCallbackFunction pw = "123456"::toCharArray;
+
+  @Test
+  void testBind() throws Exception {
+
+    KeyStoresFactory keyStoresFactory =
+        new KeyStoresFactory(pw, new ClassPathResource("org/sdo/sct/test.p12"));
+    keyStoresFactory.setSingleton(false);
+    KeyFinder keyFinder = new KeyFinder(keyStoresFactory.getObject(), pw);
+    SignerPool signerPool = new SignerPool(keyFinder, pw);
+
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    new VouchersMeterBinder(signerPool, new CustomerKeyCache(16), keyFinder).bindTo(registry);
+
+    signerPool.apply(KeyType.ECDSA_P_256, Function.identity());
+    signerPool.apply(KeyType.ECDSA_P_256, Function.identity());
+
+    // The meters read the pool's own counts.
+    assertEquals(2, registry.get("sdo.signerpool.borrows").functionCounter().count());
+    assertEquals(1, registry.get("sdo.signerpool.created").functionCounter().count());
+    assertEquals(signerPool.getCapacity(),
+        registry.get("sdo.signerpool.capacity").gauge().value());
+    assertEquals(0, registry.get("sdo.customer.keycache.lookups")
+        .tag("outcome", "hit").functionCounter().count());
+
+    keyFinder.find(KeyType.ECDSA_P_256);
+    assertEquals(keyFinder.getLookupCount(),
+        registry.get("sdo.keyfinder.lookup").functionTimer().count());
+    assertEquals(keyFinder.getLookupTime().toNanos(),
+        registry.get("sdo.keyfinder.lookup").functionTimer().totalTime(TimeUnit.NANOSECONDS));
+  }
+}
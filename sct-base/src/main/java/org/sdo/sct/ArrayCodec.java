@@ -3,10 +3,7 @@
 
 package org.sdo.sct;
 
-import java.nio.CharBuffer;
 import java.util.Base64;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Encodes and decodes SDO 'ByteArray' objects.
@@ -18,14 +15,14 @@ public class ArrayCodec {
    */
   public static byte[] decode(CharSequence cs) {
 
-    final Pattern pat = Pattern.compile("\"([+/A-Za-z0-9]*={0,2})\"");
-    final Matcher matcher = pat.matcher(cs);
-
-    if (!matcher.matches()) {
+    final int length = cs.length();
+    if (length < 2 || '"' != cs.charAt(0) || '"' != cs.charAt(length - 1)) {
       throw new IllegalArgumentException();
     }
 
-    return Base64.getDecoder().decode(matcher.group(1));
+    // The basic decoder accepts exactly the RFC 4648 alphabet and padding,
+    // so it needs no pre-screening.
+    return Base64.getDecoder().decode(cs.subSequence(1, length - 1).toString());
   }
 
   /**
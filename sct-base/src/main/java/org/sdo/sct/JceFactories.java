@@ -0,0 +1,246 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct;
+
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Signature;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pooled instances of JCE factories, signatures and digests.
+ *
+ * <p>Every <code>getInstance</code> call searches the provider's service table and builds a
+ * new engine.  The methods here lend out an idle instance for the algorithm and provider
+ * instead, building one only when none is idle.  An instance is lent to one caller at a
+ * time, so it needn't be thread-safe.  Use the lease in a try-with-resources block:
+ *
+ * <pre>
+ * try (JceFactories.Lease&lt;Signature&gt; lease = JceFactories.signature(alg, provider)) {
+ *   Signature verifier = lease.get();
+ *   ...
+ * }
+ * </pre>
+ *
+ * <p>A {@link Signature} from here must be initialized by the caller.  A {@link MessageDigest}
+ * is reset before it is lent.  Don't keep an instance after closing its lease.
+ *
+ * <p>The pools are held by this class rather than by the threads which use them, so a
+ * container's request threads don't keep engines, and through them this class loader,
+ * after the application stops.  The number of instances follows the number of concurrent
+ * callers rather than the number of threads, which matters with virtual threads: each is
+ * short-lived, and would build its own engines if they were kept per thread.  At most
+ * {@value #MAX_IDLE} idle instances are kept for each algorithm and provider.
+ */
+public final class JceFactories {
+
+  /**
+   * The most idle instances kept for each algorithm and provider.
+   */
+  public static final int MAX_IDLE = 64;
+
+  private static final ConcurrentMap<Key, Pool<KeyFactory>> keyFactories =
+      new ConcurrentHashMap<>();
+  private static final ConcurrentMap<Key, Pool<CertificateFactory>> certificateFactories =
+      new ConcurrentHashMap<>();
+  private static final ConcurrentMap<Key, Pool<Signature>> signatures =
+      new ConcurrentHashMap<>();
+  private static final ConcurrentMap<Key, Pool<MessageDigest>> messageDigests =
+      new ConcurrentHashMap<>();
+
+  private JceFactories() {
+  }
+
+  /**
+   * Lends a {@link KeyFactory} for an algorithm and provider.
+   *
+   * @param algorithm The key algorithm, for example "EC".
+   * @param provider  The provider, or null for the highest-priority provider.
+   *
+   * @throws NoSuchAlgorithmException if the provider has no such algorithm.
+   */
+  public static Lease<KeyFactory> keyFactory(final String algorithm, final Provider provider)
+      throws NoSuchAlgorithmException {
+
+    final Pool<KeyFactory> pool = pool(keyFactories, algorithm, provider);
+    KeyFactory result = pool.poll();
+    if (null == result) {
+      result = null == provider
+        ? KeyFactory.getInstance(algorithm)
+        : KeyFactory.getInstance(algorithm, provider);
+    }
+    return new Lease<>(pool, result);
+  }
+
+  /**
+   * Lends a {@link CertificateFactory} for a certificate type and provider.
+   *
+   * @param type     The certificate type, for example "X.509".
+   * @param provider The provider, or null for the highest-priority provider.
+   *
+   * @throws CertificateException if the provider has no such certificate type.
+   */
+  public static Lease<CertificateFactory> certificateFactory(
+      final String type, final Provider provider) throws CertificateException {
+
+    final Pool<CertificateFactory> pool = pool(certificateFactories, type, provider);
+    CertificateFactory result = pool.poll();
+    if (null == result) {
+      result = null == provider
+        ? CertificateFactory.getInstance(type)
+        : CertificateFactory.getInstance(type, provider);
+    }
+    return new Lease<>(pool, result);
+  }
+
+  /**
+   * Lends a {@link Signature} for an algorithm and provider.
+   *
+   * <p>The caller must initialize it for signing or verification before use.
+   *
+   * @param algorithm The signature algorithm, for example "SHA256withECDSA".
+   * @param provider  The provider, or null for the highest-priority provider.
+   *
+   * @throws NoSuchAlgorithmException if the provider has no such algorithm.
+   */
+  public static Lease<Signature> signature(final String algorithm, final Provider provider)
+      throws NoSuchAlgorithmException {
+
+    final Pool<Signature> pool = pool(signatures, algorithm, provider);
+    Signature result = pool.poll();
+    if (null == result) {
+      result = null == provider
+        ? Signature.getInstance(algorithm)
+        : Signature.getInstance(algorithm, provider);
+    }
+    return new Lease<>(pool, result);
+  }
+
+  /**
+   * Lends a {@link MessageDigest} for an algorithm and provider, reset.
+   *
+   * @param algorithm The digest algorithm, for example "SHA-256".
+   * @param provider  The provider, or null for the highest-priority provider.
+   *
+   * @throws NoSuchAlgorithmException if the provider has no such algorithm.
+   */
+  public static Lease<MessageDigest> messageDigest(final String algorithm, final Provider provider)
+      throws NoSuchAlgorithmException {
+
+    final Pool<MessageDigest> pool = pool(messageDigests, algorithm, provider);
+    MessageDigest result = pool.poll();
+    if (null == result) {
+      result = null == provider
+        ? MessageDigest.getInstance(algorithm)
+        : MessageDigest.getInstance(algorithm, provider);
+    } else {
+      result.reset();
+    }
+    return new Lease<>(pool, result);
+  }
+
+  private static <T> Pool<T> pool(
+      final ConcurrentMap<Key, Pool<T>> pools, final String algorithm, final Provider provider) {
+
+    final Key key = new Key(algorithm, provider);
+    final Pool<T> pool = pools.get(key);
+    return null != pool ? pool : pools.computeIfAbsent(key, k -> new Pool<>());
+  }
+
+  /**
+   * An instance lent from a pool, returned to it on close.
+   *
+   * @param <T> the type of the instance.
+   */
+  public static final class Lease<T> implements AutoCloseable {
+
+    private final Pool<T> pool;
+    private T instance;
+
+    private Lease(final Pool<T> pool, final T instance) {
+      this.pool = pool;
+      this.instance = instance;
+    }
+
+    /**
+     * Returns the lent instance.
+     *
+     * @throws IllegalStateException if the lease has been closed.
+     */
+    public T get() {
+      if (null == instance) {
+        throw new IllegalStateException("lease closed");
+      }
+      return instance;
+    }
+
+    /**
+     * Returns the instance to its pool.  Closing a lease twice has no further effect.
+     */
+    @Override
+    public void close() {
+      if (null != instance) {
+        pool.offer(instance);
+        instance = null;
+      }
+    }
+  }
+
+  // The idle instances for one algorithm and provider.
+  private static final class Pool<T> {
+
+    private final ConcurrentLinkedQueue<T> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    T poll() {
+      final T result = idle.poll();
+      if (null != result) {
+        size.decrementAndGet();
+      }
+      return result;
+    }
+
+    void offer(final T instance) {
+      if (size.incrementAndGet() <= MAX_IDLE) {
+        idle.offer(instance);
+      } else {
+        size.decrementAndGet();
+      }
+    }
+  }
+
+  // Providers are compared by identity: Provider is a Hashtable of its services, so hashing
+  // one walks every entry, which for BouncyCastle costs more than getInstance.
+  private static final class Key {
+
+    private final String algorithm;
+    private final Provider provider;
+
+    Key(final String algorithm, final Provider provider) {
+      this.algorithm = algorithm;
+      this.provider = provider;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) o;
+      return provider == other.provider && algorithm.equals(other.algorithm);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * algorithm.hashCode() + System.identityHashCode(provider);
+    }
+  }
+}
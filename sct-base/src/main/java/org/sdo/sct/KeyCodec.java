@@ -23,6 +23,11 @@ import java.util.regex.Pattern;
 public class KeyCodec {
 
   private static final String PK_NULL = "[0]";
+  private static final Pattern KEY_PATTERN = Pattern.compile("^\\[(\\d+),(\\d+),(.+?)]$");
+  private static final Pattern NULL_KEY_PATTERN = Pattern.compile("^\\[0]$");
+  private static final Pattern X509_KEY_PATTERN = Pattern.compile("^\\[(\\d+),(.+?)]$");
+  private static final Pattern RSA_KEY_PATTERN =
+      Pattern.compile("^\\[(\\d+),(.+?),(\\d+),(.+?)]$");
   private static ResourceBundleHolder resourceBundleHolder =
       new ResourceBundleHolder(KeyCodec.class.getName());
 
@@ -40,8 +45,118 @@ public class KeyCodec {
       throw new IllegalArgumentException(MessageFormat.format(format, "null"));
     }
 
-    Pattern pat = Pattern.compile("^\\[(\\d+),(\\d+),(.+?)]$");
-    Matcher matcher = pat.matcher(encoded);
+    return SdoTokenizer.LEGACY_DECODING ? decodeRegex(encoded) : decodeTokens(encoded);
+  }
+
+  static PublicKey decodeTokens(final String encoded) {
+
+    final CharSequence typeCode;
+    final int encodingCode;
+    final int keyBegin;
+    final int keyEnd;
+    try {
+      final SdoTokenizer tokens = new SdoTokenizer(encoded);
+      tokens.expect('[');
+      typeCode = tokens.nextDigits().slice();
+      tokens.expect(',');
+      encodingCode = tokens.nextDigits().intValue();
+      tokens.expect(',');
+      tokens.next();
+      keyBegin = tokens.begin();
+      keyEnd = tokens.end();
+      tokens.expect(']').expectEnd();
+
+    } catch (IllegalArgumentException e) {
+      String format = resourceBundleHolder.get().getString("not.a.key");
+      throw new IllegalArgumentException(MessageFormat.format(format, encoded), e);
+    }
+
+    final SdoTokenizer keyTokens = new SdoTokenizer(encoded, keyBegin, keyEnd);
+    final KeySpec keySpec;
+    switch (KeyEncoding.valueOfInt(encodingCode)) {
+      case NONE:
+        if (PK_NULL.length() == keyEnd - keyBegin
+            && encoded.regionMatches(keyBegin, PK_NULL, 0, PK_NULL.length())) {
+          return null;
+        } else {
+          String format = resourceBundleHolder.get().getString("not.a.null.key");
+          throw new IllegalArgumentException(
+            MessageFormat.format(format, encoded.substring(keyBegin, keyEnd)));
+        }
+
+      case X509:
+        final int pkBytes;
+        final byte[] der;
+        try {
+          keyTokens.expect('[');
+          pkBytes = keyTokens.nextDigits().intValue();
+          keyTokens.expect(',');
+          der = ArrayCodec.decode(keyTokens.next().slice());
+          keyTokens.expect(']').expectEnd();
+
+        } catch (IllegalArgumentException e) {
+          String format = resourceBundleHolder.get().getString("not.an.x509.key");
+          throw new IllegalArgumentException(
+            MessageFormat.format(format, encoded.substring(keyBegin, keyEnd)), e);
+        }
+
+        if (pkBytes != der.length) {
+          String format = resourceBundleHolder.get().getString("length.mismatch");
+          throw new IllegalArgumentException(MessageFormat.format(format, pkBytes, der.length));
+        }
+
+        keySpec = new X509EncodedKeySpec(der);
+        break;
+
+      case RSAMODEXP:
+        final int modBytes;
+        final byte[] modulus;
+        final int expBytes;
+        final byte[] exponent;
+        try {
+          keyTokens.expect('[');
+          modBytes = keyTokens.nextDigits().intValue();
+          keyTokens.expect(',');
+          modulus = ArrayCodec.decode(keyTokens.next().slice());
+          keyTokens.expect(',');
+          expBytes = keyTokens.nextDigits().intValue();
+          keyTokens.expect(',');
+          exponent = ArrayCodec.decode(keyTokens.next().slice());
+          keyTokens.expect(']').expectEnd();
+
+        } catch (IllegalArgumentException e) {
+          String format = resourceBundleHolder.get().getString("not.an.rsa.key");
+          throw new IllegalArgumentException(
+            MessageFormat.format(format, encoded.substring(keyBegin, keyEnd)), e);
+        }
+
+        if (modBytes != modulus.length) {
+          String format = resourceBundleHolder.get().getString("length.mismatch");
+          throw new IllegalArgumentException(
+            MessageFormat.format(format, modBytes, modulus.length));
+        }
+
+        if (expBytes != exponent.length) {
+          String format = resourceBundleHolder.get().getString("length.mismatch");
+          throw new IllegalArgumentException(
+            MessageFormat.format(format, expBytes, exponent.length));
+        }
+
+        keySpec = new RSAPublicKeySpec(new BigInteger(modulus), new BigInteger(exponent));
+        break;
+
+      default:
+        // bug smell, means we missed a case
+        throw new RuntimeException(
+          resourceBundleHolder.get().getString("unexpected.switch.default"));
+    } // switch (key encoding)
+
+    return generatePublic(typeCode, keySpec);
+  }
+
+  static PublicKey decodeRegex(final String encoded) {
+
+    Matcher matcher = KEY_PATTERN.matcher(encoded);
 
     if (!matcher.matches()) {
       String format = resourceBundleHolder.get().getString("not.a.key");
@@ -55,8 +170,7 @@ public class KeyCodec {
     final KeySpec keySpec;
     switch (KeyEncoding.valueOfInt(encodingCode)) {
       case NONE:
-        pat = Pattern.compile("^\\[0]$");
-        matcher = pat.matcher(encodedKey);
+        matcher = NULL_KEY_PATTERN.matcher(encodedKey);
         if (matcher.matches()) {
           return null;
         } else {
@@ -65,8 +179,7 @@ public class KeyCodec {
         }
 
       case X509:
-        pat = Pattern.compile("^\\[(\\d+),(.+?)]$");
-        matcher = pat.matcher(encodedKey);
+        matcher = X509_KEY_PATTERN.matcher(encodedKey);
         if (!matcher.matches()) {
           String format = resourceBundleHolder.get().getString("not.an.x509.key");
           throw new IllegalArgumentException(MessageFormat.format(format, encodedKey));
@@ -83,8 +196,7 @@ public class KeyCodec {
         break;
 
       case RSAMODEXP:
-        pat = Pattern.compile("^\\[(\\d+),(.+?),(\\d+),(.+?)]$");
-        matcher = pat.matcher(encodedKey);
+        matcher = RSA_KEY_PATTERN.matcher(encodedKey);
         if (!matcher.matches()) {
           String format = resourceBundleHolder.get().getString("not.an.rsa.key");
           throw new IllegalArgumentException(MessageFormat.format(format, encodedKey));
@@ -115,11 +227,15 @@ public class KeyCodec {
           resourceBundleHolder.get().getString("unexpected.switch.default"));
     } // switch (key encoding)
 
+    return generatePublic(typeCode, keySpec);
+  }
+
+  private static PublicKey generatePublic(final CharSequence typeCode, final KeySpec keySpec) {
+
     final KeyType type = KeyTypeCodec.decode(typeCode);
-    try {
-      final KeyFactory keyFactory =
-          KeyFactory.getInstance(type.getJceAlgorithm(), BouncyCastleSingleton.INSTANCE);
-      return keyFactory.generatePublic(keySpec);
+    try (JceFactories.Lease<KeyFactory> keyFactory =
+        JceFactories.keyFactory(type.getJceAlgorithm(), BouncyCastleSingleton.INSTANCE)) {
+      return keyFactory.get().generatePublic(keySpec);
 
     } catch (InvalidKeySpecException e) {
       throw new IllegalArgumentException(e.getMessage(), e);
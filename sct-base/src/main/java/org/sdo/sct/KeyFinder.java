@@ -9,33 +9,90 @@ import java.security.KeyStoreException;
 import java.security.PublicKey;
 import java.security.Signature;
 import java.security.cert.Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.security.auth.DestroyFailedException;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 /**
  * Locates keys in a set of {@link KeyStore}s.
+ *
+ * <p>Searching a keystore is expensive: every candidate key is proven with a test signature,
+ * which on a hardware keystore costs several device round trips.  KeyFinder therefore
+ * searches once, when it is built, and answers lookups from an index.
+ * The index is rebuilt by {@link #reload()}, which {@link KeyFinderController} exposes
+ * to operators, and also by a background thread every refresh interval, if one is
+ * configured.  Lookups never wait for a rebuild; they use
+ * the previous index until the new one is ready.
  */
 @Service
-public class KeyFinder {
+public class KeyFinder implements DisposableBean {
 
   private final KeyStores keyStores;
   private final PasswordCallbackFunction pwCallback;
+  private final ReentrantLock indexLock = new ReentrantLock();
+  private final LongAdder lookupCount = new LongAdder();
+  private final LongAdder lookupNanos = new LongAdder();
+  private final LongAdder reloadCount = new LongAdder();
+  private final ScheduledExecutorService refresher;
+  private volatile Map<KeyType, KeyHandle> index;
 
   /**
    * Constructor.
    *
+   * <p>The index built by this KeyFinder is never refreshed automatically.
+   *
    * @param keyStores  The {@link KeyStores} to search.
    * @param pwCallback The keystore password callback.
    */
   public KeyFinder(KeyStores keyStores,
       PasswordCallbackFunction pwCallback) {
+    this(keyStores, pwCallback, Duration.ZERO);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param keyStores       The {@link KeyStores} to search.
+   * @param pwCallback      The keystore password callback.
+   * @param refreshInterval How often the key index is rebuilt in the background.
+   *                        Zero disables refreshing.
+   */
+  @Autowired
+  public KeyFinder(KeyStores keyStores,
+      PasswordCallbackFunction pwCallback,
+      @Value("${sdo.keyfinder.refresh:0s}") Duration refreshInterval) {
     this.keyStores = keyStores;
     this.pwCallback = pwCallback;
-  }
+    this.index = buildIndex();
 
+    if (refreshInterval.isZero() || refreshInterval.isNegative()) {
+      refresher = null;
+    } else {
+      refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "keyfinder-refresh");
+        thread.setDaemon(true);
+        return thread;
+      });
+      refresher.scheduleWithFixedDelay(this::poll,
+          refreshInterval.toMillis(), refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+  }
 
   /**
    * Finds a key of the given {@link KeyType}.
@@ -46,10 +103,98 @@ public class KeyFinder {
    */
   public Optional<KeyHandle> find(final KeyType keyType) {
 
+    final long start = System.nanoTime();
+    try {
+      return Optional.ofNullable(index.get(keyType));
+
+    } finally {
+      lookupCount.increment();
+      lookupNanos.add(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Rebuilds the key index.
+   *
+   * <p>Call this after the underlying keystores change.
+   */
+  public void reload() {
+    indexLock.lock();
+    try {
+      index = buildIndex();
+      reloadCount.increment();
+    } finally {
+      indexLock.unlock();
+    }
+  }
+
+  /**
+   * Stops the background refresh, if there is one.
+   */
+  @Override
+  public void destroy() {
+    if (null != refresher) {
+      refresher.shutdownNow();
+    }
+  }
+
+  /**
+   * The number of calls to {@link #find(KeyType)}.
+   */
+  public long getLookupCount() {
+    return lookupCount.sum();
+  }
+
+  /**
+   * The total time spent in {@link #find(KeyType)}.
+   */
+  public Duration getLookupTime() {
+    return Duration.ofNanos(lookupNanos.sum());
+  }
+
+  /**
+   * The number of times the index has been rebuilt since it was first built.
+   */
+  public long getReloadCount() {
+    return reloadCount.sum();
+  }
+
+  /**
+   * The key types the index has a key for.
+   */
+  public Set<KeyType> getKeyTypes() {
+    return Collections.unmodifiableSet(index.keySet());
+  }
+
+  private void poll() {
+    try {
+      reload();
+    } catch (RuntimeException e) {
+      LoggerFactory.getLogger(KeyFinder.class).error(e.getMessage(), e);
+    }
+  }
+
+  private Map<KeyType, KeyHandle> buildIndex() {
+
+    final Instant start = Instant.now();
+    final Map<KeyType, KeyHandle> handles = new EnumMap<>(KeyType.class);
+    for (KeyType keyType : KeyType.values()) {
+      if (KeyType.NONE != keyType) {
+        scan(keyType).ifPresent(handle -> handles.put(keyType, handle));
+      }
+    }
+
+    LoggerFactory.getLogger(KeyFinder.class).info("indexed {} in {} ms",
+        handles.keySet(), Duration.between(start, Instant.now()).toMillis());
+    return handles;
+  }
+
+  private Optional<KeyHandle> scan(final KeyType keyType) {
+
     Iterator<KeyStore> it = keyStores.iterator();
     while (it.hasNext()) {
       KeyStore keyStore = it.next();
-      String alias = find(keyStore, keyType).orElse(null);
+      String alias = findAlias(keyStore, keyType).orElse(null);
       if (null != alias) {
         return Optional.of(new KeyHandle(keyStore, alias));
       }
@@ -58,7 +203,7 @@ public class KeyFinder {
     return Optional.empty();
   }
 
-  private Optional<String> find(final KeyStore keyStore, final KeyType keyType) {
+  private Optional<String> findAlias(final KeyStore keyStore, final KeyType keyType) {
 
     String result = null;
     final Iterator<String> it;
@@ -119,5 +264,4 @@ public class KeyFinder {
 
     return false;
   }
-
 }
@@ -0,0 +1,53 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct;
+
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Rebuilds the {@link KeyFinder} index on request, after keys are added to or removed from
+ * a keystore.
+ */
+@RestController
+@SuppressWarnings("unused")
+class KeyFinderController {
+
+  private final KeyFinder keyFinder;
+
+  @Autowired
+  KeyFinderController(final KeyFinder keyFinder) {
+    this.keyFinder = keyFinder;
+  }
+
+  @PostMapping(path = "/api/v1/keyfinder:reload", produces = MediaType.APPLICATION_JSON_VALUE)
+  Callable<String> reload() {
+
+    return this::reload_;
+  }
+
+  private String reload_() {
+
+    try {
+      keyFinder.reload();
+    } catch (RuntimeException e) {
+      throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), e);
+    }
+
+    return "{"
+      + "\"keyTypes\":["
+      + keyFinder.getKeyTypes().stream()
+          .map(keyType -> "\"" + keyType.name() + "\"")
+          .collect(Collectors.joining(","))
+      + "]"
+      + ",\"reloadCount\":" + keyFinder.getReloadCount()
+      + "}";
+  }
+}
@@ -11,6 +11,7 @@ import java.security.spec.RSAKeyGenParameterSpec;
 import java.text.MessageFormat;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
@@ -100,6 +101,31 @@ public class KeyUtils {
     throw new IllegalArgumentException(MessageFormat.format(format, key.getClass().getName()));
   }
 
+  /**
+   * Tests if two {@link PublicKey}s have the same value.
+   *
+   * <p>Keys from different providers don't always compare equal with
+   * {@link Object#equals(Object)}, so EC and RSA keys are compared by their components.
+   */
+  public static boolean isSameKey(final PublicKey left, final PublicKey right) {
+
+    if (left instanceof ECPublicKey && right instanceof ECPublicKey) {
+      final ECPublicKey leftEc = (ECPublicKey) left;
+      final ECPublicKey rightEc = (ECPublicKey) right;
+      return leftEc.getW().equals(rightEc.getW())
+        && areEqualByValue(leftEc.getParams(), rightEc.getParams());
+
+    } else if (left instanceof RSAPublicKey && right instanceof RSAPublicKey) {
+      final RSAPublicKey leftRsa = (RSAPublicKey) left;
+      final RSAPublicKey rightRsa = (RSAPublicKey) right;
+      return leftRsa.getModulus().equals(rightRsa.getModulus())
+        && leftRsa.getPublicExponent().equals(rightRsa.getPublicExponent());
+
+    } else {
+      return Objects.equals(left, right);
+    }
+  }
+
   public static class UnsupportedEcCurveException extends IllegalArgumentException {
     public UnsupportedEcCurveException(String s) {
       super(s);
@@ -0,0 +1,99 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct;
+
+import java.security.PublicKey;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of decoded SDO public keys, keyed by their encoded text.
+ *
+ * <p>Thousands of vouchers may carry the same manufacturer or owner key, and decoding one
+ * means a {@link java.security.KeyFactory} lookup.  {@link #SHARED} is used by
+ * {@link Voucher} so that each distinct key is decoded once per process.
+ * The least recently used entry is evicted when the cache is full.
+ */
+public class PublicKeyCache {
+
+  /**
+   * The name of the system property which sizes {@link #SHARED}.
+   */
+  public static final String SIZE_PROPERTY = "sdo.keycache.size";
+
+  /**
+   * The process-wide cache.
+   */
+  public static final PublicKeyCache SHARED =
+      new PublicKeyCache(Integer.getInteger(SIZE_PROPERTY, 256));
+
+  private final Map<String, PublicKey> cache;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param capacity the maximum number of keys to keep.
+   */
+  public PublicKeyCache(final int capacity) {
+
+    if (capacity < 1) {
+      throw new IllegalArgumentException(Integer.toString(capacity));
+    }
+
+    this.cache = new LinkedHashMap<>(capacity, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, PublicKey> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Decodes an SDO-encoded key, or returns the key it was last decoded to.
+   *
+   * @see KeyCodec#decode(String)
+   */
+  public PublicKey decode(final String encoded) {
+
+    if (null == encoded) {
+      return KeyCodec.decode(null); // throws
+    }
+
+    PublicKey key;
+    synchronized (cache) {
+      key = cache.get(encoded);
+    }
+
+    if (null != key) {
+      hits.incrementAndGet();
+      return key;
+    }
+
+    // Decode outside the lock.  Racing threads may both decode the same key,
+    // which is harmless.
+    misses.incrementAndGet();
+    key = KeyCodec.decode(encoded);
+    synchronized (cache) {
+      cache.put(encoded, key);
+    }
+    return key;
+  }
+
+  /**
+   * The number of lookups answered from the cache.
+   */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * The number of lookups which decoded a key.
+   */
+  public long getMissCount() {
+    return misses.get();
+  }
+}
@@ -0,0 +1,324 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct;
+
+import java.nio.CharBuffer;
+
+/**
+ * A single-pass tokenizer for SDO's JSON-style text encoding.
+ *
+ * <p>SDO text never contains raw quotes or brackets inside strings (see {@link StringCodec}),
+ * so the extent of any value can be found by tracking bracket depth alone.
+ * The tokenizer never copies its input: each scanned value is reported as a pair of
+ * offsets into the original text, which callers can view as a {@link CharSequence}
+ * or copy to a {@link String} only if they need to keep it.
+ *
+ * <p>The regular-expression decoders which predate this class remain available for
+ * differential testing.  Set the system property {@value #LEGACY_DECODING_PROPERTY}
+ * to <code>true</code> to select them at runtime.
+ */
+public class SdoTokenizer {
+
+  /**
+   * The name of the system property which selects the legacy regular-expression decoders.
+   */
+  public static final String LEGACY_DECODING_PROPERTY = "sdo.codec.legacy";
+
+  static final boolean LEGACY_DECODING = Boolean.getBoolean(LEGACY_DECODING_PROPERTY);
+
+  private static final int RADIX_DECIMAL = 10;
+
+  private final String text;
+  private final int limit;
+  private int cursor;
+  private int tokenBegin = -1;
+  private int tokenEnd = -1;
+
+  /**
+   * Constructor.
+   *
+   * @param text The text to tokenize.
+   */
+  public SdoTokenizer(final String text) {
+    this(text, 0, text.length());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param text  The text to tokenize.
+   * @param begin The offset at which to start, inclusive.
+   * @param end   The offset at which to stop, exclusive.
+   */
+  public SdoTokenizer(final String text, final int begin, final int end) {
+    if (begin < 0 || end > text.length() || begin > end) {
+      throw new IndexOutOfBoundsException();
+    }
+    this.text = text;
+    this.cursor = begin;
+    this.limit = end;
+  }
+
+  /**
+   * Consumes the given character.
+   *
+   * @param c The expected character.
+   *
+   * @return this tokenizer.
+   *
+   * @throws IllegalArgumentException if the next character is not the expected character.
+   */
+  public SdoTokenizer expect(final char c) {
+    if (!consume(c)) {
+      throw unexpected();
+    }
+    return this;
+  }
+
+  /**
+   * Consumes the given character, if it is next.
+   *
+   * @param c The character to consume.
+   *
+   * @return true if the character was consumed, false otherwise.
+   */
+  public boolean consume(final char c) {
+    if (cursor < limit && text.charAt(cursor) == c) {
+      cursor++;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Consumes an object member name and its trailing colon, as in <code>"key":</code>.
+   *
+   * @param key The expected member name.
+   *
+   * @return this tokenizer.
+   *
+   * @throws IllegalArgumentException if the next token is not the expected member name.
+   */
+  public SdoTokenizer expectKey(final String key) {
+    if (!consumeKey(key)) {
+      throw unexpected();
+    }
+    return this;
+  }
+
+  /**
+   * Consumes an object member name and its trailing colon, if it is next.
+   *
+   * @param key The member name to consume.
+   *
+   * @return true if the member name was consumed, false otherwise.
+   */
+  public boolean consumeKey(final String key) {
+    final int length = key.length();
+    final int end = cursor + length + 3; // two quotes and a colon
+
+    if (end <= limit
+        && '"' == text.charAt(cursor)
+        && text.regionMatches(cursor + 1, key, 0, length)
+        && '"' == text.charAt(cursor + length + 1)
+        && ':' == text.charAt(cursor + length + 2)) {
+
+      cursor = end;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Requires that all input has been consumed.
+   *
+   * @throws IllegalArgumentException if input remains.
+   */
+  public void expectEnd() {
+    if (cursor != limit) {
+      throw unexpected();
+    }
+  }
+
+  /**
+   * Scans the value at the cursor.
+   *
+   * <p>A value is an array, an object, a quoted string, or an unquoted scalar.
+   * Scalars extend to the next comma or closing bracket.
+   *
+   * @return this tokenizer.
+   *
+   * @throws IllegalArgumentException if no complete value is present.
+   */
+  public SdoTokenizer next() {
+
+    final int begin = cursor;
+    int depth = 0;
+    boolean quoted = false;
+
+    scan:
+    while (cursor < limit) {
+      final char c = text.charAt(cursor);
+
+      if (quoted) {
+        cursor++;
+        if ('"' == c) {
+          quoted = false;
+          if (0 == depth) {
+            break;
+          }
+        }
+        continue;
+      }
+
+      switch (c) {
+        case '"':
+          if (0 == depth && cursor != begin) {
+            throw unexpected(); // quotes may not appear inside a scalar
+          }
+          quoted = true;
+          break;
+
+        case '[':
+        case '{':
+          if (0 == depth && cursor != begin) {
+            throw unexpected(); // brackets may not appear inside a scalar
+          }
+          depth++;
+          break;
+
+        case ']':
+        case '}':
+          if (0 == depth) {
+            break scan; // closes the enclosing container, which isn't ours to consume
+          }
+          depth--;
+          if (0 == depth) {
+            cursor++;
+            break scan;
+          }
+          break;
+
+        case ',':
+          if (0 == depth) {
+            break scan;
+          }
+          break;
+
+        default:
+          break;
+      }
+      cursor++;
+    }
+
+    if (quoted || 0 != depth || begin == cursor) {
+      throw unexpected();
+    }
+
+    tokenBegin = begin;
+    tokenEnd = cursor;
+    return this;
+  }
+
+  /**
+   * Scans the run of decimal digits at the cursor.
+   *
+   * @return this tokenizer.
+   *
+   * @throws IllegalArgumentException if no digits are present.
+   */
+  public SdoTokenizer nextDigits() {
+
+    final int begin = cursor;
+    while (cursor < limit && isDigit(text.charAt(cursor))) {
+      cursor++;
+    }
+
+    if (begin == cursor) {
+      throw unexpected();
+    }
+
+    tokenBegin = begin;
+    tokenEnd = cursor;
+    return this;
+  }
+
+  /**
+   * The offset at which the most recently scanned token begins, inclusive.
+   */
+  public int begin() {
+    return tokenBegin;
+  }
+
+  /**
+   * The offset at which the most recently scanned token ends, exclusive.
+   */
+  public int end() {
+    return tokenEnd;
+  }
+
+  /**
+   * The most recently scanned token as an unsigned decimal integer.
+   *
+   * @throws IllegalArgumentException if the token isn't a valid unsigned integer.
+   */
+  public int intValue() {
+
+    if (tokenBegin == tokenEnd) {
+      throw unexpected();
+    }
+
+    long value = 0;
+    for (int i = tokenBegin; i < tokenEnd; i++) {
+      final char c = text.charAt(i);
+      if (!isDigit(c)) {
+        throw unexpected();
+      }
+      value = value * RADIX_DECIMAL + (c - '0');
+      if (value > Integer.MAX_VALUE) {
+        throw unexpected();
+      }
+    }
+    return (int) value;
+  }
+
+  /**
+   * Tests if the most recently scanned token is exactly equal to the given text.
+   */
+  public boolean tokenEquals(final String s) {
+    return s.length() == tokenEnd - tokenBegin
+      && text.regionMatches(tokenBegin, s, 0, s.length());
+  }
+
+  /**
+   * A read-only view of the most recently scanned token.
+   *
+   * <p>The view shares storage with the tokenized text.
+   */
+  public CharSequence slice() {
+    return CharBuffer.wrap(text, tokenBegin, tokenEnd);
+  }
+
+  /**
+   * A copy of the most recently scanned token.
+   */
+  public String string() {
+    return text.substring(tokenBegin, tokenEnd);
+  }
+
+  /**
+   * A tokenizer over the most recently scanned token.
+   */
+  public SdoTokenizer tokenize() {
+    return new SdoTokenizer(text, tokenBegin, tokenEnd);
+  }
+
+  private static boolean isDigit(final char c) {
+    return '0' <= c && c <= '9';
+  }
+
+  private IllegalArgumentException unexpected() {
+    return new IllegalArgumentException("unexpected SDO text at offset " + cursor);
+  }
+}
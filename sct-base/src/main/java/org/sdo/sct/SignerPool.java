@@ -0,0 +1,295 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.text.MessageFormat;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import org.sdo.sct.KeyHandle.AutoCloseableKey;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * A pool of signing-ready {@link Signature}s.
+ *
+ * <p>Building a {@link Signature} means a provider lookup and, for hardware keystores,
+ * unwrapping the private key.  Pooled signers are built once and reused, one borrower
+ * at a time.  Each {@link KeyType} has its own pool, bound to the keystore entry
+ * {@link KeyFinder} chose for that type; if KeyFinder later chooses another entry,
+ * the pool is rebuilt.
+ *
+ * <p>A borrower which can't get a pooled signer within the configured wait builds an
+ * unpooled one instead, and the pool counts the event as exhaustion.
+ */
+@Service
+public class SignerPool {
+
+  private static ResourceBundleHolder resourceBundleHolder_ =
+      new ResourceBundleHolder(SignerPool.class.getName());
+
+  private final KeyFinder keyFinder;
+  private final PasswordCallbackFunction pwCallback;
+  private final int capacity;
+  private final Duration maxWait;
+  private final Map<KeyType, Pool> pools = new ConcurrentHashMap<>();
+  private final LongAdder borrowCount = new LongAdder();
+  private final LongAdder waitNanos = new LongAdder();
+  private final LongAdder exhaustedCount = new LongAdder();
+  private final LongAdder createdCount = new LongAdder();
+
+  /**
+   * Constructor.
+   *
+   * <p>The pool holds one signer per available processor for each key type, and borrowers
+   * wait up to one second for a pooled signer.
+   *
+   * @param keyFinder  The {@link KeyFinder} which locates signing keys.
+   * @param pwCallback The keystore password callback.
+   */
+  public SignerPool(final KeyFinder keyFinder, final PasswordCallbackFunction pwCallback) {
+    this(keyFinder, pwCallback, 0, Duration.ofSeconds(1));
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param keyFinder  The {@link KeyFinder} which locates signing keys.
+   * @param pwCallback The keystore password callback.
+   * @param capacity   The number of signers to pool per key type.
+   *                   Zero means one per available processor.
+   * @param maxWait    How long a borrower waits for a pooled signer.
+   */
+  @Autowired
+  public SignerPool(
+      final KeyFinder keyFinder,
+      final PasswordCallbackFunction pwCallback,
+      @Value("${sdo.signerpool.size:0}") final int capacity,
+      @Value("${sdo.signerpool.wait:1s}") final Duration maxWait) {
+
+    if (capacity < 0) {
+      throw new IllegalArgumentException(Integer.toString(capacity));
+    }
+
+    this.keyFinder = keyFinder;
+    this.pwCallback = pwCallback;
+    this.capacity = 0 == capacity ? Runtime.getRuntime().availableProcessors() : capacity;
+    this.maxWait = maxWait;
+  }
+
+  /**
+   * Applies a function to a borrowed signer.
+   *
+   * <p>The signer is returned to the pool when the function completes.
+   * If the function throws, the signer may be mid-operation, so it is discarded.
+   *
+   * @param keyType  The type of key with which to sign.
+   * @param function The function to apply.
+   *
+   * @return The result of the function.
+   *
+   * @throws NoSuchKeyException if no key of the requested type is available.
+   */
+  public <T> T apply(final KeyType keyType, final Function<Signature, T> function) {
+    return apply(keyType, (signer, signerKey) -> function.apply(signer));
+  }
+
+  /**
+   * Applies a function to a borrowed signer and its public key.
+   *
+   * <p>The public key is read from the keystore entry's certificate once per pool, so
+   * callers can check a signer's identity without signing anything.
+   * It is null if the entry has no certificate.
+   *
+   * @param keyType  The type of key with which to sign.
+   * @param function The function to apply.
+   *
+   * @return The result of the function.
+   *
+   * @throws NoSuchKeyException if no key of the requested type is available.
+   * @see Voucher#assign(PublicKey, Signature, PublicKey)
+   */
+  public <T> T apply(
+      final KeyType keyType, final BiFunction<Signature, PublicKey, T> function) {
+
+    final KeyHandle handle = keyFinder.find(keyType)
+        .orElseThrow(() -> new NoSuchKeyException(keyType));
+    // The pool rarely changes, so look it up without locking, and lock only to replace it.
+    Pool pool = pools.get(keyType);
+    if (null == pool || !pool.isFor(handle)) {
+      pool = pools.compute(keyType, (type, current) ->
+          null != current && current.isFor(handle) ? current : new Pool(handle, type));
+    }
+
+    borrowCount.increment();
+    final Signature signer = pool.borrow();
+    final T result;
+    try {
+      result = function.apply(signer, pool.signerKey);
+    } catch (RuntimeException | Error e) {
+      pool.discard(signer);
+      throw e;
+    }
+    pool.giveBack(signer);
+    return result;
+  }
+
+  /**
+   * The number of signers pooled per key type.
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * The number of signers borrowed.
+   */
+  public long getBorrowCount() {
+    return borrowCount.sum();
+  }
+
+  /**
+   * The number of signers built, pooled or not.
+   */
+  public long getCreatedCount() {
+    return createdCount.sum();
+  }
+
+  /**
+   * The number of borrowers which gave up waiting for a pooled signer.
+   */
+  public long getExhaustedCount() {
+    return exhaustedCount.sum();
+  }
+
+  /**
+   * The total time borrowers spent waiting for pooled signers.
+   */
+  public Duration getWaitTime() {
+    return Duration.ofNanos(waitNanos.sum());
+  }
+
+  private Signature newSigner(final KeyHandle handle, final KeyType keyType) {
+
+    createdCount.increment();
+    try (AutoCloseableKey autoCloseableKey = handle.getKey(pwCallback)) {
+      if (!(autoCloseableKey.getKey() instanceof PrivateKey)) {
+        String format = resourceBundleHolder_.get().getString("key.not.private");
+        throw new ResponseStatusException(
+          HttpStatus.INTERNAL_SERVER_ERROR,
+          MessageFormat.format(format, handle.getAlias()));
+      }
+
+      final Signature signer = CryptoLevel.of(keyType).buildSignature(
+          autoCloseableKey.getKey(), handle.getKeyStore().getProvider());
+      signer.initSign((PrivateKey) autoCloseableKey.getKey());
+      return signer;
+
+    } catch (GeneralSecurityException e) {
+      throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage(), e);
+    }
+  }
+
+  private class Pool {
+
+    private final KeyHandle handle;
+    private final KeyType keyType;
+    private final PublicKey signerKey;
+    private final BlockingQueue<Signature> idle = new ArrayBlockingQueue<>(capacity);
+    private final AtomicInteger size = new AtomicInteger();
+
+    Pool(final KeyHandle handle, final KeyType keyType) {
+      this.handle = handle;
+      this.keyType = keyType;
+      this.signerKey = readSignerKey(handle);
+
+      LoggerFactory.getLogger(SignerPool.class).info(MessageFormat.format(
+          resourceBundleHolder_.get().getString("pool.created"),
+          keyType, handle.getAlias(), capacity));
+    }
+
+    private PublicKey readSignerKey(final KeyHandle handle) {
+      try {
+        final Certificate certificate = handle.getCertificate();
+        return null == certificate ? null : certificate.getPublicKey();
+      } catch (KeyStoreException e) {
+        return null;
+      }
+    }
+
+    boolean isFor(final KeyHandle other) {
+      final KeyStore keyStore = handle.getKeyStore();
+      return keyStore == other.getKeyStore() && handle.getAlias().equals(other.getAlias());
+    }
+
+    Signature borrow() {
+
+      Signature signer = idle.poll();
+      if (null != signer) {
+        return signer;
+      }
+
+      // Grow the pool until it's full, then wait for a returned signer.
+      if (size.getAndUpdate(n -> n < capacity ? n + 1 : n) < capacity) {
+        return grow();
+      }
+
+      final long start = System.nanoTime();
+      try {
+        signer = idle.poll(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        waitNanos.add(System.nanoTime() - start);
+      }
+
+      if (null == signer) {
+        // The extra signer is dropped when it's given back to the full pool.
+        exhaustedCount.increment();
+        size.incrementAndGet();
+        return grow();
+      }
+      return signer;
+    }
+
+    // The caller must already have counted the new signer in size.
+    private Signature grow() {
+      try {
+        return newSigner(handle, keyType);
+      } catch (RuntimeException e) {
+        size.decrementAndGet();
+        throw e;
+      }
+    }
+
+    void giveBack(final Signature signer) {
+      // If the pool is already full (it grew past capacity on exhaustion), drop the signer.
+      if (!idle.offer(signer)) {
+        size.decrementAndGet();
+      }
+    }
+
+    void discard(final Signature signer) {
+      size.decrementAndGet();
+    }
+  }
+}
@@ -11,7 +11,6 @@ import java.security.Signature;
 import java.security.SignatureException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.regex.Matcher;
@@ -20,14 +19,43 @@ import org.slf4j.LoggerFactory;
 
 /**
  * SDO type 'OwnershipVoucher'.
+ *
+ * <p>The header, entries and owner key are decoded on first use and remembered, and owner
+ * keys are decoded only once per process through {@link PublicKeyCache#SHARED}.
+ *
+ * <p>The header hash and the hash of the last entry, which are needed to extend the voucher,
+ * are also computed once per instance.  {@link #assign} seeds the header hash, and the new
+ * entry already decoded, into the voucher it returns.  That voucher hashes its last entry
+ * only if it is extended in turn, so each hop of a multi-hop extension costs the same however
+ * long the chain grows.
  */
 public class Voucher {
 
+  private static final Pattern VOUCHER_PATTERN = Pattern.compile(
+      "^\\{"
+      + "\"sz\":(.*?)"
+      + ",\"oh\":(.*?)"
+      + ",\"hmac\":(.*?)"
+      + "(?:,\"dc\":(.*?))?"
+      + ",\"en\":(.*?)"
+      + "}$"
+  );
+  private static final Pattern ENTRY_LIST_PATTERN = Pattern.compile("^\\[(.*)]$");
+
   private final String oh;
   private final String hmac;
   private final String dc;
   private final List<String> en;
 
+  // Lazily decoded fields.  VoucherHeader and VoucherEntry are immutable, so a race
+  // costs at most a redundant decode.
+  private volatile VoucherHeader header;
+  private final VoucherEntry[] entries;
+  private volatile PublicKey ownerKey;
+  private volatile CryptoLevel cryptoLevel;
+  private volatile String lastEntryHash;
+  private volatile String headerHash;
+
   /**
    * Constructor.
    *
@@ -41,6 +69,7 @@ public class Voucher {
     this.hmac = hmac;
     this.dc = dc;
     this.en = Collections.unmodifiableList(en);
+    this.entries = new VoucherEntry[en.size()];
   }
 
   /**
@@ -51,16 +80,39 @@ public class Voucher {
    * @return The decoded Voucher.
    */
   public static Voucher of(String encoded) {
-    Pattern pat = Pattern.compile(
-        "^\\{"
-        + "\"sz\":(.*?)"
-        + ",\"oh\":(.*?)"
-        + ",\"hmac\":(.*?)"
-        + "(?:,\"dc\":(.*?))?"
-        + ",\"en\":(.*?)"
-        + "}$"
-    );
-    Matcher matcher = pat.matcher(encoded);
+    return SdoTokenizer.LEGACY_DECODING ? ofRegex(encoded) : ofTokens(encoded);
+  }
+
+  static Voucher ofTokens(final String encoded) {
+
+    final SdoTokenizer tokens = new SdoTokenizer(encoded);
+
+    tokens.expect('{').expectKey("sz");
+    final int sz = IntegerCodec.decode(tokens.next().slice(), 8);
+
+    tokens.expect(',').expectKey("oh");
+    final String oh = tokens.next().string();
+
+    tokens.expect(',').expectKey("hmac");
+    final String hmac = tokens.next().string();
+
+    tokens.expect(',');
+    String dc = null;
+    if (tokens.consumeKey("dc")) {
+      dc = tokens.next().string();
+      tokens.expect(',');
+    }
+
+    tokens.expectKey("en");
+    final List<String> en = decodeEntryList(sz, tokens.next().tokenize());
+
+    tokens.expect('}').expectEnd();
+
+    return new Voucher(oh, hmac, dc, en);
+  }
+
+  static Voucher ofRegex(final String encoded) {
+    Matcher matcher = VOUCHER_PATTERN.matcher(encoded);
     if (!matcher.matches()) {
       throw new IllegalArgumentException();
     }
@@ -70,13 +122,39 @@ public class Voucher {
       matcher.group(2),
       matcher.group(3),
       matcher.group(4),
-      decodeEntryList(sz, matcher.group(5)));
+      decodeEntryListRegex(sz, matcher.group(5)));
   }
 
   static List<String> decodeEntryList(final int numEntries, final String encoded) {
+    return SdoTokenizer.LEGACY_DECODING
+      ? decodeEntryListRegex(numEntries, encoded)
+      : decodeEntryList(numEntries, new SdoTokenizer(encoded));
+  }
+
+  private static List<String> decodeEntryList(final int numEntries, final SdoTokenizer tokens) {
+
+    final List<String> entries = new ArrayList<>();
+
+    tokens.expect('[');
+    if (!tokens.consume(']')) {
+      do {
+        entries.add(tokens.next().string());
+      } while (tokens.consume(','));
+      tokens.expect(']');
+    }
+    tokens.expectEnd();
+
+    if (numEntries != entries.size()) {
+      throw new IllegalArgumentException(
+        "expected " + numEntries + " voucher entries but got " + entries.size());
+    }
+    return entries;
+  }
+
+  static List<String> decodeEntryListRegex(final int numEntries, final String encoded) {
     List<String> entries = new ArrayList<>();
 
-    Matcher matcher = Pattern.compile("^\\[(.*)]$").matcher(encoded);
+    Matcher matcher = ENTRY_LIST_PATTERN.matcher(encoded);
     if (!matcher.matches()) {
       throw new IllegalArgumentException();
     }
@@ -134,36 +212,41 @@ public class Voucher {
   /**
    * Assigns this voucher to a new recipient.
    *
+   * <p>Ownership is proven by signing and verifying a random nonce, which costs an extra
+   * signature.  Callers which know the signer's public key should pass it to
+   * {@link #assign(PublicKey, Signature, PublicKey)} instead.
+   *
    * @param recipientKey The recipient's public key.
    * @param signer       A {@link Signature} object initialized for signing.
    */
   public Voucher assign(PublicKey recipientKey, Signature signer) {
+    return assign(recipientKey, signer, null);
+  }
+
+  /**
+   * Assigns this voucher to a new recipient.
+   *
+   * <p>If the signer's public key is given, ownership is checked by comparing it with the
+   * owner key, and only the new entry is signed.  The caller vouches that the key
+   * matches the signer, typically because both came from the same keystore entry.
+   *
+   * @param recipientKey The recipient's public key.
+   * @param signer       A {@link Signature} object initialized for signing.
+   * @param signerKey    The public key of the signer, or null to prove ownership by signing.
+   */
+  public Voucher assign(PublicKey recipientKey, Signature signer, PublicKey signerKey) {
 
     PublicKey ownerKey = getOwnerKey();
 
-    if (!isOwner(ownerKey, signer)) {
+    final boolean owner = null == signerKey
+        ? isOwner(ownerKey, signer)
+        : KeyUtils.isSameKey(ownerKey, signerKey);
+    if (!owner) {
       throw new SignerNotOwnerException();
     }
 
-    KeyType keyType = KeyUtils.toType(ownerKey);
-    final CryptoLevel cryptoLevel = CryptoLevel.of(keyType);
-    DigestWrapper digest = cryptoLevel.buildDigestWrapper();
-
-    if (getEn().isEmpty()) {
-      digest.update(getOh().getBytes(StandardCharsets.US_ASCII));
-      digest.update(getHmac().getBytes(StandardCharsets.US_ASCII));
-    } else {
-      final VoucherEntry ve = VoucherEntry.of(getEn().get(getEn().size() - 1));
-      final String vb = ve.getBo();
-      digest.update(vb.getBytes(StandardCharsets.US_ASCII));
-    }
-    final String hp = new HashCodec().encode(digest.doFinal());
-
-    final VoucherHeader header = VoucherHeader.of(getOh());
-    digest.reset();
-    digest.update(header.getGuid().getBytes(StandardCharsets.US_ASCII));
-    digest.update(header.getDeviceInfo().getBytes(StandardCharsets.US_ASCII));
-    final String hc = new HashCodec().encode(digest.doFinal());
+    final String hp = getLastEntryHash();
+    final String hc = getHeaderHash();
 
     final String pk = KeyCodec.encode(recipientKey);
     final String bo = new VoucherEntry.Body(hp, hc, pk).toString();
@@ -176,10 +259,21 @@ public class Voucher {
       throw new RuntimeException(e); // bug smell - signature should be initialized by now
     }
 
-    final List<String> en = new LinkedList<>(getEn());
-    en.add(new VoucherEntry(bo, sg).toString());
-
-    return new Voucher(getOh(), getHmac(), getDc(), en);
+    final VoucherEntry entry = new VoucherEntry(bo, sg);
+    final List<String> en = new ArrayList<>(getEn().size() + 1);
+    en.addAll(getEn());
+    en.add(entry.toString());
+
+    // The new voucher has the same header and crypto level as this one,
+    // and its last entry and owner are already known.
+    final Voucher result = new Voucher(getOh(), getHmac(), getDc(), en);
+    result.header = getHeader();
+    System.arraycopy(entries, 0, result.entries, 0, entries.length);
+    result.entries[en.size() - 1] = entry;
+    result.ownerKey = recipientKey;
+    result.cryptoLevel = getCryptoLevel();
+    result.headerHash = hc;
+    return result;
   }
 
   /**
@@ -196,6 +290,88 @@ public class Voucher {
     return this.en;
   }
 
+  /**
+   * PM.OwnershipVoucher.en, decoded.
+   *
+   * @param index The index of the entry.
+   */
+  public VoucherEntry getEntry(final int index) {
+
+    VoucherEntry entry = entries[index];
+    if (null == entry) {
+      entry = VoucherEntry.of(getEn().get(index));
+      entries[index] = entry;
+    }
+    return entry;
+  }
+
+  /**
+   * PM.OwnershipVoucher.oh, decoded.
+   */
+  public VoucherHeader getHeader() {
+
+    VoucherHeader result = header;
+    if (null == result) {
+      result = VoucherHeader.of(getOh());
+      header = result;
+    }
+    return result;
+  }
+
+  /**
+   * The hash of this voucher's last entry, or of its header and HMAC if it has no entries.
+   *
+   * <p>This is the 'hp' field of the next entry.
+   */
+  public String getLastEntryHash() {
+
+    String result = lastEntryHash;
+    if (null == result) {
+      final DigestWrapper digest = getCryptoLevel().buildDigestWrapper();
+      if (getEn().isEmpty()) {
+        digest.update(getOh().getBytes(StandardCharsets.US_ASCII));
+        digest.update(getHmac().getBytes(StandardCharsets.US_ASCII));
+      } else {
+        final String vb = getEntry(getEn().size() - 1).getBo();
+        digest.update(vb.getBytes(StandardCharsets.US_ASCII));
+      }
+      result = new HashCodec().encode(digest.doFinal());
+      lastEntryHash = result;
+    }
+    return result;
+  }
+
+  /**
+   * The hash of this voucher's GUID and device info.
+   *
+   * <p>This is the 'hc' field of every entry.
+   */
+  public String getHeaderHash() {
+
+    String result = headerHash;
+    if (null == result) {
+      final VoucherHeader header = getHeader();
+      final DigestWrapper digest = getCryptoLevel().buildDigestWrapper();
+      digest.update(header.getGuid().getBytes(StandardCharsets.US_ASCII));
+      digest.update(header.getDeviceInfo().getBytes(StandardCharsets.US_ASCII));
+      result = new HashCodec().encode(digest.doFinal());
+      headerHash = result;
+    }
+    return result;
+  }
+
+  // All keys in a voucher have the same type, so the owner key's type governs
+  // every digest in the chain.
+  private CryptoLevel getCryptoLevel() {
+
+    CryptoLevel result = cryptoLevel;
+    if (null == result) {
+      result = CryptoLevel.of(KeyUtils.toType(getOwnerKey()));
+      cryptoLevel = result;
+    }
+    return result;
+  }
+
   /**
    * PM.OwnershipVoucher.hmac
    */
@@ -217,18 +393,22 @@ public class Voucher {
    */
   public PublicKey getOwnerKey() {
 
-    final PublicKey ownerKey;
+    PublicKey result = ownerKey;
+    if (null != result) {
+      return result;
+    }
 
     if (getEn().isEmpty()) {
-      ownerKey = KeyCodec.decode(VoucherHeader.of(oh).getPublicKey());
+      result = PublicKeyCache.SHARED.decode(getHeader().getPublicKey());
 
     } else {
-      VoucherEntry ve = VoucherEntry.of(getEn().get(getEn().size() - 1));
+      VoucherEntry ve = getEntry(getEn().size() - 1);
       VoucherEntry.Body bo = VoucherEntry.Body.of(ve.getBo());
-      ownerKey = KeyCodec.decode(bo.getPk());
+      result = PublicKeyCache.SHARED.decode(bo.getPk());
     }
 
-    return ownerKey;
+    ownerKey = result;
+    return result;
   }
 
 
@@ -274,15 +454,14 @@ public class Voucher {
     byte[] nonce = new byte[nonceSize];
     ThreadLocalRandom.current().nextBytes(nonce); // not used for crypto
 
-    try {
+    try (JceFactories.Lease<Signature> verifier =
+        JceFactories.signature(signer.getAlgorithm(), BouncyCastleSingleton.INSTANCE)) {
       signer.update(nonce);
       byte[] signature = signer.sign();
 
-      Signature verifier =
-          Signature.getInstance(signer.getAlgorithm(), BouncyCastleSingleton.INSTANCE);
-      verifier.initVerify(ownerKey);
-      verifier.update(nonce);
-      return verifier.verify(signature);
+      verifier.get().initVerify(ownerKey);
+      verifier.get().update(nonce);
+      return verifier.get().verify(signature);
 
     } catch (InvalidKeyException | NoSuchAlgorithmException | SignatureException e) {
       LoggerFactory.getLogger(getClass()).error(e.getMessage(), e);
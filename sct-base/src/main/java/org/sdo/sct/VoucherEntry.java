@@ -11,6 +11,10 @@ import java.util.regex.Pattern;
  */
 public class VoucherEntry {
 
+  private static final String PK_NULL = "[0,0,[0]]";
+  private static final Pattern ENTRY_PATTERN =
+      Pattern.compile("\\{\"bo\":(.+?),\"pk\":\\[0,0,\\[0]],\"sg\":(.+?)}");
+
   private final String bo;
   private final String sg;
 
@@ -33,8 +37,31 @@ public class VoucherEntry {
    * @return the decoded VoucherEntry
    */
   public static VoucherEntry of(final String s) {
-    Matcher matcher = Pattern.compile("\\{\"bo\":(.+?),\"pk\":\\[0,0,\\[0]],\"sg\":(.+?)}")
-        .matcher(s);
+    return SdoTokenizer.LEGACY_DECODING ? ofRegex(s) : ofTokens(s);
+  }
+
+  static VoucherEntry ofTokens(final String s) {
+
+    final SdoTokenizer tokens = new SdoTokenizer(s);
+
+    tokens.expect('{').expectKey("bo");
+    final String bo = tokens.next().string();
+
+    tokens.expect(',').expectKey("pk");
+    if (!tokens.next().tokenEquals(PK_NULL)) {
+      throw new IllegalArgumentException();
+    }
+
+    tokens.expect(',').expectKey("sg");
+    final String sg = tokens.next().string();
+
+    tokens.expect('}').expectEnd();
+
+    return new VoucherEntry(bo, sg);
+  }
+
+  static VoucherEntry ofRegex(final String s) {
+    Matcher matcher = ENTRY_PATTERN.matcher(s);
     if (!matcher.matches()) {
       throw new IllegalArgumentException();
     }
@@ -72,6 +99,9 @@ public class VoucherEntry {
    */
   public static class Body {
 
+    private static final Pattern BODY_PATTERN =
+        Pattern.compile("\\{\"hp\":(.+?),\"hc\":(.+?),\"pk\":(.+?)}");
+
     private final String hp;
     private final String hc;
     private final String pk;
@@ -97,7 +127,29 @@ public class VoucherEntry {
      * @return the decoded body.
      */
     public static Body of(String s) {
-      Matcher matcher = Pattern.compile("\\{\"hp\":(.+?),\"hc\":(.+?),\"pk\":(.+?)}").matcher(s);
+      return SdoTokenizer.LEGACY_DECODING ? ofRegex(s) : ofTokens(s);
+    }
+
+    static Body ofTokens(final String s) {
+
+      final SdoTokenizer tokens = new SdoTokenizer(s);
+
+      tokens.expect('{').expectKey("hp");
+      final String hp = tokens.next().string();
+
+      tokens.expect(',').expectKey("hc");
+      final String hc = tokens.next().string();
+
+      tokens.expect(',').expectKey("pk");
+      final String pk = tokens.next().string();
+
+      tokens.expect('}').expectEnd();
+
+      return new Body(hp, hc, pk);
+    }
+
+    static Body ofRegex(final String s) {
+      Matcher matcher = BODY_PATTERN.matcher(s);
       if (!matcher.matches()) {
         throw new IllegalArgumentException();
       }
@@ -105,6 +157,20 @@ public class VoucherEntry {
       return new Body(matcher.group(1), matcher.group(2), matcher.group(3));
     }
 
+    /**
+     * PM.OwnershipVoucher.en[...].bo.hc
+     */
+    public String getHc() {
+      return this.hc;
+    }
+
+    /**
+     * PM.OwnershipVoucher.en[...].bo.hp
+     */
+    public String getHp() {
+      return this.hp;
+    }
+
     /**
      * PM.OwnershipVoucher.en[...].bo.pk
      */
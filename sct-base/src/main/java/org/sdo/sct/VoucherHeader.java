@@ -4,6 +4,7 @@
 package org.sdo.sct;
 
 import java.security.PublicKey;
+import java.util.Objects;
 import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -13,6 +14,18 @@ import java.util.regex.Pattern;
  */
 public class VoucherHeader {
 
+  private static final Pattern HEADER_PATTERN = Pattern.compile(
+      "^\\{"
+      + "\"pv\":113"
+      + ",\"pe\":(.*?)"
+      + ",\"r\":(.*?)"
+      + ",\"g\":(.*?)"
+      + ",\"d\":(.*?)"
+      + ",\"pk\":(.*?)"
+      + "(?:,\"hdc\":(.*?))?"
+      + "}$"
+  );
+
   private final String pe;
   private final String rendezvous;
   private final String guid;
@@ -36,9 +49,32 @@ public class VoucherHeader {
                        PublicKey publicKey,
                        Hash certChainHash) {
 
+    this(rendezvous.toString(), guid, deviceInfo, publicKey, certChainHash);
+  }
+
+  /**
+   * Constructor.
+   *
+   * <p>Callers which build many headers with the same {@link RendezvousInfo} can encode it
+   * once and pass the encoding here, rather than encoding it again for every header.
+   *
+   * @param rendezvous   the encoded {@link RendezvousInfo}, as returned by
+   *                     {@link RendezvousInfo#toString()}.
+   * @param guid   the GUID, PM.OwnershipVoucher.oh.guid.
+   * @param deviceInfo   the DeviceInfo, PM.OwnershipVoucher.oh.deviceInfo.
+   * @param publicKey  the manufacturer's public key, PM.OwnershipVoucher.oh.publicKey.
+   * @param certChainHash the hash of the device certificate chain,
+   *                      PM.OwnershipVoucher.oh.certChainHash.
+   */
+  public VoucherHeader(String rendezvous,
+                       UUID guid,
+                       String deviceInfo,
+                       PublicKey publicKey,
+                       Hash certChainHash) {
+
     this(
         KeyUtils.toEncoding(KeyUtils.toType(publicKey)).toString(),
-        rendezvous.toString(),
+        Objects.requireNonNull(rendezvous),
         UuidCodec.encode(guid),
         StringCodec.encode(deviceInfo),
         KeyCodec.encode(publicKey),
@@ -67,18 +103,45 @@ public class VoucherHeader {
    * @return The decoded header.
    */
   public static VoucherHeader of(String encoded) {
-    Pattern pat = Pattern.compile(
-        "^\\{"
-        + "\"pv\":113"
-        + ",\"pe\":(.*?)"
-        + ",\"r\":(.*?)"
-        + ",\"g\":(.*?)"
-        + ",\"d\":(.*?)"
-        + ",\"pk\":(.*?)"
-        + "(?:,\"hdc\":(.*?))?"
-        + "}$"
-    );
-    Matcher matcher = pat.matcher(encoded);
+    return SdoTokenizer.LEGACY_DECODING ? ofRegex(encoded) : ofTokens(encoded);
+  }
+
+  static VoucherHeader ofTokens(final String encoded) {
+
+    final SdoTokenizer tokens = new SdoTokenizer(encoded);
+
+    tokens.expect('{').expectKey("pv");
+    if (!tokens.next().tokenEquals("113")) {
+      throw new IllegalArgumentException();
+    }
+
+    tokens.expect(',').expectKey("pe");
+    final String pe = tokens.next().string();
+
+    tokens.expect(',').expectKey("r");
+    final String r = tokens.next().string();
+
+    tokens.expect(',').expectKey("g");
+    final String g = tokens.next().string();
+
+    tokens.expect(',').expectKey("d");
+    final String d = tokens.next().string();
+
+    tokens.expect(',').expectKey("pk");
+    final String pk = tokens.next().string();
+
+    String hdc = null;
+    if (tokens.consume(',')) {
+      hdc = tokens.expectKey("hdc").next().string();
+    }
+
+    tokens.expect('}').expectEnd();
+
+    return new VoucherHeader(pe, r, g, d, pk, hdc);
+  }
+
+  static VoucherHeader ofRegex(final String encoded) {
+    Matcher matcher = HEADER_PATTERN.matcher(encoded);
     if (!matcher.matches()) {
       throw new IllegalArgumentException();
     }
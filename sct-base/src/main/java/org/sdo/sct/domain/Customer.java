@@ -63,6 +63,20 @@ public class Customer {
     this.key = key;
   }
 
+  /**
+   * The customer's unique ID.
+   */
+  public Integer getId() {
+    return this.id;
+  }
+
+  /**
+   * A human-readable description of this customer.
+   */
+  public String getDescriptor() {
+    return this.descriptor;
+  }
+
   /**
    * The customer's public key text, if available.
    */
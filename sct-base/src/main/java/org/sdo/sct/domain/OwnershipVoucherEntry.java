@@ -17,7 +17,6 @@ import javax.persistence.Table;
 import org.bouncycastle.util.encoders.Base64;
 import org.sdo.sct.ResourceBundleHolder;
 import org.sdo.sct.Voucher;
-import org.sdo.sct.VoucherHeader;
 
 /**
  * The JPA Entity containing SDO vouchers.
@@ -92,13 +91,22 @@ public class OwnershipVoucherEntry {
     this.customer = customer;
 
     // set the device uuid from the voucher contents
-    String guid = VoucherHeader.of(Voucher.of(voucher).getOh()).getGuid().replace("\"", "");
+    String guid = Voucher.of(voucher).getHeader().getGuid().replace("\"", "");
     ByteBuffer bb = ByteBuffer.wrap(Base64.decode(guid));
     long high = bb.getLong();
     long low = bb.getLong();
     this.deviceUuid = new UUID(high, low).toString();
   }
 
+  /**
+   * The serial number of the device this voucher represents.
+   *
+   * @see DeviceState#getDeviceSerialNo()
+   */
+  public String getDeviceSerialNo() {
+    return this.deviceSerialNo;
+  }
+
   /**
    * The {@link Customer} to which the voucher has been assigned.
    *
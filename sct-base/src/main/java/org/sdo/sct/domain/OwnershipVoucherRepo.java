@@ -3,10 +3,30 @@
 
 package org.sdo.sct.domain;
 
+import java.util.List;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 /**
  * The Spring Data JPA repository for {@link OwnershipVoucherEntry} entities.
  */
 public interface OwnershipVoucherRepo extends JpaRepository<OwnershipVoucherEntry, String> {
+
+  /**
+   * Finds a page of the vouchers assigned to the customer with the given descriptor,
+   * in serial number order, starting after the given serial number.
+   *
+   * <p>Each page starts from the last serial of the one before, rather than an offset,
+   * so later pages cost no more to find than the first.  Customers are fetched with
+   * their vouchers, so the page can be used once its query is done.
+   */
+  @Query("select v from OwnershipVoucherEntry v join fetch v.customer c"
+      + " where c.descriptor = :descriptor and v.deviceSerialNo > :after"
+      + " order by v.deviceSerialNo")
+  List<OwnershipVoucherEntry> findByCustomerDescriptorAfter(
+      @Param("descriptor") String descriptor,
+      @Param("after") String after,
+      Pageable pageable);
 }
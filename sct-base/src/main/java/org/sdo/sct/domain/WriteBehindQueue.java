@@ -0,0 +1,683 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.domain;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.text.MessageFormat;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import org.hibernate.Session;
+import org.sdo.sct.ResourceBundleHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Writes {@link DeviceState} and {@link OwnershipVoucherEntry} records to the database
+ * behind their producers.
+ *
+ * <p>Records are queued and written by a background thread, many to a transaction.
+ * Each batch costs one query per table to find which records already exist, and then one
+ * JDBC batch of inserts and one of updates per table, so the cost of a commit is shared by
+ * every record in the batch.  A batch is written when it is full or when the flush interval
+ * passes, whichever comes first.
+ *
+ * <p>The queue is bounded.  When it is full, {@link #add} waits for room, and gives up with
+ * a {@link RejectedExecutionException} if none is made in time.
+ *
+ * <p>If a journal file is given, every record is appended to it, and forced to disk, before
+ * {@link #add} returns.  Producers which append while the journal is being forced share the
+ * next force, so the cost of a disk sync is spread over every record waiting for one.
+ * The journal is cut back to the records still queued after every
+ * flush.  Records left in the journal by a crash are queued again when the next instance
+ * starts.  Writes are idempotent, so a record journaled just before a crash and also
+ * written to the database is harmless.
+ *
+ * <p>A record stays queued, and journaled, until it is written.  If a batch can't be
+ * written, a trivial query checks whether the database is available.  If it isn't, the batch
+ * is put back at the head of the queue and retried later, waiting twice as long after each
+ * failure, up to {@link #MAX_BACKOFF}; so a database outage delays records rather than
+ * losing them.  If the database is available, the batch is split in half and each half is
+ * written separately, until the records the database refuses are found.  Each of those is
+ * appended to the dead-letter file, beside the journal, for an operator to correct and
+ * replay, and only then removed from the queue.  Without a journal, a refused record is
+ * logged in full instead.
+ */
+public class WriteBehindQueue implements AutoCloseable {
+
+  /**
+   * The longest wait between attempts to write to an unavailable database.
+   */
+  public static final Duration MAX_BACKOFF = Duration.ofMinutes(1);
+
+  /**
+   * The suffix added to the journal file name to name the dead-letter file.
+   */
+  public static final String DEAD_LETTER_SUFFIX = ".dead";
+
+  private static final String NULL_FIELD = "-";
+  private static final String FIELD_SEPARATOR = " ";
+  private static final int FIELD_COUNT = 8;
+
+  private static ResourceBundleHolder resourceBundleHolder_ =
+      new ResourceBundleHolder(WriteBehindQueue.class.getName());
+
+  private final EntityManager entityManager;
+  private final TransactionTemplate transactionTemplate;
+  private final int batchSize;
+  private final Duration maxWait;
+  private final Duration flushInterval;
+  private final Path journalPath;
+
+  private final BlockingDeque<Record> records = new LinkedBlockingDeque<>();
+  private final Semaphore room;
+  private final ScheduledExecutorService writer;
+  private final Object journalLock = new Object();
+  private final Object forceLock = new Object();
+  private FileChannel journal;
+  private long appendedCount = 0; // guarded by journalLock
+  private final AtomicLong forcedCount = new AtomicLong();
+  private Duration backoff = Duration.ZERO; // guarded by this
+  private long retryAt = 0; // guarded by this, in System.nanoTime() units
+
+  private final LongAdder writtenCount = new LongAdder();
+  private final LongAdder batchCount = new LongAdder();
+  private final LongAdder batchNanos = new LongAdder();
+  private final LongAdder failedCount = new LongAdder();
+  private final LongAdder deadLetterCount = new LongAdder();
+  private final LongAdder rejectedCount = new LongAdder();
+  private final long replayedCount;
+
+  /**
+   * Constructor.
+   *
+   * @param entityManagerFactory The factory for the target persistence unit.
+   * @param transactionManager   The transaction manager for the target persistence unit.
+   * @param capacity             The most records which may wait to be written.
+   * @param maxWait              How long {@link #add} waits for room in a full queue.
+   * @param batchSize            The most records to write in one transaction.
+   * @param flushInterval        How often queued records are written.
+   * @param journalPath          The journal file, or null to keep queued records only
+   *                             in memory.
+   *
+   * @throws UncheckedIOException if the journal can't be read or opened.
+   */
+  public WriteBehindQueue(
+      final EntityManagerFactory entityManagerFactory,
+      final PlatformTransactionManager transactionManager,
+      final int capacity,
+      final Duration maxWait,
+      final int batchSize,
+      final Duration flushInterval,
+      final Path journalPath) {
+
+    if (capacity < 1 || batchSize < 1) {
+      throw new IllegalArgumentException();
+    }
+
+    this.entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.batchSize = batchSize;
+    this.maxWait = maxWait;
+    this.flushInterval = flushInterval;
+    this.journalPath = journalPath;
+
+    long replayed = 0;
+    if (null != journalPath) {
+      try {
+        if (Files.exists(journalPath)) {
+          replayed = replay();
+        }
+        journal = FileChannel.open(journalPath,
+          StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    this.replayedCount = replayed;
+
+    // Replayed records may overfill the queue; producers wait until it drains.
+    room = new Semaphore(capacity - records.size());
+
+    writer = Executors.newSingleThreadScheduledExecutor(r -> {
+      final Thread thread = new Thread(r, "write-behind");
+      thread.setDaemon(true);
+      return thread;
+    });
+    writer.scheduleWithFixedDelay(this::flushUnlessWaiting,
+        flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Queues a device state, and optionally its voucher, to be written.
+   *
+   * @param state   The device state.
+   * @param voucher The voucher, or null if there is none.
+   *
+   * @throws RejectedExecutionException if the queue stays full for longer than the
+   *                                    maximum wait.
+   * @throws UncheckedIOException       if the record can't be journaled.
+   */
+  public void add(final DeviceState state, final OwnershipVoucherEntry voucher) {
+
+    try {
+      if (!room.tryAcquire(maxWait.toMillis(), TimeUnit.MILLISECONDS)) {
+        rejectedCount.increment();
+        throw new RejectedExecutionException(
+          resourceBundleHolder_.get().getString("queue.full"));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RejectedExecutionException(e);
+    }
+
+    final Record record = new Record(state, voucher);
+    final long position;
+    try {
+      synchronized (journalLock) {
+        if (null != journal) {
+          append(journal, List.of(record));
+          position = ++appendedCount;
+        } else {
+          position = 0;
+        }
+        records.add(record);
+      }
+    } catch (IOException e) {
+      room.release();
+      throw new UncheckedIOException(e);
+    }
+
+    try {
+      force(position);
+    } catch (IOException e) {
+      // The record is queued, and will be written; only its durability is in doubt.
+      throw new UncheckedIOException(e);
+    }
+
+    if (records.size() >= batchSize && !writer.isShutdown()) {
+      writer.execute(this::flushUnlessWaiting);
+    }
+  }
+
+  /**
+   * Writes every queued record.
+   *
+   * <p>Stops early if the database is unavailable, leaving the unwritten records at the head
+   * of the queue.  The background writer then waits before trying again; an explicit
+   * flush doesn't.
+   */
+  public synchronized void flush() {
+
+    final List<Record> batch = new ArrayList<>(batchSize);
+    while (0 < records.drainTo(batch, batchSize)) {
+      final List<Record> unwritten = new ArrayList<>();
+      final boolean available = writeOrIsolate(batch, unwritten);
+      batch.clear();
+      if (!available) {
+        // Retry in order, after a wait which grows while the database stays unavailable.
+        for (int i = unwritten.size() - 1; i >= 0; i--) {
+          records.addFirst(unwritten.get(i));
+        }
+        backoff = backoff.isZero() ? flushInterval : backoff.multipliedBy(2);
+        if (backoff.compareTo(MAX_BACKOFF) > 0) {
+          backoff = MAX_BACKOFF;
+        }
+        retryAt = System.nanoTime() + backoff.toNanos();
+        break;
+      }
+      backoff = Duration.ZERO;
+    }
+
+    try {
+      compact();
+    } catch (IOException e) {
+      LoggerFactory.getLogger(getClass()).error(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * The number of records waiting to be written.
+   */
+  public int getPendingCount() {
+    return records.size();
+  }
+
+  /**
+   * The number of records written.
+   */
+  public long getWrittenCount() {
+    return writtenCount.sum();
+  }
+
+  /**
+   * The number of transactions in which records were written.
+   */
+  public long getBatchCount() {
+    return batchCount.sum();
+  }
+
+  /**
+   * The total time spent in the transactions counted by {@link #getBatchCount()}.
+   */
+  public Duration getBatchTime() {
+    return Duration.ofNanos(batchNanos.sum());
+  }
+
+  /**
+   * The number of failed attempts to write a record.
+   */
+  public long getFailedCount() {
+    return failedCount.sum();
+  }
+
+  /**
+   * The number of records the database refused, moved to the dead-letter file.
+   */
+  public long getDeadLetterCount() {
+    return deadLetterCount.sum();
+  }
+
+  /**
+   * The number of records refused because the queue was full.
+   */
+  public long getRejectedCount() {
+    return rejectedCount.sum();
+  }
+
+  /**
+   * The number of records recovered from the journal at startup.
+   */
+  public long getReplayedCount() {
+    return replayedCount;
+  }
+
+  /**
+   * Stops the background writer and writes every queued record.
+   *
+   * <p>Records which still can't be written remain in the journal, if there is one.
+   */
+  @Override
+  public void close() {
+
+    writer.shutdown();
+    try {
+      writer.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flush();
+
+    synchronized (journalLock) {
+      if (null != journal) {
+        try {
+          journal.force(false);
+          forcedCount.accumulateAndGet(appendedCount, Math::max);
+          journal.close();
+        } catch (IOException e) {
+          LoggerFactory.getLogger(getClass()).error(e.getMessage(), e);
+        }
+        journal = null;
+      }
+    }
+  }
+
+  private synchronized void flushUnlessWaiting() {
+    if (backoff.isZero() || System.nanoTime() - retryAt >= 0) {
+      flush();
+    }
+  }
+
+  // Writes a batch, splitting it to find the records the database refuses, which are moved
+  // to the dead-letter file.  Returns false if the database is unavailable, with every
+  // record not yet written added to unwritten, in order.
+  private boolean writeOrIsolate(final List<Record> batch, final List<Record> unwritten) {
+
+    if (write(batch)) {
+      return true;
+    }
+    if (!isDatabaseAvailable()) {
+      unwritten.addAll(batch);
+      return false;
+    }
+    if (1 == batch.size()) {
+      if (!deadLetter(batch.get(0))) {
+        unwritten.addAll(batch);
+        return false;
+      }
+      return true;
+    }
+
+    final int half = batch.size() / 2;
+    if (!writeOrIsolate(batch.subList(0, half), unwritten)) {
+      unwritten.addAll(batch.subList(half, batch.size()));
+      return false;
+    }
+    return writeOrIsolate(batch.subList(half, batch.size()), unwritten);
+  }
+
+  private boolean write(final List<Record> batch) {
+
+    final long start = System.nanoTime();
+    try {
+      transactionTemplate.executeWithoutResult(status -> {
+        entityManager.unwrap(Session.class).setJdbcBatchSize(batchSize);
+
+        final List<OwnershipVoucherEntry> vouchers = new ArrayList<>(batch.size());
+        final List<DeviceState> states = new ArrayList<>(batch.size());
+        for (Record record : batch) {
+          if (null != record.voucher) {
+            vouchers.add(record.voucher);
+          }
+          states.add(record.state);
+        }
+
+        // Vouchers first, so that no device is marked finished without its voucher.
+        store(OwnershipVoucherEntry.class, "deviceSerialNo", vouchers,
+            OwnershipVoucherEntry::getDeviceSerialNo);
+        store(DeviceState.class, "deviceSerialNo", states, DeviceState::getDeviceSerialNo);
+      });
+
+      batchNanos.add(System.nanoTime() - start);
+      writtenCount.add(batch.size());
+      batchCount.increment();
+      room.release(batch.size());
+      return true;
+
+    } catch (RuntimeException e) {
+      failedCount.add(batch.size());
+      LoggerFactory.getLogger(getClass()).error(MessageFormat.format(
+          resourceBundleHolder_.get().getString("write.failed"), batch.size(), e.getMessage()), e);
+      return false;
+    }
+  }
+
+  private boolean isDatabaseAvailable() {
+    try {
+      transactionTemplate.executeWithoutResult(status -> entityManager
+          .createQuery("select count(e) from DeviceState e where e.deviceSerialNo is null")
+          .getSingleResult());
+      return true;
+    } catch (RuntimeException e) {
+      return false;
+    }
+  }
+
+  // Moves a record the database refuses out of the queue.  The record is on disk in the
+  // dead-letter file before it leaves the journal.  Returns false if it couldn't be saved.
+  private boolean deadLetter(final Record record) {
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+    if (null != journalPath) {
+      final Path deadLetters =
+          journalPath.resolveSibling(journalPath.getFileName() + DEAD_LETTER_SUFFIX);
+      try (FileChannel channel = FileChannel.open(deadLetters,
+          StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+        append(channel, List.of(record));
+        channel.force(false);
+      } catch (IOException e) {
+        logger.error(e.getMessage(), e);
+        return false;
+      }
+      logger.error(MessageFormat.format(
+          resourceBundleHolder_.get().getString("record.deadletter"),
+          record.state.getDeviceSerialNo(), deadLetters));
+    } else {
+      logger.error(MessageFormat.format(
+          resourceBundleHolder_.get().getString("record.refused"),
+          record.state.getDeviceSerialNo(), record.encode()));
+    }
+
+    deadLetterCount.increment();
+    room.release();
+    return true;
+  }
+
+  // Inserts new entities and updates existing ones.  Loading the existing entities first,
+  // in one query, spares merge() a SELECT per entity and lets both statements be batched.
+  private <T> void store(
+      final Class<T> type,
+      final String idAttribute,
+      final List<T> entities,
+      final Function<T, String> idOf) {
+
+    if (entities.isEmpty()) {
+      return;
+    }
+
+    final Map<String, T> byId = new HashMap<>();
+    for (T entity : entities) {
+      byId.put(idOf.apply(entity), entity); // the latest record for a device wins
+    }
+
+    final Collection<String> existing = entityManager
+        .createQuery("select e from " + type.getSimpleName()
+          + " e where e." + idAttribute + " in :ids", type)
+        .setParameter("ids", byId.keySet())
+        .getResultStream()
+        .map(idOf)
+        .collect(Collectors.toSet());
+
+    for (Map.Entry<String, T> entry : byId.entrySet()) {
+      if (existing.contains(entry.getKey())) {
+        entityManager.merge(entry.getValue());
+      } else {
+        entityManager.persist(entry.getValue());
+      }
+    }
+  }
+
+  // Forces the journal to disk up to the given record, unless another producer already has.
+  // Records appended while a force runs are covered by the next one.
+  private void force(final long position) throws IOException {
+
+    if (forcedCount.get() >= position) {
+      return;
+    }
+
+    synchronized (forceLock) {
+      if (forcedCount.get() >= position) {
+        return;
+      }
+
+      final long target;
+      final FileChannel channel;
+      synchronized (journalLock) {
+        target = appendedCount;
+        channel = journal;
+      }
+
+      try {
+        if (null != channel) {
+          channel.force(false);
+        }
+      } catch (ClosedChannelException e) {
+        // compact() or close() replaced the journal, and forced every record first.
+        if (forcedCount.get() < position) {
+          throw e;
+        }
+        return;
+      }
+      forcedCount.accumulateAndGet(target, Math::max);
+    }
+  }
+
+  // Cuts the journal back to the records still queued.  Producers wait while this runs,
+  // so no record can be appended to the old journal after the snapshot is taken.
+  private void compact() throws IOException {
+
+    synchronized (journalLock) {
+      if (null == journal) {
+        return;
+      }
+
+      if (records.isEmpty()) {
+        journal.truncate(0);
+        journal.force(false);
+        forcedCount.accumulateAndGet(appendedCount, Math::max);
+        return;
+      }
+
+      final Path next = journalPath.resolveSibling(journalPath.getFileName() + ".next");
+      try (FileChannel channel = FileChannel.open(next, StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        append(channel, records);
+        channel.force(false);
+      }
+
+      // Every record appended so far is either written or in the new journal, on disk.
+      forcedCount.accumulateAndGet(appendedCount, Math::max);
+      journal.close();
+      Files.move(next, journalPath,
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      journal = FileChannel.open(journalPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+  }
+
+  private long replay() throws IOException {
+
+    long count = 0;
+    final List<String> lines = Files.readAllLines(journalPath, StandardCharsets.UTF_8);
+    for (String line : lines) {
+      try {
+        records.add(Record.decode(line));
+        count++;
+      } catch (RuntimeException e) {
+        // A crash mid-append leaves a partial last line; nothing else should be malformed.
+        LoggerFactory.getLogger(getClass()).warn(MessageFormat.format(
+            resourceBundleHolder_.get().getString("journal.corrupt"), journalPath, line));
+      }
+    }
+
+    if (0 < count) {
+      LoggerFactory.getLogger(getClass()).info(MessageFormat.format(
+          resourceBundleHolder_.get().getString("journal.replayed"), count, journalPath));
+    }
+    return count;
+  }
+
+  private static void append(final FileChannel channel, final Collection<Record> records)
+      throws IOException {
+
+    final StringBuilder text = new StringBuilder();
+    for (Record record : records) {
+      text.append(record.encode()).append('\n');
+    }
+    final ByteBuffer bytes = StandardCharsets.UTF_8.encode(text.toString());
+    while (bytes.hasRemaining()) {
+      channel.write(bytes);
+    }
+  }
+
+  /**
+   * A queued device state and its voucher, if any.
+   *
+   * <p>In the journal, a record is a single line of {@value #FIELD_COUNT} fields, each either
+   * {@value #NULL_FIELD} or the base 64 encoding of its UTF-8 text.
+   */
+  private static class Record {
+
+    final DeviceState state;
+    final OwnershipVoucherEntry voucher;
+
+    Record(final DeviceState state, final OwnershipVoucherEntry voucher) {
+      this.state = state;
+      this.voucher = voucher;
+    }
+
+    static Record decode(final String line) {
+
+      final String[] fields = line.split(FIELD_SEPARATOR, -1);
+      if (FIELD_COUNT != fields.length) {
+        throw new IllegalArgumentException(line);
+      }
+
+      final String diStart = decodeField(fields[1]);
+      final String diEnd = decodeField(fields[2]);
+      final String status = decodeField(fields[4]);
+      final DeviceState state = new DeviceState(
+          decodeField(fields[0]),
+          null == diStart ? null : new Timestamp(Long.parseLong(diStart)),
+          null == diEnd ? null : new Timestamp(Long.parseLong(diEnd)),
+          decodeField(fields[3]),
+          null == status ? null : Integer.valueOf(status),
+          decodeField(fields[5]));
+
+      final String voucherText = decodeField(fields[6]);
+      final String customerId = decodeField(fields[7]);
+      final OwnershipVoucherEntry voucher = null == voucherText
+          ? null
+          : new OwnershipVoucherEntry(state.getDeviceSerialNo(), voucherText,
+            null == customerId ? null : new Customer(Integer.valueOf(customerId), null, null));
+
+      return new Record(state, voucher);
+    }
+
+    String encode() {
+
+      final String[] fields = new String[FIELD_COUNT];
+      fields[0] = state.getDeviceSerialNo();
+      fields[1] = null == state.getDiStart() ? null : String.valueOf(state.getDiStart().getTime());
+      fields[2] = null == state.getDiEnd() ? null : String.valueOf(state.getDiEnd().getTime());
+      fields[3] = state.getSessionData();
+      fields[4] = null == state.getStatus() ? null : state.getStatus().toString();
+      fields[5] = state.getDetails();
+      if (null != voucher) {
+        fields[6] = voucher.getVoucher();
+        fields[7] = null == voucher.getCustomer() ? null : voucher.getCustomer().getId().toString();
+      }
+
+      final StringBuilder line = new StringBuilder();
+      for (int i = 0; i < FIELD_COUNT; i++) {
+        if (0 < i) {
+          line.append(FIELD_SEPARATOR);
+        }
+        line.append(encodeField(fields[i]));
+      }
+      return line.toString();
+    }
+
+    private static String decodeField(final String field) {
+      return NULL_FIELD.equals(field)
+        ? null
+        : new String(Base64.getDecoder().decode(field), StandardCharsets.UTF_8);
+    }
+
+    private static String encodeField(final String field) {
+      return null == field
+        ? NULL_FIELD
+        : Base64.getEncoder().encodeToString(field.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+}
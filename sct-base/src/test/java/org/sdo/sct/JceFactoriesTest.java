@@ -0,0 +1,112 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.security.cert.CertificateFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class JceFactoriesTest {
+
+  @Test
+  void testPooled() throws Exception {
+
+    KeyFactory ec;
+    try (JceFactories.Lease<KeyFactory> lease =
+        JceFactories.keyFactory("EC", BouncyCastleSingleton.INSTANCE)) {
+      ec = lease.get();
+      assertEquals(BouncyCastleSingleton.INSTANCE, ec.getProvider());
+
+      // An instance in use isn't lent again.
+      try (JceFactories.Lease<KeyFactory> other =
+          JceFactories.keyFactory("EC", BouncyCastleSingleton.INSTANCE)) {
+        assertNotSame(ec, other.get());
+        ec = other.get(); // returned first, so lent first
+      }
+      try (JceFactories.Lease<KeyFactory> other =
+          JceFactories.keyFactory("RSA", BouncyCastleSingleton.INSTANCE)) {
+        assertNotSame(ec, other.get());
+      }
+      try (JceFactories.Lease<KeyFactory> other = JceFactories.keyFactory("EC", null)) {
+        assertNotSame(ec, other.get());
+      }
+    }
+
+    // A returned instance is lent again.
+    try (JceFactories.Lease<KeyFactory> lease =
+        JceFactories.keyFactory("EC", BouncyCastleSingleton.INSTANCE)) {
+      assertSame(ec, lease.get());
+    }
+
+    CertificateFactory certificateFactory;
+    try (JceFactories.Lease<CertificateFactory> lease =
+        JceFactories.certificateFactory("X.509", null)) {
+      certificateFactory = lease.get();
+    }
+    try (JceFactories.Lease<CertificateFactory> lease =
+        JceFactories.certificateFactory("X.509", null)) {
+      assertSame(certificateFactory, lease.get());
+    }
+
+    JceFactories.Lease<Signature> closed =
+        JceFactories.signature("SHA256withECDSA", BouncyCastleSingleton.INSTANCE);
+    closed.close();
+    closed.close();
+    assertThrows(IllegalStateException.class, closed::get);
+
+    assertThrows(NoSuchAlgorithmException.class, () -> JceFactories.keyFactory("NONE", null));
+  }
+
+  @Test
+  void testBounded() throws Exception {
+
+    List<JceFactories.Lease<MessageDigest>> leases = new ArrayList<>();
+    Set<MessageDigest> lent = new HashSet<>();
+    for (int i = 0; i < JceFactories.MAX_IDLE + 10; i++) {
+      leases.add(JceFactories.messageDigest("SHA-512", null));
+      lent.add(leases.get(i).get());
+    }
+    leases.forEach(JceFactories.Lease::close);
+
+    // Only the first MAX_IDLE instances returned are kept.
+    Set<MessageDigest> reused = new HashSet<>();
+    leases.clear();
+    for (int i = 0; i < JceFactories.MAX_IDLE + 10; i++) {
+      leases.add(JceFactories.messageDigest("SHA-512", null));
+      if (lent.contains(leases.get(i).get())) {
+        reused.add(leases.get(i).get());
+      }
+    }
+    leases.forEach(JceFactories.Lease::close);
+    assertEquals(JceFactories.MAX_IDLE, reused.size());
+  }
+
+  @Test
+  void testMessageDigestReset() throws Exception {
+
+    byte[] data = "data".getBytes(StandardCharsets.UTF_8);
+    byte[] expected = MessageDigest.getInstance("SHA-256").digest(data);
+
+    try (JceFactories.Lease<MessageDigest> md = JceFactories.messageDigest("SHA-256", null)) {
+      md.get().update("left over".getBytes(StandardCharsets.UTF_8));
+    }
+    try (JceFactories.Lease<MessageDigest> md = JceFactories.messageDigest("SHA-256", null)) {
+      assertArrayEquals(expected, md.get().digest(data));
+    }
+  }
+}
@@ -0,0 +1,30 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+class KeyFinderControllerTest {
+
+  final PasswordCallbackFunction pw = "123456"::toCharArray;
+
+  @Test
+  void testReload() throws Exception {
+
+    KeyStoresFactory keyStoresFactory =
+        new KeyStoresFactory(pw, new ClassPathResource("org/sdo/sct/test.p12"));
+    keyStoresFactory.setSingleton(false);
+    KeyFinder keyFinder = new KeyFinder(keyStoresFactory.getObject(), pw);
+    KeyFinderController controller = new KeyFinderController(keyFinder);
+
+    String body = controller.reload().call();
+    assertEquals(1, keyFinder.getReloadCount());
+    assertTrue(body.contains("\"ECDSA_P_256\""), body);
+    assertTrue(body.endsWith(",\"reloadCount\":1}"), body);
+  }
+}
@@ -0,0 +1,80 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.security.KeyStore;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+class KeyFinderTest {
+
+  final PasswordCallbackFunction pw = "123456"::toCharArray;
+
+  KeyStores loadKeyStores() throws Exception {
+    KeyStoresFactory keyStoresFactory =
+        new KeyStoresFactory(pw, new ClassPathResource("org/sdo/sct/test.p12"));
+    keyStoresFactory.setSingleton(false);
+    return keyStoresFactory.getObject();
+  }
+
+  @Test
+  void testIndex() throws Exception {
+
+    final AtomicInteger probes = new AtomicInteger();
+    KeyFinder keyFinder = new KeyFinder(loadKeyStores(), pw) {
+      @Override
+      boolean isValidSigningKey(KeyStore keyStore, String alias) {
+        probes.incrementAndGet();
+        return super.isValidSigningKey(keyStore, alias);
+      }
+    };
+
+    // The index is built before the first lookup, and lookups never search.
+    final int probesPerBuild = probes.get();
+    assertTrue(probesPerBuild > 0);
+
+    assertTrue(keyFinder.find(KeyType.ECDSA_P_256).isPresent());
+    assertTrue(keyFinder.find(KeyType.ECDSA_P_384).isPresent());
+    assertTrue(keyFinder.find(KeyType.RSA2048RESTR).isPresent());
+    assertFalse(keyFinder.find(KeyType.NONE).isPresent());
+    assertEquals(probesPerBuild, probes.get());
+
+    keyFinder.reload();
+    assertEquals(2 * probesPerBuild, probes.get());
+    assertEquals(4, keyFinder.getLookupCount());
+  }
+
+  @Test
+  void testRefresh() throws Exception {
+
+    final AtomicInteger probes = new AtomicInteger();
+    KeyFinder keyFinder = new KeyFinder(loadKeyStores(), pw, Duration.ofMillis(10)) {
+      @Override
+      boolean isValidSigningKey(KeyStore keyStore, String alias) {
+        probes.incrementAndGet();
+        return super.isValidSigningKey(keyStore, alias);
+      }
+    };
+
+    try {
+      final int probesPerBuild = probes.get();
+
+      // The index is rebuilt in the background, without a lookup to trigger it.
+      final long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+      while (probes.get() < 2 * probesPerBuild && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      assertTrue(probes.get() >= 2 * probesPerBuild);
+      assertTrue(keyFinder.find(KeyType.ECDSA_P_256).isPresent());
+    } finally {
+      keyFinder.destroy();
+    }
+  }
+}
@@ -0,0 +1,40 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import org.junit.jupiter.api.Test;
+
+class PublicKeyCacheTest {
+
+  @Test
+  void testDecode() throws Exception {
+
+    KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC", BouncyCastleSingleton.INSTANCE);
+    kpg.initialize(256, SecureRandom.getInstance("SHA1PRNG"));
+    String first = KeyCodec.encode(kpg.generateKeyPair().getPublic());
+    String second = KeyCodec.encode(kpg.generateKeyPair().getPublic());
+
+    PublicKeyCache cache = new PublicKeyCache(1);
+    PublicKey key = cache.decode(first);
+    assertSame(key, cache.decode(first));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+
+    // The second key evicts the first.
+    cache.decode(second);
+    assertNotSame(key, cache.decode(first));
+    assertEquals(3, cache.getMissCount());
+
+    assertThrows(IllegalArgumentException.class, () -> cache.decode(null));
+    assertThrows(IllegalArgumentException.class, () -> new PublicKeyCache(0));
+  }
+}
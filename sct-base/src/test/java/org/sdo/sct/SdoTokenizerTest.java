@@ -0,0 +1,155 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.URI;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class SdoTokenizerTest {
+
+  static Stream<Arguments> voucherProvider() throws Exception {
+    List<Arguments> args = new ArrayList<>();
+    for (KeyType keyType :
+        List.of(KeyType.RSA2048RESTR, KeyType.ECDSA_P_256, KeyType.ECDSA_P_384)) {
+      for (String dc : new String[] {null, "[1,0,[]]"}) {
+        args.add(Arguments.arguments(buildVoucher(keyType, dc, 3)));
+      }
+    }
+    return args.stream();
+  }
+
+  static List<Voucher> buildVoucher(KeyType keyType, String dc, int hops) throws Exception {
+
+    KeyPairGenerator kpg =
+        KeyPairGenerator.getInstance(keyType.getJceAlgorithm(), BouncyCastleSingleton.INSTANCE);
+    switch (keyType) {
+      case RSA2048RESTR:
+        kpg.initialize(2048, SecureRandom.getInstance("SHA1PRNG"));
+        break;
+      case ECDSA_P_256:
+        kpg.initialize(new ECGenParameterSpec("secp256r1"), SecureRandom.getInstance("SHA1PRNG"));
+        break;
+      default:
+        kpg.initialize(new ECGenParameterSpec("secp384r1"), SecureRandom.getInstance("SHA1PRNG"));
+        break;
+    }
+
+    KeyPair owner = kpg.generateKeyPair();
+    VoucherHeader oh = new VoucherHeader(
+        new RendezvousInfoBuilder().with(URI.create("http://localhost:8040?delaysec=5")).build(),
+        UUID.randomUUID(),
+        "device {info} with \"quotes\"",
+        owner.getPublic(),
+        null == dc ? null : new Hash.Null());
+
+    List<Voucher> vouchers = new ArrayList<>();
+    Voucher voucher = new Voucher(
+        oh.toString(), new HashCodec().encode(new Hash.Null()), dc, Collections.emptyList());
+    vouchers.add(voucher);
+
+    for (int i = 0; i < hops; i++) {
+      KeyPair next = kpg.generateKeyPair();
+      Signature signer = CryptoLevel.of(keyType)
+          .buildSignature(owner.getPrivate(), BouncyCastleSingleton.INSTANCE);
+      signer.initSign(owner.getPrivate());
+      voucher = voucher.assign(next.getPublic(), signer);
+      vouchers.add(voucher);
+      owner = next;
+    }
+
+    return vouchers;
+  }
+
+  @ParameterizedTest
+  @MethodSource("voucherProvider")
+  void testVoucherDecodersAgree(List<Voucher> vouchers) {
+
+    for (Voucher voucher : vouchers) {
+      final String text = voucher.toString();
+      final Voucher expected = Voucher.ofRegex(text);
+      final Voucher actual = Voucher.ofTokens(text);
+
+      assertEquals(expected.getOh(), actual.getOh());
+      assertEquals(expected.getHmac(), actual.getHmac());
+      assertEquals(expected.getDc(), actual.getDc());
+      assertEquals(expected.getEn(), actual.getEn());
+      assertEquals(text, actual.toString());
+
+      assertEquals(
+          VoucherHeader.ofRegex(expected.getOh()).toString(),
+          VoucherHeader.ofTokens(actual.getOh()).toString());
+
+      String pk = VoucherHeader.ofTokens(actual.getOh()).getPublicKey();
+      assertEquals(KeyCodec.decodeRegex(pk), KeyCodec.decodeTokens(pk));
+
+      for (String en : actual.getEn()) {
+        VoucherEntry expectedEntry = VoucherEntry.ofRegex(en);
+        VoucherEntry actualEntry = VoucherEntry.ofTokens(en);
+        assertEquals(expectedEntry.getBo(), actualEntry.getBo());
+        assertEquals(expectedEntry.getSg(), actualEntry.getSg());
+        assertEquals(en, actualEntry.toString());
+
+        VoucherEntry.Body expectedBody = VoucherEntry.Body.ofRegex(actualEntry.getBo());
+        VoucherEntry.Body actualBody = VoucherEntry.Body.ofTokens(actualEntry.getBo());
+        assertEquals(expectedBody.toString(), actualBody.toString());
+        assertEquals(
+            KeyCodec.decodeRegex(expectedBody.getPk()),
+            KeyCodec.decodeTokens(actualBody.getPk()));
+      }
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+    "",
+    "{}",
+    "{\"sz\":0,\"oh\":{},\"hmac\":[0,0,\"\"]}",
+    "{\"sz\":0,\"oh\":{},\"hmac\":[0,0,\"\"],\"en\":[]",
+    "{\"sz\":1,\"oh\":{},\"hmac\":[0,0,\"\"],\"en\":[]}",
+    "{\"sz\":0,\"oh\":{},\"hmac\":[0,0,\"\"],\"en\":[]}}",
+  })
+  void testBadVouchers(String encoded) {
+    assertThrows(IllegalArgumentException.class, () -> Voucher.ofRegex(encoded));
+    assertThrows(IllegalArgumentException.class, () -> Voucher.ofTokens(encoded));
+  }
+
+  @Test
+  void testSlices() {
+    SdoTokenizer tokens = new SdoTokenizer("[12,\"ab,c\",{\"x\":[1,2]},345]");
+
+    tokens.expect('[');
+    assertEquals(12, tokens.nextDigits().intValue());
+    tokens.expect(',');
+    assertEquals("\"ab,c\"", tokens.next().slice().toString());
+    tokens.expect(',');
+    assertEquals("{\"x\":[1,2]}", tokens.next().string());
+    assertEquals(11, tokens.begin());
+    assertEquals(22, tokens.end());
+    tokens.expect(',');
+    assertEquals(345, tokens.next().intValue());
+    tokens.expect(']').expectEnd();
+
+    assertThrows(IllegalArgumentException.class, () -> new SdoTokenizer("[1,2").next());
+    assertThrows(IllegalArgumentException.class, () -> new SdoTokenizer("\"abc").next());
+    assertThrows(IllegalArgumentException.class, () -> new SdoTokenizer("").next());
+    assertThrows(IllegalArgumentException.class, () -> new SdoTokenizer("ab\"c\"").next());
+  }
+}
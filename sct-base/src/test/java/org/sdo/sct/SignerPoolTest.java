@@ -0,0 +1,86 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.security.PublicKey;
+import java.security.Signature;
+import java.time.Duration;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+class SignerPoolTest {
+
+  final PasswordCallbackFunction pw = "123456"::toCharArray;
+
+  KeyFinder buildKeyFinder() throws Exception {
+    KeyStoresFactory keyStoresFactory =
+        new KeyStoresFactory(pw, new ClassPathResource("org/sdo/sct/test.p12"));
+    keyStoresFactory.setSingleton(false);
+    return new KeyFinder(keyStoresFactory.getObject(), pw);
+  }
+
+  @Test
+  void testReuse() throws Exception {
+
+    SignerPool pool = new SignerPool(buildKeyFinder(), pw, 1, Duration.ofSeconds(1));
+
+    Signature first = pool.apply(KeyType.ECDSA_P_256, Function.identity());
+    Signature second = pool.apply(KeyType.ECDSA_P_256, Function.identity());
+    assertSame(first, second);
+    assertEquals(1, pool.getCreatedCount());
+
+    // A signer whose borrower failed is never handed out again.
+    assertThrows(IllegalStateException.class, () -> pool.apply(KeyType.ECDSA_P_256, signer -> {
+      throw new IllegalStateException();
+    }));
+    assertNotSame(first, pool.apply(KeyType.ECDSA_P_256, Function.identity()));
+    assertEquals(2, pool.getCreatedCount());
+
+    // Each key type has its own pool.
+    pool.apply(KeyType.RSA2048RESTR, Function.identity());
+    assertEquals(3, pool.getCreatedCount());
+    assertEquals(5, pool.getBorrowCount());
+    assertEquals(0, pool.getExhaustedCount());
+
+    assertThrows(NoSuchKeyException.class,
+        () -> pool.apply(KeyType.NONE, Function.identity()));
+  }
+
+  @Test
+  void testSignerKey() throws Exception {
+
+    KeyFinder keyFinder = buildKeyFinder();
+    SignerPool pool = new SignerPool(keyFinder, pw);
+
+    PublicKey expected =
+        keyFinder.find(KeyType.ECDSA_P_256).orElseThrow().getCertificate().getPublicKey();
+    assertEquals(expected, pool.apply(KeyType.ECDSA_P_256, (signer, signerKey) -> signerKey));
+  }
+
+  @Test
+  void testExhaustion() throws Exception {
+
+    SignerPool pool = new SignerPool(buildKeyFinder(), pw, 1, Duration.ZERO);
+
+    // The only pooled signer is held by the outer borrower, so the inner one gets an extra.
+    pool.apply(KeyType.ECDSA_P_384, outer -> {
+      assertNotSame(outer, pool.apply(KeyType.ECDSA_P_384, Function.identity()));
+      return outer;
+    });
+
+    assertEquals(1, pool.getExhaustedCount());
+    assertEquals(2, pool.getCreatedCount());
+
+    // Only one of the two signers fit back in the pool.
+    pool.apply(KeyType.ECDSA_P_384, Function.identity());
+    pool.apply(KeyType.ECDSA_P_384, Function.identity());
+    assertEquals(2, pool.getCreatedCount());
+  }
+}
@@ -3,7 +3,9 @@
 
 package org.sdo.sct;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -13,6 +15,7 @@ import java.security.KeyPairGenerator;
 import java.security.SecureRandom;
 import java.security.Signature;
 import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 import org.junit.jupiter.api.Test;
 
@@ -83,4 +86,88 @@ class VoucherTest {
     assertFalse(v2.isOwner(own2Signer));
     assertTrue(v3.isOwner(own2Signer));
   }
+
+  @Test
+  void testAssignWithSignerKey() throws Exception {
+
+    // Keys from the default provider, so that the owner key decoded from the voucher
+    // and the signer key come from different providers.
+    KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+    keyPairGenerator.initialize(256, SecureRandom.getInstance("SHA1PRNG"));
+
+    KeyPair mfrKeys = keyPairGenerator.generateKeyPair();
+    KeyPair ownKeys = keyPairGenerator.generateKeyPair();
+
+    VoucherHeader vh = new VoucherHeader(
+      new RendezvousInfoBuilder().with(URI.create("http://localhost")).build(),
+      UUID.randomUUID(),
+      "test",
+      mfrKeys.getPublic(),
+      null);
+
+    Voucher v1 = new Voucher(
+      vh.toString(),
+      new Hash.Null().toString(),
+      null,
+      Collections.emptyList());
+
+    Signature mfrSigner = Signature.getInstance("SHA256withECDSA");
+    mfrSigner.initSign(mfrKeys.getPrivate());
+
+    assertThrows(
+      SignerNotOwnerException.class,
+      () -> v1.assign(ownKeys.getPublic(), mfrSigner, ownKeys.getPublic()));
+
+    Voucher v2 = v1.assign(ownKeys.getPublic(), mfrSigner, mfrKeys.getPublic());
+    assertTrue(KeyUtils.isSameKey(ownKeys.getPublic(), v2.getOwnerKey()));
+    assertFalse(KeyUtils.isSameKey(mfrKeys.getPublic(), v2.getOwnerKey()));
+  }
+
+  @Test
+  void testMemoizedDecoding() throws Exception {
+
+    Voucher built = SdoTokenizerTest.buildVoucher(KeyType.ECDSA_P_256, null, 2).get(2);
+    Voucher v1 = Voucher.of(built.toString());
+    Voucher v2 = Voucher.of(built.toString());
+
+    assertSame(v1.getHeader(), v1.getHeader());
+    assertSame(v1.getEntry(1), v1.getEntry(1));
+    assertSame(v1.getOwnerKey(), v1.getOwnerKey());
+
+    // Vouchers with the same owner share one decoded key.
+    assertSame(v1.getOwnerKey(), v2.getOwnerKey());
+    assertTrue(KeyUtils.isSameKey(built.getOwnerKey(), v1.getOwnerKey()));
+  }
+
+  @Test
+  void testChainState() throws Exception {
+
+    List<Voucher> chain = SdoTokenizerTest.buildVoucher(KeyType.ECDSA_P_384, null, 4);
+    Voucher last = chain.get(chain.size() - 1);
+    Voucher decoded = Voucher.of(last.toString());
+
+    // Chain state carried forward by assign matches state computed from scratch.
+    assertEquals(decoded.getHeaderHash(), last.getHeaderHash());
+    assertEquals(decoded.getLastEntryHash(), last.getLastEntryHash());
+
+    for (int i = 1; i < chain.size(); i++) {
+      VoucherEntry.Body body = VoucherEntry.Body.of(decoded.getEntry(i - 1).getBo());
+      assertEquals(Voucher.of(chain.get(i - 1).toString()).getLastEntryHash(), body.getHp());
+      assertEquals(decoded.getHeaderHash(), body.getHc());
+    }
+  }
+
+  @Test
+  void testPreEncodedRendezvous() throws Exception {
+
+    KeyPair keys = KeyPairGenerator.getInstance("EC").generateKeyPair();
+    RendezvousInfo r = new RendezvousInfoBuilder()
+        .with(URI.create("http://localhost:8040?delaysec=5"))
+        .build();
+    UUID g = UUID.randomUUID();
+
+    assertEquals(
+        new VoucherHeader(r, g, "test", keys.getPublic(), null).toString(),
+        new VoucherHeader(r.toString(), g, "test", keys.getPublic(), null).toString());
+  }
 }
@@ -0,0 +1,280 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.domain;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+class WriteBehindQueueTest {
+
+  @TempDir
+  Path tempDir;
+
+  EmbeddedDatabase database;
+  EntityManagerFactory entityManagerFactory;
+  FailingTransactionManager transactionManager;
+
+  // Fails every transaction while failing is set, as a database outage would.
+  static class FailingTransactionManager implements PlatformTransactionManager {
+
+    final PlatformTransactionManager delegate;
+    volatile boolean failing = false;
+
+    FailingTransactionManager(PlatformTransactionManager delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public TransactionStatus getTransaction(TransactionDefinition definition) {
+      if (failing) {
+        throw new CannotCreateTransactionException("database is down");
+      }
+      return delegate.getTransaction(definition);
+    }
+
+    @Override
+    public void commit(TransactionStatus status) {
+      delegate.commit(status);
+    }
+
+    @Override
+    public void rollback(TransactionStatus status) {
+      delegate.rollback(status);
+    }
+  }
+
+  @BeforeEach
+  void setUp() {
+
+    database = new EmbeddedDatabaseBuilder()
+      .setType(EmbeddedDatabaseType.H2)
+      .setName(UUID.randomUUID().toString())
+      .build();
+
+    Properties properties = new Properties();
+    properties.setProperty("hibernate.hbm2ddl.auto", "create-drop");
+
+    LocalContainerEntityManagerFactoryBean factoryBean =
+        new LocalContainerEntityManagerFactoryBean();
+    factoryBean.setDataSource(database);
+    factoryBean.setPackagesToScan("org.sdo.sct.domain");
+    factoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+    factoryBean.setJpaProperties(properties);
+    factoryBean.afterPropertiesSet();
+    entityManagerFactory = factoryBean.getObject();
+
+    transactionManager =
+        new FailingTransactionManager(new JpaTransactionManager(entityManagerFactory));
+  }
+
+  @AfterEach
+  void tearDown() {
+    entityManagerFactory.close();
+    database.shutdown();
+  }
+
+  WriteBehindQueue buildQueue(int capacity, Path journal) {
+    return new WriteBehindQueue(entityManagerFactory, transactionManager,
+      capacity, Duration.ofMillis(10), 100, Duration.ofHours(1), journal);
+  }
+
+  DeviceState state(String serial, int status) {
+    return new DeviceState(serial, Timestamp.from(Instant.now()), null, "session", status, null);
+  }
+
+  DeviceState find(String serial) {
+    EntityManager entityManager = entityManagerFactory.createEntityManager();
+    try {
+      return entityManager.find(DeviceState.class, serial);
+    } finally {
+      entityManager.close();
+    }
+  }
+
+  @Test
+  void testWrite() {
+
+    WriteBehindQueue queue = buildQueue(10, null);
+    try {
+      queue.add(state("device-1", 0), null);
+      queue.add(state("device-2", 0), null);
+      assertEquals(2, queue.getPendingCount());
+
+      queue.flush();
+      assertEquals(0, queue.getPendingCount());
+      assertEquals(2, queue.getWrittenCount());
+      assertEquals(1, queue.getBatchCount());
+
+      // A later record for the same device updates it.
+      queue.add(state("device-1", 1), null);
+      queue.flush();
+      assertEquals(1, find("device-1").getStatus().intValue());
+    } finally {
+      queue.close();
+    }
+  }
+
+  @Test
+  void testBackpressure() {
+
+    WriteBehindQueue queue = buildQueue(2, null);
+    try {
+      queue.add(state("device-1", 0), null);
+      queue.add(state("device-2", 0), null);
+      assertThrows(RejectedExecutionException.class,
+          () -> queue.add(state("device-3", 0), null));
+      assertEquals(1, queue.getRejectedCount());
+
+      // Writing the queue makes room.
+      queue.flush();
+      queue.add(state("device-3", 0), null);
+      assertEquals(1, queue.getPendingCount());
+    } finally {
+      queue.close();
+    }
+  }
+
+  @Test
+  void testFailedBatch() {
+
+    WriteBehindQueue queue = buildQueue(10, null);
+    try {
+      queue.add(state("device-1", 0), null);
+      queue.add(state("device-2", 0), null);
+
+      // A failed batch stays queued, and is written once the database is back.
+      transactionManager.failing = true;
+      queue.flush();
+      assertEquals(2, queue.getFailedCount());
+      assertEquals(2, queue.getPendingCount());
+      assertEquals(0, queue.getWrittenCount());
+
+      transactionManager.failing = false;
+      queue.flush();
+      assertEquals(0, queue.getPendingCount());
+      assertEquals(2, queue.getWrittenCount());
+      assertEquals(0, queue.getDeadLetterCount());
+      assertTrue(null != find("device-1"));
+
+      // However long the database is down, no record is dropped.
+      queue.add(state("device-3", 0), null);
+      transactionManager.failing = true;
+      for (int i = 0; i < 10; i++) {
+        queue.flush();
+      }
+      assertEquals(1, queue.getPendingCount());
+      assertEquals(0, queue.getDeadLetterCount());
+      transactionManager.failing = false;
+      queue.flush();
+      assertTrue(null != find("device-3"));
+    } finally {
+      queue.close();
+    }
+  }
+
+  @Test
+  void testDeadLetter() throws Exception {
+
+    Path journal = tempDir.resolve("queue.journal");
+    WriteBehindQueue queue = buildQueue(10, journal);
+    try {
+      queue.add(state("device-1", 0), null);
+      // di_start may not be null, so the database refuses this record.
+      queue.add(new DeviceState("device-2", null, null, "session", 0, null), null);
+      queue.add(state("device-3", 0), null);
+      queue.flush();
+
+      // The refused record is found and set aside, and the records around it are written.
+      assertEquals(0, queue.getPendingCount());
+      assertEquals(2, queue.getWrittenCount());
+      assertEquals(1, queue.getDeadLetterCount());
+      assertTrue(null != find("device-1"));
+      assertTrue(null != find("device-3"));
+      assertEquals(0, Files.size(journal));
+      Path deadLetters = journal.resolveSibling("queue.journal" + WriteBehindQueue.DEAD_LETTER_SUFFIX);
+      assertEquals(1, Files.readAllLines(deadLetters).size());
+    } finally {
+      queue.close();
+    }
+  }
+
+  @Test
+  void testJournalReplay() throws Exception {
+
+    Path journal = tempDir.resolve("queue.journal");
+    WriteBehindQueue crashed = buildQueue(10, journal);
+    crashed.add(state("device-1", 0), null);
+    crashed.add(state("device-2", 0), null);
+    assertEquals(2, Files.readAllLines(journal).size());
+
+    // A crash mid-append leaves a partial last line, which is skipped.
+    Files.write(journal, "ZGV2aWNl".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+
+    // A new queue finds the unwritten records in the journal, as it would after a crash.
+    WriteBehindQueue restarted = buildQueue(10, journal);
+    try {
+      assertEquals(2, restarted.getReplayedCount());
+      assertEquals(2, restarted.getPendingCount());
+      restarted.flush();
+      assertEquals(2, restarted.getWrittenCount());
+      assertTrue(null != find("device-2"));
+      assertEquals(0, Files.size(journal));
+    } finally {
+      restarted.close();
+      crashed.close();
+    }
+  }
+
+  @Test
+  void testJournalCompaction() throws Exception {
+
+    Path journal = tempDir.resolve("queue.journal");
+    WriteBehindQueue queue = buildQueue(10, journal);
+    try {
+      queue.add(state("device-1", 0), null);
+      transactionManager.failing = true;
+      queue.flush();
+
+      // The journal keeps only the records still queued.
+      queue.add(state("device-2", 0), null);
+      assertEquals(2, Files.readAllLines(journal).size());
+      transactionManager.failing = false;
+      queue.flush();
+      assertEquals(0, Files.size(journal));
+      assertFalse(Files.exists(journal.resolveSibling("queue.journal.next")));
+    } finally {
+      queue.close();
+    }
+  }
+}
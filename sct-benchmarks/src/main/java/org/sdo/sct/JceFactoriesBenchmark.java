@@ -0,0 +1,78 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct;
+
+import java.security.KeyFactory;
+import java.security.Signature;
+import java.security.cert.CertificateFactory;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BouncyCastle engine lookup with <code>getInstance</code> and with {@link JceFactories}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JceFactoriesBenchmark {
+
+  @Benchmark
+  public KeyFactory keyFactoryGetInstance() throws Exception {
+    return KeyFactory.getInstance("EC", BouncyCastleSingleton.INSTANCE);
+  }
+
+  /**
+   * Borrows a pooled KeyFactory and returns it.
+   */
+  @Benchmark
+  public KeyFactory keyFactory() throws Exception {
+    try (JceFactories.Lease<KeyFactory> lease =
+        JceFactories.keyFactory("EC", BouncyCastleSingleton.INSTANCE)) {
+      return lease.get();
+    }
+  }
+
+  @Benchmark
+  public CertificateFactory certificateFactoryGetInstance() throws Exception {
+    return CertificateFactory.getInstance("X.509", BouncyCastleSingleton.INSTANCE);
+  }
+
+  /**
+   * Borrows a pooled CertificateFactory and returns it.
+   */
+  @Benchmark
+  public CertificateFactory certificateFactory() throws Exception {
+    try (JceFactories.Lease<CertificateFactory> lease =
+        JceFactories.certificateFactory("X.509", BouncyCastleSingleton.INSTANCE)) {
+      return lease.get();
+    }
+  }
+
+  @Benchmark
+  public Signature signatureGetInstance() throws Exception {
+    return Signature.getInstance("SHA256withECDSA", BouncyCastleSingleton.INSTANCE);
+  }
+
+  /**
+   * Borrows a pooled Signature and returns it.
+   */
+  @Benchmark
+  public Signature signature() throws Exception {
+    try (JceFactories.Lease<Signature> lease =
+        JceFactories.signature("SHA256withECDSA", BouncyCastleSingleton.INSTANCE)) {
+      return lease.get();
+    }
+  }
+}
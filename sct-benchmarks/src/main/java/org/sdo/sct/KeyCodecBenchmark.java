@@ -0,0 +1,60 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct;
+
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link KeyCodec} throughput.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyCodecBenchmark {
+
+  @Param({"RSA2048RESTR", "ECDSA_P_256", "ECDSA_P_384"})
+  private KeyType keyType;
+
+  private PublicKey key;
+  private String keyText;
+
+  /**
+   * Builds the key under test.
+   */
+  @Setup
+  public void setup() throws Exception {
+    key = VoucherFixtures.generateKeyPair(keyType).getPublic();
+    keyText = KeyCodec.encode(key);
+  }
+
+  @Benchmark
+  public PublicKey decode() {
+    return KeyCodec.decodeTokens(keyText);
+  }
+
+  @Benchmark
+  public PublicKey decodeRegex() {
+    return KeyCodec.decodeRegex(keyText);
+  }
+
+  @Benchmark
+  public String encode() {
+    return KeyCodec.encode(key);
+  }
+}
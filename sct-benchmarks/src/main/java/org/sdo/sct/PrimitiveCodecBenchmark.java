@@ -0,0 +1,78 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct;
+
+import java.nio.CharBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the codecs for SDO's primitive types.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrimitiveCodecBenchmark {
+
+  // the size of an SHA-256 HMAC, the most common ByteArray in a voucher
+  private static final int ARRAY_SIZE = 32;
+
+  private byte[] array;
+  private String arrayText;
+  private String stringText;
+
+  /**
+   * Builds the values under test.
+   */
+  @Setup
+  public void setup() {
+    array = new byte[ARRAY_SIZE];
+    new Random(0).nextBytes(array);
+    arrayText = ArrayCodec.encode(array);
+    stringText = StringCodec.encode("device {info} with \"quotes\"");
+  }
+
+  @Benchmark
+  public byte[] decodeArray() {
+    return ArrayCodec.decode(arrayText);
+  }
+
+  @Benchmark
+  public String encodeArray() {
+    return ArrayCodec.encode(array);
+  }
+
+  @Benchmark
+  public int decodeInteger() {
+    return IntegerCodec.decode("256", Short.SIZE);
+  }
+
+  @Benchmark
+  public KeyType decodeKeyType() {
+    return KeyTypeCodec.decode("14");
+  }
+
+  @Benchmark
+  public String decodeString() {
+    return StringCodec.decode(CharBuffer.wrap(stringText));
+  }
+
+  @Benchmark
+  public String encodeString() {
+    return StringCodec.encode("device {info} with \"quotes\"");
+  }
+}
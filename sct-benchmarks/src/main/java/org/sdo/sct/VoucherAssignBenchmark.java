@@ -0,0 +1,164 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct;
+
+import java.security.InvalidKeyException;
+import java.security.InvalidParameterException;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link Voucher#assign} throughput, with and without the ownership-proof signature.
+ *
+ * <p>The <code>signatures</code> and <code>vouchers</code> counters report how many
+ * private-key signatures were made and how many vouchers were extended, so their ratio
+ * is the number of signatures per voucher.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VoucherAssignBenchmark {
+
+  @Param({"RSA2048RESTR", "ECDSA_P_256", "ECDSA_P_384"})
+  private KeyType keyType;
+
+  @Param({"0", "5"})
+  private int entries;
+
+  private Voucher voucher;
+  private CountingSignature signer;
+  private PublicKey signerKey;
+  private PublicKey recipientKey;
+
+  /**
+   * Builds the voucher under test and a signer for its owner.
+   */
+  @Setup
+  public void setup() throws Exception {
+    final VoucherFixtures fixtures = new VoucherFixtures(keyType);
+    final KeyPair owner = fixtures.ownerAfter(entries);
+    voucher = fixtures.build(entries, false);
+    signer = new CountingSignature(fixtures.buildSigner(owner.getPrivate()));
+    signer.initSign(owner.getPrivate());
+    signerKey = owner.getPublic();
+    recipientKey = fixtures.ownerAfter(entries + 1).getPublic();
+  }
+
+  /**
+   * Counts signatures and vouchers.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Counters {
+
+    public long signatures;
+    public long vouchers;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      signatures = 0;
+      vouchers = 0;
+    }
+  }
+
+  @Benchmark
+  public Voucher assignWithProof(final Counters counters) {
+    return count(counters, voucher.assign(recipientKey, signer));
+  }
+
+  @Benchmark
+  public Voucher assignWithSignerKey(final Counters counters) {
+    return count(counters, voucher.assign(recipientKey, signer, signerKey));
+  }
+
+  private Voucher count(final Counters counters, final Voucher result) {
+    counters.signatures += signer.takeSignCount();
+    counters.vouchers++;
+    return result;
+  }
+
+  /**
+   * A {@link Signature} which counts the signatures made by another.
+   */
+  static class CountingSignature extends Signature {
+
+    private final Signature delegate;
+    private long signCount;
+
+    CountingSignature(final Signature delegate) {
+      super(delegate.getAlgorithm());
+      this.delegate = delegate;
+    }
+
+    long takeSignCount() {
+      final long result = signCount;
+      signCount = 0;
+      return result;
+    }
+
+    @Override
+    protected void engineInitVerify(final PublicKey publicKey) throws InvalidKeyException {
+      delegate.initVerify(publicKey);
+    }
+
+    @Override
+    protected void engineInitSign(final PrivateKey privateKey) throws InvalidKeyException {
+      delegate.initSign(privateKey);
+    }
+
+    @Override
+    protected void engineUpdate(final byte b) throws SignatureException {
+      delegate.update(b);
+    }
+
+    @Override
+    protected void engineUpdate(final byte[] b, final int off, final int len)
+        throws SignatureException {
+      delegate.update(b, off, len);
+    }
+
+    @Override
+    protected byte[] engineSign() throws SignatureException {
+      signCount++;
+      return delegate.sign();
+    }
+
+    @Override
+    protected boolean engineVerify(final byte[] sigBytes) throws SignatureException {
+      return delegate.verify(sigBytes);
+    }
+
+    @Override
+    @Deprecated
+    protected void engineSetParameter(final String param, final Object value) {
+      throw new InvalidParameterException(param);
+    }
+
+    @Override
+    @Deprecated
+    protected Object engineGetParameter(final String param) {
+      throw new InvalidParameterException(param);
+    }
+  }
+}
@@ -0,0 +1,91 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct;
+
+import java.security.KeyPair;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Multi-hop voucher extension, as when a chain of resellers each sign in turn.
+ *
+ * <p><code>extend</code> passes each {@link Voucher} straight to the next hop, so every hop
+ * reuses the chain state its predecessor computed.  <code>extendDecoded</code> encodes and
+ * decodes the voucher between hops, so every hop starts from text, as each hop would if it
+ * ran in a separate request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VoucherChainBenchmark {
+
+  @Param({"ECDSA_P_256"})
+  private KeyType keyType;
+
+  @Param({"1", "5", "20", "64"})
+  private int hops;
+
+  private Voucher voucher;
+  private final KeyPair[] owners = new KeyPair[2];
+  private final Signature[] signers = new Signature[2];
+
+  /**
+   * Builds an empty voucher and a signer for each of two alternating owners.
+   */
+  @Setup
+  public void setup() throws Exception {
+    final VoucherFixtures fixtures = new VoucherFixtures(keyType);
+    voucher = fixtures.build(0, false);
+    for (int i = 0; i < owners.length; i++) {
+      owners[i] = fixtures.ownerAfter(i);
+      signers[i] = fixtures.buildSigner(owners[i].getPrivate());
+    }
+  }
+
+  /**
+   * Extends the voucher by the given number of hops, carrying chain state forward.
+   */
+  @Benchmark
+  public Voucher extend() {
+    Voucher result = Voucher.of(voucher.toString());
+    for (int i = 0; i < hops; i++) {
+      result = hop(result, i);
+    }
+    return result;
+  }
+
+  /**
+   * Extends the voucher by the given number of hops, decoding it afresh at each hop.
+   */
+  @Benchmark
+  public Voucher extendDecoded() {
+    Voucher result = Voucher.of(voucher.toString());
+    for (int i = 0; i < hops; i++) {
+      result = Voucher.of(hop(result, i).toString());
+    }
+    return result;
+  }
+
+  private Voucher hop(final Voucher from, final int i) {
+    final KeyPair owner = owners[i % owners.length];
+    return from.assign(
+      owners[(i + 1) % owners.length].getPublic(),
+      signers[i % signers.length],
+      owner.getPublic());
+  }
+}
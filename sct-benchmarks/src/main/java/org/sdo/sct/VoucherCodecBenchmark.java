@@ -0,0 +1,128 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct;
+
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Voucher decode and encode throughput.
+ *
+ * <p>The <code>*Regex</code> benchmarks measure the legacy regular-expression decoders
+ * side by side with the tokenizer-based decoders which replaced them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VoucherCodecBenchmark {
+
+  @Param({"RSA2048RESTR", "ECDSA_P_256", "ECDSA_P_384"})
+  private KeyType keyType;
+
+  @Param({"0", "1", "5", "20"})
+  private int entries;
+
+  @Param({"false", "true"})
+  private boolean dc;
+
+  private String voucherText;
+  private String headerText;
+  private String entryText;
+  private String bodyText;
+  private Voucher voucher;
+
+  /**
+   * Builds the voucher under test.
+   */
+  @Setup
+  public void setup() throws Exception {
+    voucher = new VoucherFixtures(keyType).build(entries, dc);
+    voucherText = voucher.toString();
+    headerText = voucher.getOh();
+    if (entries > 0) {
+      entryText = voucher.getEn().get(entries - 1);
+      bodyText = VoucherEntry.of(entryText).getBo();
+    } else {
+      entryText = null;
+      bodyText = null;
+    }
+  }
+
+  @Benchmark
+  public Voucher decode() {
+    return Voucher.ofTokens(voucherText);
+  }
+
+  @Benchmark
+  public Voucher decodeRegex() {
+    return Voucher.ofRegex(voucherText);
+  }
+
+  @Benchmark
+  public VoucherHeader decodeHeader() {
+    return VoucherHeader.ofTokens(headerText);
+  }
+
+  @Benchmark
+  public VoucherHeader decodeHeaderRegex() {
+    return VoucherHeader.ofRegex(headerText);
+  }
+
+  /**
+   * Decodes the last entry and its body, or nothing if the voucher has no entries.
+   */
+  @Benchmark
+  public VoucherEntry.Body decodeEntry() {
+    return null == entryText ? null
+      : VoucherEntry.Body.ofTokens(VoucherEntry.ofTokens(entryText).getBo());
+  }
+
+  /**
+   * Decodes the last entry and its body, or nothing if the voucher has no entries.
+   */
+  @Benchmark
+  public VoucherEntry.Body decodeEntryRegex() {
+    return null == entryText ? null
+      : VoucherEntry.Body.ofRegex(VoucherEntry.ofRegex(entryText).getBo());
+  }
+
+  /**
+   * Decodes a voucher and its owner key, which is found in {@link PublicKeyCache#SHARED}.
+   */
+  @Benchmark
+  public PublicKey getOwnerKey() {
+    return Voucher.of(voucherText).getOwnerKey();
+  }
+
+  /**
+   * Decodes a voucher and its owner key without the shared key cache.
+   */
+  @Benchmark
+  public PublicKey getOwnerKeyUncached() {
+    final Voucher decoded = Voucher.of(voucherText);
+    final String pk = decoded.getEn().isEmpty()
+        ? decoded.getHeader().getPublicKey()
+        : VoucherEntry.Body.of(decoded.getEntry(entries - 1).getBo()).getPk();
+    return KeyCodec.decode(pk);
+  }
+
+  @Benchmark
+  public String encode() {
+    return voucher.toString();
+  }
+}
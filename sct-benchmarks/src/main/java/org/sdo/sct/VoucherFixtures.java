@@ -0,0 +1,168 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct;
+
+import java.math.BigInteger;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+/**
+ * Builds realistic vouchers for benchmarks.
+ *
+ * <p>Fixtures are generated, not loaded, so that every supported key type, entry count
+ * and device-certificate option can be covered without checking in key material.
+ */
+public class VoucherFixtures {
+
+  private static final int DC_CHAIN_LENGTH = 3;
+
+  private final KeyType keyType;
+  private final List<KeyPair> keyPairs = new ArrayList<>();
+
+  /**
+   * Constructor.
+   *
+   * @param keyType the {@link KeyType} of every key in generated vouchers.
+   */
+  public VoucherFixtures(final KeyType keyType) throws GeneralSecurityException {
+    this.keyType = keyType;
+
+    // Owners alternate between two key pairs.  The cost of decoding a voucher
+    // doesn't depend on whether its keys are distinct, but generating a fresh
+    // RSA key for each of 20 hops would make setup very slow.
+    keyPairs.add(generateKeyPair(keyType));
+    keyPairs.add(generateKeyPair(keyType));
+  }
+
+  /**
+   * Generates a key pair of the given type.
+   */
+  public static KeyPair generateKeyPair(final KeyType keyType) throws GeneralSecurityException {
+
+    final KeyPairGenerator kpg =
+        KeyPairGenerator.getInstance(keyType.getJceAlgorithm(), BouncyCastleSingleton.INSTANCE);
+    final SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
+
+    switch (keyType) {
+      case RSA2048RESTR:
+        kpg.initialize(2048, random);
+        break;
+      case ECDSA_P_256:
+        kpg.initialize(new ECGenParameterSpec("secp256r1"), random);
+        break;
+      case ECDSA_P_384:
+        kpg.initialize(new ECGenParameterSpec("secp384r1"), random);
+        break;
+      default:
+        throw new IllegalArgumentException(keyType.toString());
+    }
+
+    return kpg.generateKeyPair();
+  }
+
+  /**
+   * Builds a {@link Signature} initialized for signing with the given key.
+   */
+  public Signature buildSigner(final PrivateKey key) throws GeneralSecurityException {
+    final Signature signer =
+        CryptoLevel.of(keyType).buildSignature(key, BouncyCastleSingleton.INSTANCE);
+    signer.initSign(key);
+    return signer;
+  }
+
+  /**
+   * The key pair which owns a voucher after the given number of extensions.
+   */
+  public KeyPair ownerAfter(final int entries) {
+    return keyPairs.get(entries % keyPairs.size());
+  }
+
+  /**
+   * Builds a voucher.
+   *
+   * @param entries the number of entries in the voucher.
+   * @param withDc  if true, the voucher carries a device certificate chain.
+   */
+  public Voucher build(final int entries, final boolean withDc) throws Exception {
+
+    final String dc = withDc ? buildDeviceCertChain() : null;
+    final VoucherHeader oh = new VoucherHeader(
+        new RendezvousInfoBuilder()
+          .with(List.of(
+            URI.create("http://rv.example.com:8040?delaysec=60"),
+            URI.create("https://192.0.2.1:8041")))
+          .build(),
+        UUID.randomUUID(),
+        "benchmark-device",
+        ownerAfter(0).getPublic(),
+        withDc ? new Hash.Null() : null);
+
+    Voucher voucher = new Voucher(
+        oh.toString(), new HashCodec().encode(new Hash.Null()), dc, Collections.emptyList());
+
+    for (int i = 0; i < entries; i++) {
+      voucher = voucher.assign(
+        ownerAfter(i + 1).getPublic(),
+        buildSigner(ownerAfter(i).getPrivate()));
+    }
+
+    return voucher;
+  }
+
+  private String buildDeviceCertChain() throws Exception {
+
+    final List<Certificate> certs = new ArrayList<>();
+    final KeyPair issuer = ownerAfter(0);
+    for (int i = 0; i < DC_CHAIN_LENGTH; i++) {
+      certs.add(buildCertificate(issuer, "CN=benchmark " + i));
+    }
+
+    return CertPathCodec.encode(
+      CertificateFactory.getInstance("X.509", BouncyCastleSingleton.INSTANCE)
+        .generateCertPath(certs));
+  }
+
+  private Certificate buildCertificate(final KeyPair keyPair, final String name)
+      throws GeneralSecurityException, OperatorCreationException {
+
+    final X500Name subject = new X500Name(name);
+    final Instant now = Instant.now();
+    final X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+        subject,
+        BigInteger.valueOf(now.toEpochMilli()),
+        Date.from(now),
+        Date.from(now.plus(1, ChronoUnit.DAYS)),
+        subject,
+        keyPair.getPublic());
+
+    return new JcaX509CertificateConverter()
+      .setProvider(BouncyCastleSingleton.INSTANCE)
+      .getCertificate(builder.build(
+        new JcaContentSignerBuilder(
+          CryptoLevel.of(keyType).getSignatureAlgorithm(keyPair.getPrivate()))
+          .setProvider(BouncyCastleSingleton.INSTANCE)
+          .build(keyPair.getPrivate())));
+  }
+}
@@ -0,0 +1,122 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.CertPath;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.Period;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.pkcs.PKCS10CertificationRequest;
+import org.bouncycastle.pkcs.jcajce.JcaPKCS10CertificationRequestBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sdo.sct.BouncyCastleSingleton;
+import org.sdo.sct.KeyFinder;
+import org.sdo.sct.KeyStores;
+
+/**
+ * Device certificate issuance by {@link SimpleCertPathService}, for an ECDSA device CSR.
+ *
+ * <p>With <code>destroyKeys</code> false the issuer's key is kept in its issuer context.
+ * With it true the key is fetched from a PKCS12 keystore and destroyed for each
+ * certificate, as the toolkit always did.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CertPathServiceBenchmark {
+
+  private static final char[] PASSWORD = "benchmark".toCharArray();
+
+  @Param({"256", "384"})
+  private int keySize;
+
+  @Param({"false", "true"})
+  private boolean destroyKeys;
+
+  private PKCS10CertificationRequest csr;
+  private SimpleCertPathService service;
+
+  /**
+   * Builds the issuer's keystore and a device CSR.
+   */
+  @Setup
+  public void setup() throws Exception {
+    final KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC", BouncyCastleSingleton.INSTANCE);
+    kpg.initialize(keySize);
+    final KeyPair issuer = kpg.generateKeyPair();
+    final KeyPair device = kpg.generateKeyPair();
+    final String algorithm = 256 == keySize ? "SHA256withECDSA" : "SHA384withECDSA";
+
+    final X500Name issuerName = new X500Name("CN=Benchmark Manufacturer");
+    final X509Certificate issuerCert = new JcaX509CertificateConverter()
+        .setProvider(BouncyCastleSingleton.INSTANCE)
+        .getCertificate(new JcaX509v3CertificateBuilder(
+            issuerName,
+            BigInteger.ONE,
+            Date.from(Instant.now()),
+            Date.from(Instant.now().plusSeconds(86400)),
+            issuerName,
+            issuer.getPublic())
+            .build(new JcaContentSignerBuilder(algorithm).build(issuer.getPrivate())));
+
+    final KeyStore keyStore = KeyStore.getInstance("PKCS12", BouncyCastleSingleton.INSTANCE);
+    keyStore.load(null);
+    keyStore.setKeyEntry("mfr", issuer.getPrivate(), PASSWORD, new Certificate[] {issuerCert});
+    final KeyStores keyStores = () -> List.of(keyStore).iterator();
+
+    csr = new JcaPKCS10CertificationRequestBuilder(
+        new X500Name("CN=Benchmark Device"), device.getPublic())
+        .build(new JcaContentSignerBuilder(algorithm)
+            .setProvider(BouncyCastleSingleton.INSTANCE)
+            .build(device.getPrivate()));
+
+    service = new SimpleCertPathService(
+        PASSWORD::clone,
+        () -> Period.ofDays(1),
+        new KeyFinder(keyStores, PASSWORD::clone),
+        destroyKeys);
+  }
+
+  /**
+   * Destroys the kept issuer key.
+   */
+  @TearDown
+  public void tearDown() {
+    service.destroy();
+  }
+
+  /**
+   * Issues a device certificate and builds its path.
+   */
+  @Benchmark
+  public CertPath apply() throws Exception {
+    return service.apply(csr);
+  }
+}
@@ -0,0 +1,76 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Base64;
+
+/**
+ * Loads the manufacturer toolkit's OnDie test fixtures for benchmarks.
+ *
+ * <p>The cache directory is copied to a temporary directory.  The test cache has no CRL
+ * for the test device's issuing CA, so another CRL stands in for it.  Revocation checks
+ * don't verify CRL signatures, so the stand-in is checked like any other.
+ */
+public class OnDieFixtures {
+
+  private static final String STAND_IN_CRL = "TGL_00001846_OnDie_CA.crl";
+  private static final String MISSING_CRL = "TGL_DEBUG000_OnDie_CA.crl";
+
+  private final Path cacheDir;
+  private final MStringParser.ParseResult mstring;
+
+  /**
+   * Constructor.
+   *
+   * @param resources the manufacturer toolkit's test resources directory.
+   */
+  public OnDieFixtures(final String resources) throws IOException {
+    final Path source = Paths.get(resources);
+    cacheDir = Files.createTempDirectory("ondie");
+    cacheDir.toFile().deleteOnExit();
+    try (var files = Files.list(source.resolve("cachedir"))) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.copy(file, cacheDir.resolve(file.getFileName())).toFile().deleteOnExit();
+      }
+    }
+    Files.copy(cacheDir.resolve(STAND_IN_CRL), cacheDir.resolve(MISSING_CRL))
+        .toFile().deleteOnExit();
+
+    mstring = new MStringParser().parse(
+        new String(Files.readAllBytes(source.resolve("mstring.dat")), StandardCharsets.UTF_8));
+  }
+
+  /**
+   * The copy of the cache directory.
+   */
+  public String getCacheDir() {
+    return cacheDir.toString();
+  }
+
+  /**
+   * The test device's certificate chain, as sent in its mstring.
+   */
+  public String getCertChain() {
+    return mstring.getOnDieCertChain();
+  }
+
+  /**
+   * The data the test device signed.
+   */
+  public byte[] getSignedData() {
+    return mstring.getSerialNumber().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * The test device's test signature.
+   */
+  public byte[] getSignature() {
+    return Base64.getDecoder().decode(mstring.getOnDieTestSignature());
+  }
+}
@@ -0,0 +1,87 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import java.security.cert.CertPath;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-device latency of the OnDie checks made by DI.AppStart, with the revocation checks
+ * run serially or in parallel with signature verification.
+ *
+ * <p><code>threads</code> is <code>sdo.ondiecache.validation.threads</code>: zero runs
+ * both checks on the benchmark thread, and any other value gives the revocation checks a
+ * pool of that size.  The benchmark samples the time of each validation, so JMH reports
+ * a latency histogram with percentiles.  Use <code>-t</code> to validate several devices
+ * at once.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OnDiePipelineBenchmark {
+
+  @Param({"manufacturer-toolkit/src/test/resources"})
+  private String resources;
+
+  @Param({"0", "2"})
+  private int threads;
+
+  private String certChain;
+  private byte[] signedData;
+  private byte[] signature;
+  private OnDieCertPath certPathService;
+  private OnDieCache cache;
+  private OnDieSignatureValidator validator;
+
+  /**
+   * Loads the fixtures and checks that the test mstring validates.
+   */
+  @Setup
+  public void setup() throws Exception {
+    final OnDieFixtures fixtures = new OnDieFixtures(resources);
+    certChain = fixtures.getCertChain();
+    signedData = fixtures.getSignedData();
+    signature = fixtures.getSignature();
+
+    certPathService = new OnDieCertPath();
+    cache = new OnDieCache(fixtures.getCacheDir(), false, null);
+    validator = new OnDieSignatureValidator(cache, true, threads, 1000);
+
+    if (!appStart()) {
+      throw new IllegalStateException("test mstring does not validate");
+    }
+  }
+
+  /**
+   * Stops the revocation pool.
+   */
+  @TearDown
+  public void tearDown() {
+    validator.destroy();
+  }
+
+  /**
+   * Builds and validates the device's certificate path.
+   */
+  @Benchmark
+  public boolean appStart() throws Exception {
+    final CertPath certPath = certPathService.buildCertPath(certChain, cache);
+    return validator.validate(certPath, signedData, signature);
+  }
+}
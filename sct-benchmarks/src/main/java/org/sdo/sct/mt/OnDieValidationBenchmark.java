@@ -0,0 +1,202 @@
+// Copyright 2020 Intel Corporation
+// SPDX-License-Identifier: Apache 2.0
+
+package org.sdo.sct.mt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.cert.CRLException;
+import java.security.cert.CertPath;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sdo.sct.BouncyCastleSingleton;
+
+/**
+ * The OnDie checks made by DI.AppStart: building the device's certificate path from the
+ * OnDie cache, then checking revocations and the test signature.
+ *
+ * <p><code>appStart</code> uses {@link OnDieCache} as the toolkit does, so each
+ * certificate and CRL is parsed once, and the issuer chain above the ROM certificate is
+ * built once.  <code>appStartReparsed</code> uses a cache which parses the entry on every
+ * lookup and walks the issuer chain for every device, as the toolkit did before.
+ * The <code>buildCertPath</code> pair leaves out the revocation and signature checks,
+ * the <code>checkRevocations</code> pair measures only the revocation checks, and
+ * <code>verifySignature</code> only the signature check.
+ *
+ * <p>The fixtures are the manufacturer toolkit's test mstring and cache directory, read
+ * from <code>resources</code> by {@link OnDieFixtures}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OnDieValidationBenchmark {
+
+  private static final byte[] NO_SIGNATURE = new byte[0];
+
+  @Param({"manufacturer-toolkit/src/test/resources"})
+  private String resources;
+
+  private String certChain;
+  private byte[] signedData;
+  private byte[] signature;
+  private OnDieCertPath certPathService;
+  private CertPath certPath;
+  private OnDieCache cache;
+  private OnDieSignatureValidator validator;
+  private OnDieCache reparsingCache;
+  private OnDieSignatureValidator reparsingValidator;
+  private OnDieSignatureValidator signatureValidator;
+
+  /**
+   * Loads the fixtures and checks that the test mstring validates.
+   */
+  @Setup
+  public void setup() throws Exception {
+    final OnDieFixtures fixtures = new OnDieFixtures(resources);
+    certChain = fixtures.getCertChain();
+    signedData = fixtures.getSignedData();
+    signature = fixtures.getSignature();
+
+    certPathService = new OnDieCertPath();
+    cache = new OnDieCache(fixtures.getCacheDir(), false, null);
+    validator = new OnDieSignatureValidator(cache, true);
+    reparsingCache = new ReparsingOnDieCache(fixtures.getCacheDir());
+    reparsingValidator = new OnDieSignatureValidator(reparsingCache, true);
+    signatureValidator = new OnDieSignatureValidator(cache, false);
+
+    if (!appStart() || !appStartReparsed()) {
+      throw new IllegalStateException("test mstring does not validate");
+    }
+    certPath = buildCertPath();
+  }
+
+  /**
+   * Builds and validates the device's certificate path with parsed cache entries.
+   */
+  @Benchmark
+  public boolean appStart() throws Exception {
+    final CertPath certPath = certPathService.buildCertPath(certChain, cache);
+    return validator.validate(certPath, signedData, signature);
+  }
+
+  /**
+   * Builds and validates the device's certificate path, parsing cache entries each time.
+   */
+  @Benchmark
+  public boolean appStartReparsed() throws Exception {
+    final CertPath certPath =
+        certPathService.buildCertPath(certChain, reparsingCache);
+    return reparsingValidator.validate(certPath, signedData, signature);
+  }
+
+  /**
+   * Builds the device's certificate path with parsed cache entries.
+   */
+  @Benchmark
+  public CertPath buildCertPath() throws Exception {
+    return certPathService.buildCertPath(certChain, cache);
+  }
+
+  /**
+   * Builds the device's certificate path, parsing cache entries each time.
+   */
+  @Benchmark
+  public CertPath buildCertPathReparsed() throws Exception {
+    return certPathService.buildCertPath(certChain, reparsingCache);
+  }
+
+  /**
+   * Checks the device's certificate path for revocations with cached, indexed CRLs.
+   */
+  @Benchmark
+  public boolean checkRevocations() throws Exception {
+    // the empty signature is rejected as soon as the revocation checks pass
+    return validator.validate(certPath, signedData, NO_SIGNATURE);
+  }
+
+  /**
+   * Checks the device's certificate path for revocations, parsing each CRL each time.
+   */
+  @Benchmark
+  public boolean checkRevocationsReparsed() throws Exception {
+    return reparsingValidator.validate(certPath, signedData, NO_SIGNATURE);
+  }
+
+  /**
+   * Verifies the device's test signature alone.  Run with <code>-prof gc</code> to see the
+   * allocation per verification.
+   */
+  @Benchmark
+  public boolean verifySignature() throws Exception {
+    return signatureValidator.validate(certPath, signedData, signature);
+  }
+
+  /**
+   * Parses the cache entry on every lookup, and walks the issuer chain every time.
+   * Each CRL is indexed afresh.
+   */
+  private static class ReparsingOnDieCache extends OnDieCache {
+
+    ReparsingOnDieCache(final String cacheDir) throws Exception {
+      super(cacheDir, false, null);
+    }
+
+    @Override
+    public X509Certificate getCertificate(final String pathName)
+        throws IOException, CertificateException {
+      final ByteBuffer bytes = getCertOrCrlBuffer(pathName);
+      return null == bytes ? null : (X509Certificate) factory()
+          .generateCertificate(new ByteBufferInputStream(bytes));
+    }
+
+    @Override
+    OnDieCrl getOnDieCrl(final String pathName) throws IOException, CRLException {
+      final ByteBuffer bytes = getCertOrCrlBuffer(pathName);
+      try {
+        return null == bytes ? null : new OnDieCrl((X509CRL) factory()
+            .generateCRL(new ByteBufferInputStream(bytes)));
+      } catch (CertificateException e) {
+        throw new CRLException(e);
+      }
+    }
+
+    @Override
+    public List<X509Certificate> getIssuerChain(final String pathName)
+        throws IOException, CertificateException {
+      final List<X509Certificate> chain = new ArrayList<>();
+      String certId = pathName;
+      while (true) {
+        final X509Certificate cert = getCertificate(certId);
+        chain.add(cert);
+        try {
+          certId = OnDieCertPath.getIssuingCertificate(cert);
+        } catch (Exception e) {
+          return chain;
+        }
+      }
+    }
+
+    private static CertificateFactory factory() throws CertificateException {
+      return CertificateFactory.getInstance("X509", BouncyCastleSingleton.INSTANCE);
+    }
+  }
+}